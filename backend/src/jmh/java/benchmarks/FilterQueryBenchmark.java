@@ -0,0 +1,82 @@
+package benchmarks;
+
+import model.enums.AnimalType;
+import model.enums.CropStatus;
+import model.enums.CropType;
+import model.enums.CropVariant;
+import model.filters.CropsFilterModel;
+import model.filters.FilterQuery;
+import model.filters.LivestockFilterModel;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * SQL generation for the crop and livestock filter endpoints: building the FilterQuery from the filter model,
+ * rendering its SQL text and binding its values to a (no-op) statement, as DatabaseConnectionHandler does
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterQueryBenchmark {
+
+    private final LivestockFilterModel livestockUnfiltered =
+            new LivestockFilterModel("all", AnimalType.ALL, CropType.ALL, -1, -1, -1, 99999, -1, -1);
+    private final LivestockFilterModel livestockAllClauses =
+            new LivestockFilterModel("true", AnimalType.COW, CropType.WHEAT, 2, 10, 4100, 4800, 50, 20);
+    private final CropsFilterModel cropsUnfiltered =
+            new CropsFilterModel(CropType.ALL, CropVariant.ALL, CropStatus.ALL, -1, -1);
+    private final CropsFilterModel cropsAllClauses =
+            new CropsFilterModel(CropType.CORN, CropVariant.HYBRIDS, CropStatus.PLANTED, 10, 5000);
+
+    private final PreparedStatement statement = SampleData.noopStatement();
+
+    @Benchmark
+    public void livestockUnfiltered(Blackhole blackhole) throws SQLException {
+        render(livestockQuery(livestockUnfiltered), blackhole);
+    }
+
+    @Benchmark
+    public void livestockAllClauses(Blackhole blackhole) throws SQLException {
+        render(livestockQuery(livestockAllClauses), blackhole);
+    }
+
+    @Benchmark
+    public void cropsUnfiltered(Blackhole blackhole) throws SQLException {
+        render(new FilterQuery("SELECT * FROM CROPS ").append(cropsUnfiltered.getWhereClause()), blackhole);
+    }
+
+    @Benchmark
+    public void cropsAllClauses(Blackhole blackhole) throws SQLException {
+        render(new FilterQuery("SELECT * FROM CROPS ").append(cropsAllClauses.getWhereClause()), blackhole);
+    }
+
+    private static FilterQuery livestockQuery(LivestockFilterModel model) {
+        FilterQuery query = new FilterQuery("SELECT * FROM (subquery ");
+        query.append(model.getHavingClause());
+        query.append(") ");
+        query.append(model.getWhereClause());
+        query.append(" ORDER BY tagID ");
+        return query;
+    }
+
+    private void render(FilterQuery query, Blackhole blackhole) throws SQLException {
+        blackhole.consume(query.getSql());
+        blackhole.consume(query.bind(statement, 1));
+    }
+}
@@ -0,0 +1,105 @@
+package benchmarks;
+
+import model.models.livestock.LivestockModel;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import util.JSONArrayWriter;
+
+/**
+ * Rendering a whole livestock list response: the old buffered JSONArray.toString() path against streaming
+ * through JSONArrayWriter (what /api/livestock does now), both starting from LivestockModel.toJSON().
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LivestockJsonBenchmark {
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    private LivestockModel[] livestock;
+
+    @Setup
+    public void setUp() {
+        livestock = SampleData.livestock(rows);
+    }
+
+    @Benchmark
+    public String buffered() {
+        JSONArray array = new JSONArray();
+        for (LivestockModel model : livestock) {
+            array.put(model.toJSON());
+        }
+        return array.toString();
+    }
+
+    @Benchmark
+    public void streamed(Blackhole blackhole) throws IOException {
+        CountingWriter out = new CountingWriter();
+        try (JSONArrayWriter writer = new JSONArrayWriter(out)) {
+            for (LivestockModel model : livestock) {
+                writer.accept(model.toJSON());
+            }
+        }
+        blackhole.consume(out.count);
+    }
+
+    @Benchmark
+    public void toJSONOnly(Blackhole blackhole) {
+        for (LivestockModel model : livestock) {
+            JSONObject json = model.toJSON();
+            blackhole.consume(json);
+        }
+    }
+
+    /**
+     * Stands in for the servlet response writer, keeping only the number of chars written
+     */
+    private static class CountingWriter extends Writer {
+        private long count = 0;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void write(int c) {
+            count++;
+        }
+
+        @Override
+        public void write(String str, int offset, int length) {
+            count += length;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
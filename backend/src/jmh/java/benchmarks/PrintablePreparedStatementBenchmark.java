@@ -0,0 +1,75 @@
+package benchmarks;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import util.PrintablePreparedStatement;
+import util.QueryLog;
+
+/**
+ * Overhead PrintablePreparedStatement adds to binding and executing one insert, over a statement that does
+ * nothing, with the query log off, logging slow queries only, and sampling 1%
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dfms.querylog.slowMillis=60000")
+@State(Scope.Benchmark)
+public class PrintablePreparedStatementBenchmark {
+    private static final String QUERY = "INSERT INTO Livestock_4 VALUES (?, ?, ?, ?, ?, ?)";
+
+    @Param({"off", "slowOnly", "sampled"})
+    public String queryLog;
+
+    private final PreparedStatement statement = SampleData.noopStatement();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (queryLog) {
+            case "off":
+                QueryLog.configure(false, 0, 60000);
+                break;
+            case "slowOnly":
+                QueryLog.configure(true, 0, 60000);
+                break;
+            default:
+                QueryLog.configure(true, 0.01, 60000);
+                break;
+        }
+    }
+
+    @Benchmark
+    public int raw() throws SQLException {
+        return execute(statement);
+    }
+
+    @Benchmark
+    public int wrapped() throws SQLException {
+        return execute(new PrintablePreparedStatement(statement, QUERY, false));
+    }
+
+    private static int execute(PreparedStatement ps) throws SQLException {
+        ps.setInt(1, 4321);
+        ps.setString(2, "cow");
+        ps.setInt(3, 4);
+        ps.setDouble(4, 612.5);
+        ps.setDate(5, java.sql.Date.valueOf("2023-03-21"));
+        ps.setDate(6, null);
+        return ps.executeUpdate();
+    }
+}
@@ -0,0 +1,72 @@
+package benchmarks;
+
+import model.filters.LivestockFilterModel;
+import model.models.livestock.LivestockModel;
+import model.models.livestock.Livestock_4_Model;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * MainController request body handling: Jackson reading the body into the @RequestBody Map (as Spring does),
+ * then the same conversion into models the controller methods perform
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestBodyBenchmark {
+    private static final TypeReference<Map<String, Object>> BODY_TYPE = new TypeReference<Map<String, Object>>() {
+    };
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final byte[] livestockFilterBody = ("{\"harvestable\":\"true\",\"animalType\":\"cow\",\"diet\":\"wheat\","
+            + "\"tagID\":{\"min\":4100,\"max\":4800},\"age\":{\"min\":2,\"max\":10},"
+            + "\"minWaterSpent\":50,\"minFoodSpent\":20,\"limit\":100}").getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] insertBody = ("{\"tagID\":4321,\"animalType\":\"COW\",\"age\":4,\"diet\":\"CORN\","
+            + "\"weight\":612.5,\"lastFed\":\"2023-03-21\",\"harvestable\":true,"
+            + "\"lastViolatedForHarvestedGoods\":\"2023-02-14\"}").getBytes(StandardCharsets.UTF_8);
+
+    // The frontend sends the livestock as a JSON string inside the body
+    private final byte[] updateBody = ("{\"actionType\":\"FEED\",\"livestock\":\"{\\\"tagID\\\":4321,"
+            + "\\\"animalType\\\":\\\"COW\\\",\\\"age\\\":5,\\\"weight\\\":640.0,"
+            + "\\\"lastFed\\\":\\\"2023-03-22\\\",\\\"lastViolatedForHarvestedGoods\\\":\\\"2023-02-14\\\"}\"}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Benchmark
+    public LivestockFilterModel livestockFilter() throws IOException {
+        return LivestockFilterModel.fromRequestBody(mapper.readValue(livestockFilterBody, BODY_TYPE));
+    }
+
+    @Benchmark
+    public LivestockModel insertLivestock() throws IOException {
+        Map<String, Object> map = mapper.readValue(insertBody, BODY_TYPE);
+        return LivestockModel.fromJSON(new JSONObject(map));
+    }
+
+    @Benchmark
+    public Livestock_4_Model updateLivestock() throws IOException {
+        Map<String, Object> map = mapper.readValue(updateBody, BODY_TYPE);
+        return Livestock_4_Model.fromJSON(new JSONObject(map.get("livestock").toString()));
+    }
+}
@@ -0,0 +1,74 @@
+package benchmarks;
+
+import model.models.crop.CropModel;
+import model.models.livestock.LivestockModel;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * ResultSet to model to JSON mapping, as done per row by the list endpoints, over an in-memory ResultSet.
+ * Scores are per row.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RowMappingBenchmark {
+    private static final int ROWS = 1000;
+
+    private ResultSet livestockResultSet;
+    private ResultSet cropsResultSet;
+
+    @Setup
+    public void setUp() {
+        List<Map<String, Object>> livestockRows = new ArrayList<>();
+        for (LivestockModel model : SampleData.livestock(ROWS)) {
+            livestockRows.add(SampleData.livestockRow(model));
+        }
+        livestockResultSet = SampleData.resultSet(livestockRows);
+
+        List<Map<String, Object>> cropRows = new ArrayList<>();
+        for (CropModel model : SampleData.crops(ROWS)) {
+            cropRows.add(SampleData.cropRow(model));
+        }
+        cropsResultSet = SampleData.resultSet(cropRows);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void livestockFromResultSet(Blackhole blackhole) throws SQLException {
+        livestockResultSet.beforeFirst();
+        while (livestockResultSet.next()) {
+            blackhole.consume(LivestockModel.fromResultSet(livestockResultSet).toJSON());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void cropFromResultSet(Blackhole blackhole) throws SQLException {
+        cropsResultSet.beforeFirst();
+        while (cropsResultSet.next()) {
+            blackhole.consume(CropModel.fromResultSet(cropsResultSet).toJSON());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package benchmarks;
+
+import model.enums.AnimalType;
+import model.enums.CropStatus;
+import model.enums.CropType;
+import model.enums.CropVariant;
+import model.models.crop.CropModel;
+import model.models.livestock.LivestockModel;
+
+import java.lang.reflect.Proxy;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Deterministic rows and JDBC stand-ins shared by the benchmarks, so runs are comparable
+ */
+final class SampleData {
+    private static final AnimalType[] ANIMAL_TYPES = {AnimalType.CHICKEN, AnimalType.SHEEP, AnimalType.COW, AnimalType.PIG};
+    private static final CropType[] CROP_TYPES = {CropType.CANOLA, CropType.WHEAT, CropType.CORN, CropType.POTATOES,
+            CropType.MUSTARD, CropType.COCONUT};
+
+    private SampleData() {
+    }
+
+    static LivestockModel[] livestock(int count) {
+        Random random = new Random(42);
+        LivestockModel[] rows = new LivestockModel[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = new LivestockModel(
+                    4000 + i,
+                    ANIMAL_TYPES[random.nextInt(ANIMAL_TYPES.length)],
+                    1 + random.nextInt(15),
+                    CROP_TYPES[random.nextInt(CROP_TYPES.length)],
+                    50 + random.nextInt(900),
+                    Date.valueOf("2023-03-" + (10 + random.nextInt(18))),
+                    random.nextBoolean(),
+                    random.nextInt(4) == 0 ? null : Date.valueOf("2023-02-" + (10 + random.nextInt(18))));
+        }
+        return rows;
+    }
+
+    static CropModel[] crops(int count) {
+        Random random = new Random(42);
+        CropModel[] rows = new CropModel[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = new CropModel(
+                    CROP_TYPES[random.nextInt(CROP_TYPES.length)],
+                    random.nextBoolean() ? CropVariant.POLLINATED : CropVariant.HYBRIDS,
+                    random.nextBoolean() ? CropStatus.PLANTED : CropStatus.HARVESTED,
+                    random.nextInt(10000));
+        }
+        return rows;
+    }
+
+    /**
+     * A livestock wide row as the driver would return it (lowercase enums, harvestable as 0/1)
+     */
+    static Map<String, Object> livestockRow(LivestockModel model) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("tagID", model.getTagID());
+        row.put("animalType", model.getAnimalType().toString().toLowerCase());
+        row.put("age", model.getAge());
+        row.put("diet", model.getDiet().toString().toLowerCase());
+        row.put("weight", model.getWeight());
+        row.put("lastFed", model.getLastFed());
+        row.put("harvestable", model.isHarvestable() ? 1 : 0);
+        row.put("lastViolatedForHarvestedGoods", model.getLastViolatedForHarvestedGoods());
+        return row;
+    }
+
+    static Map<String, Object> cropRow(CropModel model) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("cropType", model.getCropType().toString().toLowerCase());
+        row.put("cropVariant", model.getCropVariant().toString().toLowerCase());
+        row.put("cropStatus", model.getCropStatus().toString().toLowerCase());
+        row.put("quantity", model.getQuantity());
+        return row;
+    }
+
+    /**
+     * A forward-only ResultSet over in-memory rows keyed by column label. Only the getters the model mappers use
+     * are implemented; beforeFirst() rewinds it so one instance can be reused across benchmark invocations.
+     */
+    static ResultSet resultSet(List<Map<String, Object>> rows) {
+        int[] cursor = {-1};
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            return ++cursor[0] < rows.size();
+                        case "beforeFirst":
+                            cursor[0] = -1;
+                            return null;
+                        case "close":
+                            return null;
+                        case "getInt": {
+                            Object value = rows.get(cursor[0]).get((String) args[0]);
+                            return value == null ? 0 : ((Number) value).intValue();
+                        }
+                        case "getDouble": {
+                            Object value = rows.get(cursor[0]).get((String) args[0]);
+                            return value == null ? 0.0 : ((Number) value).doubleValue();
+                        }
+                        case "getBoolean": {
+                            Object value = rows.get(cursor[0]).get((String) args[0]);
+                            return value != null && ((Number) value).intValue() != 0;
+                        }
+                        case "getString":
+                        case "getDate":
+                        case "getObject":
+                            return rows.get(cursor[0]).get((String) args[0]);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * A PreparedStatement that accepts everything and does nothing, so only the wrapper's own cost is measured
+     */
+    static PreparedStatement noopStatement() {
+        return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> {
+                    Class<?> returnType = method.getReturnType();
+                    if (returnType == int.class) {
+                        return 1;
+                    } else if (returnType == long.class) {
+                        return 1L;
+                    } else if (returnType == boolean.class) {
+                        return false;
+                    }
+                    return null;
+                });
+    }
+}
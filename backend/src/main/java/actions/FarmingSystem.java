@@ -7,15 +7,27 @@ import model.enums.CropStatus;
 import model.enums.CropType;
 import model.enums.CropVariant;
 import model.filters.CropsFilterModel;
+import model.filters.FilterQuery;
 import model.filters.LivestockFilterModel;
+import model.filters.PageRequest;
+import model.models.NurtureModel;
 import model.models.livestock.LivestockModel;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import util.JSONRowSink;
+import util.Metrics;
+import util.QueryLog;
 
 import database.DatabaseConnectionHandler;
+import database.FarmDataGenerator;
+import database.NurtureWriteBuffer;
+import database.Table;
 import model.models.livestock.Livestock_4_Model;
 
+import java.io.IOException;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.List;
 
 public class FarmingSystem {
 
@@ -45,6 +57,57 @@ public class FarmingSystem {
 
     }
 
+    /**
+     * Connection pool counters (active, idle, waiters, wait times)
+     */
+    public JSONObject getPoolStats() {
+        return dbHandler.getPoolStats();
+    }
+
+    /**
+     * Latency histograms, row and error counts per endpoint, handler method and SQL shape,
+     * together with the pool, query log and filter shape counters
+     */
+    public JSONObject getMetrics() {
+        JSONObject json = Metrics.toJSON();
+        json.put("pool", dbHandler.getPoolStats());
+        json.put("queryLog", QueryLog.getStats());
+        json.put("filterShapes", FilterQuery.getDistinctShapeCount());
+        json.put("livestockDimensions", dbHandler.getLivestockDimensionStats());
+        json.put("metadataCache", dbHandler.getMetadataCacheStats());
+        json.put("resultCache", dbHandler.getResultCacheStats());
+        json.put("nurtureTotals", dbHandler.getNurtureTotalsStats());
+        json.put("listingSnapshots", dbHandler.getListingSnapshotStats());
+        json.put("livestockColumns", dbHandler.getLivestockColumnStats());
+        json.put("livestockWideView", dbHandler.getLivestockWideViewStats());
+        json.put("nurtureBuffer", dbHandler.getNurtureBufferStats());
+        json.put("writePipeline", dbHandler.getWritePipelineStats());
+        return json;
+    }
+
+    /**
+     * Aggregate result cache hit ratio and per-entry age
+     */
+    public JSONObject getResultCacheStats() {
+        return dbHandler.getResultCacheStats();
+    }
+
+    /**
+     * Query log settings and counters (logged, dropped, queued)
+     */
+    public JSONObject getQueryLogStats() {
+        return QueryLog.getStats();
+    }
+
+    /**
+     * Number of distinct parameterized filter SQL shapes generated so far
+     */
+    public JSONObject getFilterShapeStats() {
+        JSONObject json = new JSONObject();
+        json.put("distinctShapes", FilterQuery.getDistinctShapeCount());
+        return json;
+    }
+
 
     /* -------------------------------------------------------------------------- */
     /*                               CROPS REQUESTS                               */
@@ -64,6 +127,29 @@ public class FarmingSystem {
       return cropsArray;
     }
 
+    /**
+     * Streams one page of crops to sink, a null page streams them all
+     *
+     * @return the cursor of the next page, or null if this was the last one
+     */
+    public String streamCrops(PageRequest page, JSONRowSink sink) throws SQLException, IOException {
+      return dbHandler.streamCrops(page, sink);
+    }
+
+    /**
+     * @return the ETag of the crop listings, it only changes when crops are written
+     */
+    public String getCropsETag() {
+        return dbHandler.getTablesTag(Table.CROPS);
+    }
+
+    /**
+     * @return every crop as a pre-rendered UTF-8 JSON array, or null if it has to be streamed instead
+     */
+    public byte[] getCropsSnapshot() {
+        return dbHandler.getCropsSnapshot();
+    }
+
     public JSONArray getFilteredCrops(CropType cropType, CropVariant cropVariant, CropStatus cropStatus, int minQuantity,
         int maxQuantity) {
       CropsFilterModel model = new CropsFilterModel(cropType, cropVariant, cropStatus, minQuantity,
@@ -73,11 +159,30 @@ public class FarmingSystem {
       JSONArray cropsArray = new JSONArray(crops);
       return cropsArray;
     }
+
+    public String streamFilteredCrops(CropsFilterModel model, PageRequest page, JSONRowSink sink)
+        throws SQLException, IOException {
+      return dbHandler.streamFilteredCrops(model, page, sink);
+    }
     
 
     /* -------------------------------------------------------------------------- */
     /*                             LIVESTOCK REQUESTS                             */
     /* -------------------------------------------------------------------------- */
+    /**
+     * @return the ETag of the livestock listings, it only changes when livestock is written
+     */
+    public String getLivestockETag() {
+        return dbHandler.getTablesTag(Table.LIVESTOCK_4, Table.LIVESTOCK_1, Table.LIVESTOCK_3);
+    }
+
+    /**
+     * @return every livestock wide row as a pre-rendered UTF-8 JSON array, or null if it has to be streamed instead
+     */
+    public byte[] getLivestockSnapshot() {
+        return dbHandler.getLivestockSnapshot();
+    }
+
     /**
      * Retrieves all livestock data from database
      */
@@ -93,6 +198,15 @@ public class FarmingSystem {
         return livestockArray;
     }
 
+    /**
+     * Streams one page of livestock to sink, a null page streams them all
+     *
+     * @return the cursor of the next page, or null if this was the last one
+     */
+    public String streamLivestock(PageRequest page, JSONRowSink sink) throws SQLException, IOException {
+        return dbHandler.streamLivestock(page, sink);
+    }
+
     public JSONArray getFilteredLivestock(String harvestable, AnimalType animalType, CropType diet, int minAge, int maxAge,
                                           int minTagID, int maxTagID, int minWaterSpent, int minFoodSpent) {
         LivestockFilterModel model = new LivestockFilterModel(harvestable, animalType, diet, minAge, maxAge,
@@ -103,6 +217,11 @@ public class FarmingSystem {
         return livestockArray;
     }
 
+    public String streamFilteredLivestock(LivestockFilterModel model, PageRequest page, JSONRowSink sink)
+            throws SQLException, IOException {
+        return dbHandler.streamFilteredLivestock(model, page, sink);
+    }
+
     public JSONArray getWaterAndFoodOfLivestock(int tagID) {
         ArrayList<JSONObject> data = dbHandler.getWaterAndFoodSpentOfLivestock(tagID);
         JSONArray dataArray = new JSONArray(data);
@@ -110,14 +229,93 @@ public class FarmingSystem {
     }
 
     public boolean deleteLivestock(int tagID) {
-        return dbHandler.deleteLivestock(tagID);
+        return dbHandler.mutate(() -> dbHandler.deleteLivestock(tagID), false);
+    }
+
+    /**
+     * Delete every livestock in tagIDs in committed chunks, with their nurtures, vet records and products.
+     * Not run through the write pipeline, its chunks commit on their own.
+     *
+     * @param progress gets { deleted, processed, total, failedChunks } after every chunk, may be null
+     * @return the final { deleted, processed, total, failedChunks }, or { error }
+     */
+    public JSONObject deleteLivestockBatch(List<Integer> tagIDs, JSONRowSink progress) {
+        return dbHandler.deleteLivestockBatch(tagIDs, progress);
+    }
+
+    /**
+     * Delete every livestock matching the filter in committed chunks, e.g. a whole flock that was sold
+     *
+     * @return the final { deleted, processed, total, failedChunks }, or { error }
+     */
+    public JSONObject deleteFilteredLivestock(LivestockFilterModel filter, JSONRowSink progress) {
+        return dbHandler.deleteFilteredLivestock(filter, progress);
+    }
+
+    /**
+     * Record a farmer feeding/watering a livestock
+     */
+    public boolean recordNurture(NurtureModel model) {
+        return dbHandler.mutate(() -> dbHandler.insertNurture(model), false);
+    }
+
+    /**
+     * Record a nurture event through the write buffer, committed together with other events
+     *
+     * @param durability whether to wait for the commit (ack) or only for the event to be queued (async)
+     * @return { outcome: committed | queued | rejected | failed | pending, error, queueDepth }
+     */
+    public JSONObject bufferNurture(NurtureModel model, NurtureWriteBuffer.Durability durability) {
+        return dbHandler.bufferNurture(model, durability);
+    }
+
+    /**
+     * Write pipeline queue depth, batch sizes and commit latency (fms.writes.pipeline)
+     */
+    public JSONObject getWritePipelineStats() {
+        return dbHandler.getWritePipelineStats();
+    }
+
+    /**
+     * Nurture write buffer queue depth, outcome counts and flush latency
+     */
+    public JSONObject getNurtureBufferStats() {
+        return dbHandler.getNurtureBufferStats();
     }
 
     /**
      * Insert a livestock given info
      */
     public boolean insertLivestock(LivestockModel model) {
-        return dbHandler.insertLivestock(model);
+        return dbHandler.mutate(() -> dbHandler.insertLivestock(model), false);
+    }
+
+    /**
+     * Insert a herd of livestock in one transaction, rows that fail are reported and skipped
+     *
+     * @param models the animals, null for one that could not be parsed
+     * @return { inserted, failed: [ { index, tagID, error } ] }
+     */
+    public JSONObject insertLivestockBatch(List<LivestockModel> models) {
+        return dbHandler.mutate(() -> dbHandler.insertLivestockBatch(models), notApplied(models));
+    }
+
+    // What insertLivestockBatch reports when the write pipeline couldn't apply it: every row failed
+    private static JSONObject notApplied(List<LivestockModel> models) {
+        JSONArray failed = new JSONArray();
+        for (int i = 0; i < models.size(); i++) {
+            JSONObject failure = new JSONObject();
+            failure.put("index", i);
+            if (models.get(i) != null) {
+                failure.put("tagID", models.get(i).getTagID());
+            }
+            failure.put("error", "not applied");
+            failed.put(failure);
+        }
+        JSONObject json = new JSONObject();
+        json.put("inserted", 0);
+        json.put("failed", failed);
+        return json;
     }
 
     /**
@@ -125,7 +323,25 @@ public class FarmingSystem {
      */
 
     public boolean updateLivestock(Livestock_4_Model model, ActionType actionType) {
-        return dbHandler.updateLivestock(model, actionType);
+        return dbHandler.mutate(() -> dbHandler.updateLivestock(model, actionType), false);
+    }
+
+    /**
+     * Feed or harvest every livestock in tagIDs at once
+     *
+     * @return the number of livestock updated, -1 on failure
+     */
+    public int updateLivestockBatch(List<Integer> tagIDs, ActionType actionType) {
+        return dbHandler.mutate(() -> dbHandler.updateLivestockBatch(tagIDs, actionType), -1);
+    }
+
+    /**
+     * Feed or harvest every livestock matching the filter at once, e.g. all sheep aged 2-4
+     *
+     * @return the number of livestock updated, -1 on failure
+     */
+    public int updateFilteredLivestock(LivestockFilterModel filter, ActionType actionType) {
+        return dbHandler.mutate(() -> dbHandler.updateFilteredLivestock(filter, actionType), -1);
     }
 
 
@@ -141,6 +357,10 @@ public class FarmingSystem {
         return dataJSONArray;
     }
 
+    public void streamSelect(ArrayList<String> columns, String tableName, JSONRowSink sink) {
+        dbHandler.streamProjection(tableName, columns, sink);
+    }
+
 
     /**
      * Join query with vet records
@@ -192,6 +412,22 @@ public class FarmingSystem {
         return columnsJSONArray;
     }
 
+    /**
+     * Drops cached table/column metadata for tableName, or all of it when tableName is null
+     */
+    public void invalidateMetadata(String tableName) {
+        dbHandler.invalidateMetadata(tableName);
+    }
+
+    /**
+     * Fill the database with seeded synthetic farm data for load testing
+     *
+     * @return the rows inserted per table and the time taken, or { error }
+     */
+    public JSONObject generateData(FarmDataGenerator.Settings settings) {
+        return dbHandler.generateData(settings);
+    }
+
     /**
      * Nested aggregation
      */
@@ -0,0 +1,35 @@
+package com.server.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+import util.Metrics;
+
+/**
+ * Times every MainController request into Metrics, keyed by "METHOD /mapped/pattern".
+ * A request counts as an error if it threw or answered with a 5xx status.
+ */
+public class MetricsInterceptor implements HandlerInterceptor {
+    private static final String START_ATTRIBUTE = MetricsInterceptor.class.getName() + ".start";
+
+    @Override
+    public boolean preHandle(HttpServletRequest req, HttpServletResponse res, Object handler) {
+        req.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest req, HttpServletResponse res, Object handler, Exception ex) {
+        Object start = req.getAttribute(START_ATTRIBUTE);
+        if (!(start instanceof Long)) {
+            return;
+        }
+
+        Object pattern = req.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String name = req.getMethod() + " " + (pattern != null ? pattern : req.getRequestURI());
+        boolean failed = ex != null || res.getStatus() >= 500;
+        Metrics.endpoint(name).record(System.nanoTime() - (Long) start, 0, failed);
+    }
+}
@@ -2,23 +2,33 @@ package com.server.controller;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import model.models.NurtureModel;
 import model.models.livestock.LivestockModel;
 import model.models.livestock.Livestock_4_Model;
 import model.enums.ActionType;
 import model.enums.AnimalType;
-import model.enums.CropStatus;
-import model.enums.CropType;
-import model.enums.CropVariant;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import actions.FarmingSystem;
+import database.FarmDataGenerator;
+import database.NurtureWriteBuffer;
+import model.filters.CropsFilterModel;
+import model.filters.LivestockFilterModel;
+import model.filters.PageRequest;
+import util.JSONArrayWriter;
+import util.JSONRowSink;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static org.springframework.web.bind.annotation.RequestMethod.*;
@@ -62,20 +72,122 @@ public class MainController {
         return system.logout();
     }
 
+    /**
+     * Handles Connection Pool Statistics Requests
+     */
+    @RequestMapping(value = "/pool/stats", method = GET)
+    public void getPoolStats(HttpServletResponse res) throws IOException {
+        JSONObject stats = system.getPoolStats();
+        PrintWriter out = res.getWriter();
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        out.print(stats);
+        out.flush();
+    }
+
+    /**
+     * Handles Metrics Requests, in the form of:
+     * {
+     *     endpoints: { "GET /api/livestock": { count, meanMillis, p50Millis, p99Millis, p999Millis, maxMillis, rows, errors }, ... },
+     *     handlers: { "getLivestock": { ... }, ... },
+     *     sql: { "SELECT ...": { ... }, ... },
+     *     pool: { ... }, queryLog: { ... }, filterShapes: int
+     * }
+     */
+    @RequestMapping(value = "/metrics", method = GET)
+    public void getMetrics(HttpServletResponse res) throws IOException {
+        JSONObject metrics = system.getMetrics();
+        PrintWriter out = res.getWriter();
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        out.print(metrics);
+        out.flush();
+    }
+
+    /**
+     * Handles Result Cache Statistics Requests, in the form of:
+     * { hits, misses, hitRatio, invalidations, entries: { key: { ageMillis, rows, hits, dependsOn } } }
+     */
+    @RequestMapping(value = "/resultcache/stats", method = GET)
+    public void getResultCacheStats(HttpServletResponse res) throws IOException {
+        JSONObject stats = system.getResultCacheStats();
+        PrintWriter out = res.getWriter();
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        out.print(stats);
+        out.flush();
+    }
+
+    /**
+     * Handles Query Log Statistics Requests
+     */
+    @RequestMapping(value = "/querylog/stats", method = GET)
+    public void getQueryLogStats(HttpServletResponse res) throws IOException {
+        JSONObject stats = system.getQueryLogStats();
+        PrintWriter out = res.getWriter();
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        out.print(stats);
+        out.flush();
+    }
+
+    /**
+     * Handles Filter SQL Shape Count Requests
+     */
+    @RequestMapping(value = "/filters/shapes", method = GET)
+    public void getFilterShapeStats(HttpServletResponse res) throws IOException {
+        JSONObject stats = system.getFilterShapeStats();
+        PrintWriter out = res.getWriter();
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        out.print(stats);
+        out.flush();
+    }
+
+    /**
+     * Handles Write Pipeline Statistics Requests
+     */
+    @RequestMapping(value = "/writepipeline/stats", method = GET)
+    public void getWritePipelineStats(HttpServletResponse res) throws IOException {
+        JSONObject stats = system.getWritePipelineStats();
+        PrintWriter out = res.getWriter();
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        out.print(stats);
+        out.flush();
+    }
+
     /* -------------------------------------------------------------------------- */
     /*                               CROPS REQUESTS                               */
     /* -------------------------------------------------------------------------- */
     /**
-     * Handles Retrieving Crop Requests
+     * Handles Retrieving Crop Requests, rows are streamed to the response as they are read
+     *
+     * Optional query params cursor and limit switch to keyset pagination, see writeRows. A cursor that isn't
+     * one of ours is answered with 400.
+     *
+     * Answers If-None-Match with 304 without touching the database while no crop was written, see getCropsETag.
+     * Unpaged requests are served from the pre-rendered snapshot when it is up to date.
      */
     @RequestMapping(value = "/crops", method = GET)
-    public void getCrops(HttpServletRequest req, HttpServletResponse res) throws IOException {
-      JSONArray crops = system.getCrops(req);
-      PrintWriter out = res.getWriter();
-      res.setContentType("application/json");
-      res.setCharacterEncoding("UTF-8");
-      out.print(crops);
-      out.flush();
+    public void getCrops(@RequestParam(required = false) String cursor, @RequestParam(required = false) Integer limit,
+                         WebRequest request, HttpServletResponse res) throws IOException, SQLException {
+      // Revalidate on every use, the tag is cheap to check
+      res.setHeader("Cache-Control", "no-cache");
+      if (request.checkNotModified(system.getCropsETag())) {
+        return;
+      }
+      PageRequest page;
+      try {
+        page = PageRequest.cropsParams(cursor, limit);
+      } catch (IllegalArgumentException e) {
+        writeBadRequest(res, e.getMessage());
+        return;
+      }
+      if (page == null && writeSnapshot(res, system.getCropsSnapshot())) {
+        return;
+      }
+      writeRows(res, page, out -> system.streamCrops(page, out));
     }
 
     /**
@@ -84,23 +196,17 @@ public class MainController {
      */
     @RequestMapping(value = "/crops/filteredValues", method = POST)
     @ResponseBody
-    @SuppressWarnings("unchecked")
-    public void getFilteredCrops(@RequestBody Map<String, Object> map, HttpServletResponse res) throws IOException {
-      // Check for if null for these values.
-      CropType cropType = CropType.valueOf(map.get("cropType").toString().toUpperCase());
-      CropVariant cropVariant = CropVariant.valueOf(map.get("cropVariant").toString().toUpperCase());
-      CropStatus cropStatus = CropStatus.valueOf(map.get("cropStatus").toString().toUpperCase());
-
-      Map<String, Object> quantity = (Map<String, Object>) map.get("quantity");
-      int minQuantity = (int) quantity.get("min");
-      int maxQuantity = (int) quantity.get("max");
-
-      JSONArray crops = system.getFilteredCrops(cropType, cropVariant, cropStatus, minQuantity, maxQuantity);
-      PrintWriter out = res.getWriter();
-      res.setContentType("application/json");
-      res.setCharacterEncoding("UTF-8");
-      out.print(crops);
-      out.flush();
+    public void getFilteredCrops(@RequestBody Map<String, Object> map, HttpServletResponse res)
+        throws IOException, SQLException {
+      CropsFilterModel model = CropsFilterModel.fromRequestBody(map);
+      PageRequest page;
+      try {
+        page = PageRequest.cropsParams(map.get("cursor"), map.get("limit"));
+      } catch (IllegalArgumentException e) {
+        writeBadRequest(res, e.getMessage());
+        return;
+      }
+      writeRows(res, page, out -> system.streamFilteredCrops(model, page, out));
     }
 
 
@@ -108,16 +214,32 @@ public class MainController {
     /*                             LIVESTOCK REQUESTS                             */
     /* -------------------------------------------------------------------------- */
     /**
-     * Handles Retrieving Livestock Requests
+     * Handles Retrieving Livestock Requests, rows are streamed to the response as they are read
+     *
+     * Optional query params cursor and limit switch to keyset pagination, see writeRows. A cursor that isn't
+     * one of ours is answered with 400.
+     *
+     * Answers If-None-Match with 304 without touching the database while no livestock was written,
+     * see getLivestockETag. Unpaged requests are served from the pre-rendered snapshot when it is up to date.
      */
     @RequestMapping(value = "/livestock", method = GET)
-    public void getLivestock(HttpServletRequest req, HttpServletResponse res) throws IOException {
-        JSONArray livestock = system.getLivestock(req);
-        PrintWriter out = res.getWriter();
-        res.setContentType("application/json");
-        res.setCharacterEncoding("UTF-8");
-        out.print(livestock);
-        out.flush();
+    public void getLivestock(@RequestParam(required = false) String cursor, @RequestParam(required = false) Integer limit,
+                             WebRequest request, HttpServletResponse res) throws IOException, SQLException {
+        res.setHeader("Cache-Control", "no-cache");
+        if (request.checkNotModified(system.getLivestockETag())) {
+            return;
+        }
+        PageRequest page;
+        try {
+            page = PageRequest.livestockParams(cursor, limit);
+        } catch (IllegalArgumentException e) {
+            writeBadRequest(res, e.getMessage());
+            return;
+        }
+        if (page == null && writeSnapshot(res, system.getLivestockSnapshot())) {
+            return;
+        }
+        writeRows(res, page, out -> system.streamLivestock(page, out));
     }
 
     /**
@@ -126,31 +248,17 @@ public class MainController {
      */
     @RequestMapping(value = "/livestock/filteredValues", method = POST)
     @ResponseBody
-    @SuppressWarnings("unchecked")
-    public void getFilteredLivestock(@RequestBody Map<String, Object> map, HttpServletResponse res) throws IOException {
-        // Check for if null for these values.
-        String harvestable = map.get("harvestable").toString().toUpperCase();
-        AnimalType animalType = AnimalType.valueOf(map.get("animalType").toString().toUpperCase());
-        CropType diet = CropType.valueOf(map.get("diet").toString().toUpperCase());
-
-        Map<String, Object> tagID = (Map<String, Object>) map.get("tagID");
-        int minTagID = (int) tagID.get("min");
-        int maxTagID = (int) tagID.get("max");
-
-        Map<String, Object> age = (Map<String, Object>) map.get("age");
-        int minAge = (int) age.get("min");
-        int maxAge = (int) age.get("max");
-
-        int minWaterSpent = (int) map.get("minWaterSpent");
-        int minFoodSpent = (int) map.get("minFoodSpent");
-
-        JSONArray livestock = system.getFilteredLivestock(harvestable, animalType, diet, minAge, maxAge,
-                minTagID, maxTagID, minWaterSpent, minFoodSpent);
-        PrintWriter out = res.getWriter();
-        res.setContentType("application/json");
-        res.setCharacterEncoding("UTF-8");
-        out.print(livestock);
-        out.flush();
+    public void getFilteredLivestock(@RequestBody Map<String, Object> map, HttpServletResponse res)
+            throws IOException, SQLException {
+        LivestockFilterModel model = LivestockFilterModel.fromRequestBody(map);
+        PageRequest page;
+        try {
+            page = PageRequest.livestockParams(map.get("cursor"), map.get("limit"));
+        } catch (IllegalArgumentException e) {
+            writeBadRequest(res, e.getMessage());
+            return;
+        }
+        writeRows(res, page, out -> system.streamFilteredLivestock(model, page, out));
     }
 
     /**
@@ -162,6 +270,34 @@ public class MainController {
         return system.insertLivestock(model);
     }
 
+    /**
+     * Handles Bulk Insert Livestock Requests: a JSON array of livestock as /livestock/insert takes them,
+     * inserted in one transaction. Rows that fail don't stop the others, the response is in the form of:
+     * { inserted: int, failed: [ { index, tagID, error } ] } where index is the row's position in the request
+     */
+    @RequestMapping(value = "/livestock/insertBatch", method = POST)
+    public void insertLivestockBatch(@RequestBody List<Map<String, Object>> rows, HttpServletResponse res)
+            throws IOException {
+        List<LivestockModel> models = new ArrayList<>();
+        for (Map<String, Object> row : rows) {
+            LivestockModel model;
+            try {
+                model = LivestockModel.fromJSON(new JSONObject(row));
+            } catch (JSONException | IllegalArgumentException e) {
+                // Reported as failed by its index
+                model = null;
+            }
+            models.add(model);
+        }
+        JSONObject result = system.insertLivestockBatch(models);
+
+        PrintWriter out = res.getWriter();
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        out.print(result);
+        out.flush();
+    }
+
     /**
      * Handles Delete Livestock Requests
      */
@@ -172,6 +308,42 @@ public class MainController {
         return system.deleteLivestock(tagIDToDelete);
     }
 
+    /**
+     * Handles Bulk Delete Livestock Requests, in the form of:
+     * { tagIDs: [ int ] } or { filter: { the /livestock/filteredValues body } }
+     * Streams a JSON array of { deleted, processed, total, failedChunks }, one per committed chunk as it
+     * commits, the last one being the final count (or { error })
+     */
+    @RequestMapping(value = "/livestock/deleteBatch", method = POST)
+    @SuppressWarnings("unchecked")
+    public void deleteLivestockBatch(@RequestBody Map<String, Object> map, HttpServletResponse res)
+            throws IOException {
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        PrintWriter writer = res.getWriter();
+        try (JSONArrayWriter out = new JSONArrayWriter(writer)) {
+            JSONRowSink progress = row -> {
+                out.accept(row);
+                writer.flush();
+            };
+            JSONObject result;
+            if (map.get("filter") != null) {
+                LivestockFilterModel filter = LivestockFilterModel.fromRequestBody((Map<String, Object>) map.get("filter"));
+                result = system.deleteFilteredLivestock(filter, progress);
+            } else {
+                List<Integer> tagIDs = new ArrayList<>();
+                for (Object tagID : (List<Object>) map.get("tagIDs")) {
+                    tagIDs.add(Integer.parseInt(tagID.toString()));
+                }
+                result = system.deleteLivestockBatch(tagIDs, progress);
+            }
+            if (result.has("error") || result.getInt("total") == 0) {
+                // Nothing was reported while deleting
+                out.accept(result);
+            }
+        }
+    }
+
     /**
      * Handles Update Livestock Requests
       */
@@ -183,6 +355,75 @@ public class MainController {
         return system.updateLivestock(model, actionType);
     }
 
+    /**
+     * Handles Bulk Update Livestock Requests, in the form of:
+     * { actionType, tagIDs: [ int ] } or { actionType, filter: { the /livestock/filteredValues body } }
+     * Returns the number of livestock updated, -1 if the update failed
+     */
+    @RequestMapping(value = "/livestock/updateBatch", method = POST)
+    @ResponseBody
+    @SuppressWarnings("unchecked")
+    public int updateLivestockBatch(@RequestBody Map<String, Object> map) {
+        ActionType actionType = ActionType.valueOf(map.get("actionType").toString().toUpperCase());
+        if (map.get("filter") != null) {
+            LivestockFilterModel filter = LivestockFilterModel.fromRequestBody((Map<String, Object>) map.get("filter"));
+            return system.updateFilteredLivestock(filter, actionType);
+        }
+        List<Integer> tagIDs = new ArrayList<>();
+        for (Object tagID : (List<Object>) map.get("tagIDs")) {
+            tagIDs.add(Integer.parseInt(tagID.toString()));
+        }
+        return system.updateLivestockBatch(tagIDs, actionType);
+    }
+
+
+    /**
+     * Handles Recording Nurture Requests, in the form of:
+     * { farmerID, tagID, waterSpent, foodSpent, dateNurtured (optional, yyyy-mm-dd, defaults to today) }
+     */
+    @RequestMapping(value = "/livestock/nurture", method = POST)
+    @ResponseBody
+    public boolean recordNurture(@RequestBody Map<String, Object> map) {
+        NurtureModel model = NurtureModel.fromJSON(new JSONObject(map));
+        return system.recordNurture(model);
+    }
+
+    /**
+     * Handles Nurture Events from the feeders, in the /livestock/nurture form plus an optional
+     * durability: ack (wait for the commit) or async (only wait for the event to be queued).
+     * Events are written in batches, see NurtureWriteBuffer. Answers 503 when the buffer is full.
+     */
+    @RequestMapping(value = "/livestock/nurtureEvents", method = POST)
+    public void bufferNurture(@RequestBody Map<String, Object> map, HttpServletResponse res) throws IOException {
+        NurtureModel model = NurtureModel.fromJSON(new JSONObject(map));
+        NurtureWriteBuffer.Durability durability = map.get("durability") == null
+                ? NurtureWriteBuffer.DEFAULT_DURABILITY
+                : NurtureWriteBuffer.Durability.valueOf(map.get("durability").toString().toUpperCase());
+        JSONObject result = system.bufferNurture(model, durability);
+
+        if ("rejected".equals(result.getString("outcome"))) {
+            res.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+        PrintWriter out = res.getWriter();
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        out.print(result);
+        out.flush();
+    }
+
+    /**
+     * Handles Nurture Write Buffer Statistics Requests
+     */
+    @RequestMapping(value = "/livestock/nurtureEvents/stats", method = GET)
+    public void getNurtureBufferStats(HttpServletResponse res) throws IOException {
+        JSONObject stats = system.getNurtureBufferStats();
+
+        PrintWriter out = res.getWriter();
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        out.print(stats);
+        out.flush();
+    }
 
     /**
      * Handles getVetRecords request for the livestock
@@ -291,6 +532,51 @@ public class MainController {
         out.flush();
     }
 
+    /**
+     * Drops the cached /get/usertables and /get/tablecolumns results, e.g. after changing the schema.
+     * Optional request body: { "table_name": "LIVESTOCK_4" } to only drop that table's columns
+     */
+    @RequestMapping(value = "/metadata/invalidate", method = POST)
+    public boolean invalidateMetadata(@RequestBody(required = false) Map<String, Object> map) {
+        Object tableName = map == null ? null : map.get("table_name");
+        system.invalidateMetadata(tableName == null ? null : tableName.toString());
+        return true;
+    }
+
+    /**
+     * Loads seeded synthetic farm data for load testing, see FarmDataGenerator. Every key is optional:
+     * { seed, animals, farmers, fields, buyers, nurturesPerAnimal, vetRecordsPerAnimal, threads, asOf (yyyy-mm-dd) }
+     * The same body against the same starting database inserts the same rows.
+     *
+     * Answers 403 unless the backend was started with -Dfms.generate.enabled=true, the load runs on the request
+     * thread and takes a while at the default 100000 animals.
+     */
+    @RequestMapping(value = "/generate", method = POST)
+    public void generateData(@RequestBody(required = false) Map<String, Object> map, HttpServletResponse res)
+            throws IOException {
+        if (!FarmDataGenerator.ENABLED) {
+            JSONObject body = new JSONObject();
+            body.put("error", "Data generation is disabled, start the backend with -Dfms.generate.enabled=true");
+
+            res.setStatus(HttpServletResponse.SC_FORBIDDEN);
+            PrintWriter out = res.getWriter();
+            res.setContentType("application/json");
+            res.setCharacterEncoding("UTF-8");
+            out.print(body);
+            out.flush();
+            return;
+        }
+        FarmDataGenerator.Settings settings =
+                FarmDataGenerator.Settings.fromRequestBody(map == null ? new HashMap<>() : map);
+        JSONObject result = system.generateData(settings);
+
+        PrintWriter out = res.getWriter();
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        out.print(result);
+        out.flush();
+    }
+
     /**
      * General PROJECTION Query
      * Sample Request Format: {
@@ -304,12 +590,11 @@ public class MainController {
         ArrayList<String> columnsToSelect = (ArrayList<String>) map.get("columns");
         String tableToFrom = map.get("table").toString();
 
-        JSONArray data = system.getSelect(columnsToSelect, tableToFrom);
-        PrintWriter out = res.getWriter();
         res.setContentType("application/json");
         res.setCharacterEncoding("UTF-8");
-        out.print(data);
-        out.flush();
+        try (JSONArrayWriter out = new JSONArrayWriter(res.getWriter())) {
+            system.streamSelect(columnsToSelect, tableToFrom, out);
+        }
     }
 
 
@@ -360,6 +645,73 @@ public class MainController {
         out.print(data);
         out.flush();
     }
+    /**
+     * Writes a pre-rendered UTF-8 JSON body as is
+     *
+     * @return false if there is no body, nothing was written then
+     */
+    private boolean writeSnapshot(HttpServletResponse res, byte[] body) throws IOException {
+        if (body == null) {
+            return false;
+        }
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        res.setContentLength(body.length);
+        res.getOutputStream().write(body);
+        res.getOutputStream().flush();
+        return true;
+    }
+
+    /**
+     * Answers 400 with { error }
+     */
+    private void writeBadRequest(HttpServletResponse res, String error) throws IOException {
+        JSONObject body = new JSONObject();
+        body.put("error", error);
+
+        res.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        PrintWriter out = res.getWriter();
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        out.print(body);
+        out.flush();
+    }
+
+    /**
+     * Streams rows to the response. Without a page this writes a plain JSON array as before, with a page it writes:
+     * {
+     *     "rows": [ ... at most limit rows ... ],
+     *     "nextCursor": "opaque token to pass as cursor for the next page" OR null on the last page
+     * }
+     * If reading the rows fails the array is left open and the exception thrown, so a client can't take a cut off
+     * listing for a complete one.
+     */
+    private void writeRows(HttpServletResponse res, PageRequest page, PagedStream stream)
+            throws IOException, SQLException {
+        res.setContentType("application/json");
+        res.setCharacterEncoding("UTF-8");
+        PrintWriter writer = res.getWriter();
+
+        if (page == null) {
+            JSONArrayWriter out = new JSONArrayWriter(writer);
+            stream.stream(out);
+            out.close();
+            return;
+        }
+
+        writer.write("{\"rows\":");
+        JSONArrayWriter out = new JSONArrayWriter(writer);
+        String nextCursor = stream.stream(out);
+        out.close();
+        writer.write(",\"nextCursor\":" + (nextCursor == null ? "null" : JSONObject.quote(nextCursor)) + "}");
+        writer.flush();
+    }
+
+    @FunctionalInterface
+    private interface PagedStream {
+        String stream(JSONRowSink out) throws SQLException, IOException;
+    }
+
       // For Ref!
     //    @RequestMapping(value = "/login", method = POST)
     //    public boolean login(HttpServletRequest req, HttpServletResponse res, Model model) throws IOException {
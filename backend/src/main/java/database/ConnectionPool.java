@@ -0,0 +1,417 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.json.JSONObject;
+
+/**
+ * A fixed size pool of Oracle connections shared by every DatabaseConnectionHandler method.
+ *
+ * Connections handed out by getConnection() are proxies: calling close() on them returns the
+ * underlying connection to the pool instead of closing the Oracle session. Each physical connection
+ * keeps its own StatementCache, so prepareStatement(sql) only parses a given SQL text once per session.
+ */
+public class ConnectionPool {
+    private static final String EXCEPTION_TAG = "[EXCEPTION]";
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maxSize;
+    private final int minIdle;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final long validationIntervalMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+    private final StatementCache.Counters statementCounters = new StatementCache.Counters();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final ArrayDeque<PooledConnection> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService evictor;
+
+    // All of the fields below are guarded by lock
+    private int total = 0;
+    private int waiters = 0;
+    private boolean closed = false;
+    private long borrowCount = 0;
+    private long timeoutCount = 0;
+    private long createdCount = 0;
+    private long evictedCount = 0;
+    private long totalWaitNanos = 0;
+    private long maxWaitNanos = 0;
+
+    public ConnectionPool(String url, String username, String password, int maxSize, int minIdle,
+                          long borrowTimeoutMillis, long idleTimeoutMillis, long validationIntervalMillis,
+                          int validationTimeoutSeconds, int statementCacheSize) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.minIdle = Math.min(minIdle, maxSize);
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationIntervalMillis = validationIntervalMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the first connection so bad credentials fail fast, then fills the pool up to minIdle.
+     */
+    public void start() throws SQLException {
+        PooledConnection first = createConnection();
+        release(first);
+
+        for (int i = 1; i < minIdle; i++) {
+            try {
+                release(createConnection());
+            } catch (SQLException e) {
+                System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+                break;
+            }
+        }
+    }
+
+    /**
+     * Borrows a connection, waiting up to borrowTimeoutMillis for one to be returned when the pool is exhausted.
+     * The returned connection must be closed by the caller to give it back to the pool.
+     */
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+
+        while (true) {
+            PooledConnection candidate = null;
+            boolean create = false;
+
+            lock.lock();
+            try {
+                while (candidate == null && !create) {
+                    if (closed) {
+                        throw new SQLException("Connection pool is closed");
+                    }
+
+                    if (!idle.isEmpty()) {
+                        candidate = idle.pollLast();
+                    } else if (total < maxSize) {
+                        total++;
+                        create = true;
+                    } else {
+                        if (remaining <= 0) {
+                            timeoutCount++;
+                            throw new SQLTimeoutException("Timed out after " + borrowTimeoutMillis
+                                    + "ms waiting for a database connection");
+                        }
+                        waiters++;
+                        try {
+                            remaining = available.awaitNanos(remaining);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new SQLException("Interrupted while waiting for a database connection", e);
+                        } finally {
+                            waiters--;
+                        }
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (create) {
+                try {
+                    candidate = openConnection();
+                } catch (SQLException e) {
+                    discarded();
+                    throw e;
+                }
+            } else if (!validate(candidate)) {
+                closePhysical(candidate);
+                discarded();
+                continue;
+            }
+
+            recordBorrow(System.nanoTime() - start);
+            return candidate.lend();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return a snapshot of the pool counters, in the form of:
+     * { active, idle, total, maxSize, waiters, borrowCount, timeoutCount, createdCount, evictedCount,
+     *   averageWaitMillis, maxWaitMillis, statementCache: { hits, misses, evictions, hitRatio } }
+     */
+    public JSONObject getStats() {
+        lock.lock();
+        try {
+            JSONObject json = new JSONObject();
+            json.put("active", total - idle.size());
+            json.put("idle", idle.size());
+            json.put("total", total);
+            json.put("maxSize", maxSize);
+            json.put("waiters", waiters);
+            json.put("borrowCount", borrowCount);
+            json.put("timeoutCount", timeoutCount);
+            json.put("createdCount", createdCount);
+            json.put("evictedCount", evictedCount);
+            json.put("averageWaitMillis", borrowCount == 0 ? 0.0 : totalWaitNanos / (double) borrowCount / 1_000_000.0);
+            json.put("maxWaitMillis", maxWaitNanos / 1_000_000.0);
+            json.put("statementCache", statementCounters.toJSON());
+            return json;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes every idle connection. Borrowed connections are closed as soon as they are returned.
+     */
+    public void close() {
+        List<PooledConnection> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            total -= idle.size();
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        evictor.shutdownNow();
+        for (PooledConnection pooled : toClose) {
+            closePhysical(pooled);
+        }
+    }
+
+    private PooledConnection createConnection() throws SQLException {
+        lock.lock();
+        try {
+            total++;
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            return openConnection();
+        } catch (SQLException e) {
+            discarded();
+            throw e;
+        }
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, username, password);
+        physical.setAutoCommit(false);
+
+        lock.lock();
+        try {
+            createdCount++;
+        } finally {
+            lock.unlock();
+        }
+        return new PooledConnection(physical);
+    }
+
+    private boolean validate(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsedMillis < validationIntervalMillis) {
+            return true;
+        }
+
+        try {
+            return pooled.physical.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        pooled.statementCache.reset();
+        pooled.lastUsedMillis = System.currentTimeMillis();
+        // Whatever the borrower left uncommitted (say after a RuntimeException) must not be committed by the next
+        try {
+            pooled.physical.rollback();
+        } catch (SQLException e) {
+            System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+            closePhysical(pooled);
+            discarded();
+            return;
+        }
+
+        lock.lock();
+        try {
+            if (!closed) {
+                idle.addLast(pooled);
+                available.signal();
+                return;
+            }
+            total--;
+        } finally {
+            lock.unlock();
+        }
+        closePhysical(pooled);
+    }
+
+    private void discarded() {
+        lock.lock();
+        try {
+            total--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recordBorrow(long waitNanos) {
+        lock.lock();
+        try {
+            borrowCount++;
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes connections that have sat idle longer than idleTimeoutMillis, keeping at least minIdle around.
+     * Idle connections are kept in most-recently-used order at the tail, so the oldest are at the head.
+     */
+    private void evictIdle() {
+        List<PooledConnection> toClose = new ArrayList<>();
+        long cutoff = System.currentTimeMillis() - idleTimeoutMillis;
+
+        lock.lock();
+        try {
+            Iterator<PooledConnection> it = idle.iterator();
+            while (it.hasNext() && idle.size() > minIdle) {
+                PooledConnection pooled = it.next();
+                if (pooled.lastUsedMillis >= cutoff) {
+                    break;
+                }
+                it.remove();
+                total--;
+                evictedCount++;
+                toClose.add(pooled);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (PooledConnection pooled : toClose) {
+            closePhysical(pooled);
+        }
+    }
+
+    private void closePhysical(PooledConnection pooled) {
+        pooled.statementCache.close();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+        }
+    }
+
+    /**
+     * A physical connection with its statement cache, lent out through a new Lease per borrow.
+     */
+    private class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statementCache;
+        private volatile long lastUsedMillis = System.currentTimeMillis();
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statementCache = new StatementCache(physical, statementCacheSize, statementCounters);
+        }
+
+        /**
+         * @return a proxy for one borrower, close() returns the connection to the pool and makes the proxy unusable
+         */
+        Connection lend() {
+            return new Lease(this).proxy;
+        }
+    }
+
+    /**
+     * One borrow of a PooledConnection. A reference kept after close() stays unusable even once the connection
+     * is lent out again, the next borrower gets a proxy of its own.
+     */
+    private class Lease implements InvocationHandler {
+        private final PooledConnection pooled;
+        private final Connection proxy;
+        private volatile boolean returned = false;
+
+        Lease(PooledConnection pooled) {
+            this.pooled = pooled;
+            this.proxy = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + pooled.physical;
+                default:
+                    break;
+            }
+
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+
+            if (method.getName().equals("prepareStatement") && args.length == 1) {
+                return pooled.statementCache.prepare((String) args[0]);
+            }
+
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -1,23 +1,41 @@
 package database;
 
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.*;
 import java.util.ArrayList;
-import java.util.Random;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import model.filters.CropsFilterModel;
+import model.filters.FilterQuery;
 import model.filters.LivestockFilterModel;
+import model.filters.PageRequest;
 import model.models.livestock.LivestockModel;
+import model.models.NurtureModel;
 import model.models.livestock.Livestock_1_Model;
 import model.models.livestock.Livestock_3_Model;
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 import model.enums.ActionType;
 import model.enums.AnimalType;
-import model.enums.CropStatus;
 import model.enums.CropType;
-import model.enums.CropVariant;
 import model.models.crop.CropModel;
 import model.models.livestock.Livestock_4_Model;
+import util.JSONRowSink;
+import util.Metrics;
 import util.PrintablePreparedStatement;
 
 /**
@@ -33,9 +51,79 @@ public class DatabaseConnectionHandler {
 	private static final String EXCEPTION_TAG = "[EXCEPTION]";
 	private static final String WARNING_TAG = "[WARNING]";
 
-	private Connection connection = null;
+	// Connection pool sizing, see ConnectionPool.getStats() when tuning these under load
+	private static final int POOL_MAX_SIZE = 10;
+	private static final int POOL_MIN_IDLE = 2;
+	private static final long POOL_BORROW_TIMEOUT_MS = 5000;
+	private static final long POOL_IDLE_TIMEOUT_MS = 5 * 60 * 1000;
+	private static final long POOL_VALIDATION_INTERVAL_MS = 30 * 1000;
+	private static final int POOL_VALIDATION_TIMEOUT_S = 2;
+	private static final int POOL_STATEMENT_CACHE_SIZE = 64;
+	// Each FarmDataGenerator thread holds a pooled connection, leave some for the requests served meanwhile
+	private static final int GENERATOR_MAX_THREADS = POOL_MAX_SIZE - POOL_MIN_IDLE;
+
+	// Rows fetched per round trip by the streaming list queries (the Oracle driver default is 10)
+	private static final int STREAM_FETCH_SIZE = 500;
+	// Largest follow-up batch when filtering in the application leaves a page short
+	private static final int MAX_REFILL_BATCH = 5000;
+	// Rows per executeBatch() of the bulk writes, a failing chunk is retried row by row
+	private static final int WRITE_BATCH_SIZE = 500;
+	// Most binds in one IN list (Oracle allows 1000 expressions)
+	private static final int MAX_IN_LIST = 1000;
+	// Animals per committed DELETE of the bulk deletes, with their cascaded rows this bounds undo and lock time
+	private static final int DELETE_CHUNK_SIZE = 256;
+	// The livestock wide row as projected from LIVESTOCK_WIDE, see LivestockWideView
+	private static final String WIDE_VIEW_COLUMNS =
+			"tagID, animalType, age, diet, weight, lastFed, harvestable, lastViolatedForHarvestedGoods";
+	// Idempotent dimension row inserts: a key already there is left as it is, without a failed statement.
+	// The casts type the binds of the USING row. Package-private for FarmDataGenerator.
+	static final String LIVESTOCK_3_MERGE =
+			"MERGE INTO Livestock_3 L3 USING (SELECT CAST(? AS VARCHAR2(10)) AS animalType, CAST(? AS INTEGER) AS age, " +
+			"CAST(? AS INTEGER) AS harvestable FROM dual) src ON (L3.animalType = src.animalType AND L3.age = src.age) " +
+			"WHEN NOT MATCHED THEN INSERT (animalType, age, harvestable) VALUES (src.animalType, src.age, src.harvestable)";
+	static final String LIVESTOCK_1_MERGE =
+			"MERGE INTO Livestock_1 L1 USING (SELECT CAST(? AS VARCHAR2(10)) AS animalType, CAST(? AS NUMBER) AS weight, " +
+			"CAST(? AS VARCHAR2(10)) AS diet FROM dual) src ON (L1.weight = src.weight AND L1.animalType = src.animalType) " +
+			"WHEN NOT MATCHED THEN INSERT (animalType, weight, diet) VALUES (src.animalType, src.weight, src.diet)";
+	private static final String NURTURE_INSERT =
+			"INSERT INTO Nurtures(farmerID, tagID, dateNurtured, waterSpent, foodSpent) VALUES (?, ?, ?, ?, ?)";
+
+	private final String url;
+	private volatile ConnectionPool connectionPool = null;
+	private final LivestockDimensionCache livestockDimensions = new LivestockDimensionCache();
+	private final MetadataCache metadataCache = new MetadataCache();
+	private final TableVersions tableVersions = new TableVersions();
+	private final ResultCache resultCache = new ResultCache(tableVersions);
+	private final NurtureTotals nurtureTotals = new NurtureTotals();
+	// Only loaded when LivestockColumnStore.isEnabled()
+	private final LivestockColumnStore livestockColumns = new LivestockColumnStore(tableVersions);
+	// Only read when LivestockWideView.isEnabled()
+	private final LivestockWideView livestockWideView = new LivestockWideView(tableVersions, this::getConnection);
+	// Group-commits the nurture events of /livestock/nurtureEvents
+	private final NurtureWriteBuffer nurtureBuffer = new NurtureWriteBuffer(this::flushNurtures);
+	// Single writer for the FarmingSystem mutations, only there when MutationPipeline.ENABLED
+	private final MutationPipeline writePipeline =
+			MutationPipeline.ENABLED ? new MutationPipeline(this::applyMutations) : null;
+	// The pipeline batch being applied, only ever set on the pipeline's writer thread
+	private final ThreadLocal<BatchTransaction> batchTransaction = new ThreadLocal<>();
+	// Unfiltered listings rendered ahead of time, rebuilt in the background after writes
+	private final ListingSnapshot cropsSnapshot = new ListingSnapshot("crops", tableVersions,
+			sink -> streamPage("getCrops", cropsQuery(null), null, rs -> CropModel.fromResultSet(rs).toJSON(),
+					PageRequest::cropCursor, sink),
+			Table.CROPS);
+	private final ListingSnapshot livestockSnapshot = new ListingSnapshot("livestock", tableVersions,
+			sink -> streamLivestockRows("getLivestock", livestockQuery(), null, null, sink),
+			Table.LIVESTOCK_4, Table.LIVESTOCK_1, Table.LIVESTOCK_3);
 
 	public DatabaseConnectionHandler() {
+		this(ORACLE_URL);
+	}
+
+	/**
+	 * @param url the JDBC url login() connects to, e.g. an embedded database in tests
+	 */
+	public DatabaseConnectionHandler(String url) {
+		this.url = url;
 		try {
 			// Load the Oracle JDBC driver
 			// Note that the path could change for new drivers
@@ -46,24 +134,42 @@ public class DatabaseConnectionHandler {
 	}
 
 	public void close() {
-		try {
-			if (connection != null) {
-				connection.close();
-			}
-		} catch (SQLException e) {
-			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+		// Written while the pool is still there
+		if (writePipeline != null) {
+			writePipeline.close();
+		}
+		nurtureBuffer.close();
+		if (connectionPool != null) {
+			connectionPool.close();
+			connectionPool = null;
 		}
 	}
 
 	public boolean login(String username, String password) {
 		try {
-			if (connection != null) {
-				connection.close();
+			ConnectionPool pool = new ConnectionPool(url, username, password, POOL_MAX_SIZE, POOL_MIN_IDLE,
+					POOL_BORROW_TIMEOUT_MS, POOL_IDLE_TIMEOUT_MS, POOL_VALIDATION_INTERVAL_MS, POOL_VALIDATION_TIMEOUT_S,
+					POOL_STATEMENT_CACHE_SIZE);
+			try {
+				pool.start();
+			} catch (SQLException e) {
+				pool.close();
+				throw e;
 			}
 
-			connection = DriverManager.getConnection(ORACLE_URL, username, password);
-			connection.setAutoCommit(false);
-			// populateLivestock();
+			// Swap in the new pool; connections borrowed from the old one are closed when they are returned
+			ConnectionPool oldPool = connectionPool;
+			connectionPool = pool;
+			if (oldPool != null) {
+				oldPool.close();
+			}
+			livestockDimensions.invalidate();
+			metadataCache.invalidate();
+			// Everything may differ for the new user
+			tablesChanged(Table.values());
+			nurtureTotals.invalidate();
+			livestockColumns.invalidate();
+			livestockWideView.invalidate();
 
 			System.out.println("\nConnected to Oracle!");
 			return true;
@@ -73,29 +179,111 @@ public class DatabaseConnectionHandler {
 		}
 	}
 
+	/**
+	 * @return the connection pool counters, or an empty object when not logged in
+	 */
+	public JSONObject getPoolStats() {
+		ConnectionPool pool = connectionPool;
+		return pool == null ? new JSONObject() : pool.getStats();
+	}
+
+	/**
+	 * @return the LIVESTOCK_1/LIVESTOCK_3 dimension cache counters
+	 */
+	public JSONObject getLivestockDimensionStats() {
+		return livestockDimensions.getStats();
+	}
+
+	/**
+	 * @return the table/column metadata cache counters
+	 */
+	public JSONObject getMetadataCacheStats() {
+		return metadataCache.getStats();
+	}
+
+	/**
+	 * Drops cached dictionary metadata, for one table or (when tableName is null) all of it
+	 */
+	public void invalidateMetadata(String tableName) {
+		if (tableName == null) {
+			metadataCache.invalidate();
+		} else {
+			metadataCache.invalidate(tableName);
+		}
+	}
+
+	/**
+	 * @return the columnar livestock store's counters
+	 */
+	public JSONObject getLivestockColumnStats() {
+		return livestockColumns.getStats();
+	}
+
+	/**
+	 * @return the LIVESTOCK_WIDE materialized view's mode and counters
+	 */
+	public JSONObject getLivestockWideViewStats() {
+		return livestockWideView.getStats();
+	}
+
+	/**
+	 * @return { crops: {...}, livestock: {...} } with each listing snapshot's counters
+	 */
+	public JSONObject getListingSnapshotStats() {
+		JSONObject json = new JSONObject();
+		json.put("crops", cropsSnapshot.getStats());
+		json.put("livestock", livestockSnapshot.getStats());
+		return json;
+	}
+
+	/**
+	 * @return a tag that changes whenever one of tables is written through this handler (or on login)
+	 */
+	public String getTablesTag(Table... tables) {
+		return tableVersions.getTag(tables);
+	}
+
+	/**
+	 * @return the aggregate result cache hit ratio and entries
+	 */
+	public JSONObject getResultCacheStats() {
+		return resultCache.getStats();
+	}
+
+	/**
+	 * @return the running nurture totals counters
+	 */
+	public JSONObject getNurtureTotalsStats() {
+		return nurtureTotals.getStats();
+	}
+
+	/**
+	 * @return the nurture write buffer's queue depth, outcomes and flush latency
+	 */
+	public JSONObject getNurtureBufferStats() {
+		return nurtureBuffer.getStats();
+	}
+
+	/**
+	 * @return the write pipeline's queue depth, batch sizes and commit latency, or { enabled: false }
+	 */
+	public JSONObject getWritePipelineStats() {
+		if (writePipeline == null) {
+			JSONObject json = new JSONObject();
+			json.put("enabled", false);
+			return json;
+		}
+		return writePipeline.getStats();
+	}
+
   /* -------------------------------------------------------------------------- */
   /*                                CROPS METHODS                               */
   /* -------------------------------------------------------------------------- */
   public ArrayList<JSONObject> getCrops() {
     ArrayList<JSONObject> crops = new ArrayList<JSONObject>();
-
     try {
-      String query = "SELECT * FROM CROPS";
-      PrintablePreparedStatement ps = new PrintablePreparedStatement(connection.prepareStatement(query), query, false);
-      ResultSet rs = ps.executeQuery();
-
-      while (rs.next()) {
-        CropModel model = new CropModel(
-            CropType.valueOf(rs.getString("cropType").toUpperCase()),
-            CropVariant.valueOf(rs.getString("cropVariant").toUpperCase()),
-            CropStatus.valueOf(rs.getString("cropStatus").toUpperCase()),
-            rs.getInt("quantity"));
-        crops.add(model.toJSON());
-      }
-
-      rs.close();
-      ps.close();
-    } catch (SQLException e) {
+      streamCrops(null, crops::add);
+    } catch (SQLException | IOException e) {
       System.out.println(EXCEPTION_TAG + " " + e.getMessage());
     }
 
@@ -103,29 +291,37 @@ public class DatabaseConnectionHandler {
     return crops;
   }
 
+  /**
+   * Passes one page of crops, ordered by (cropType, cropVariant), to sink. A null page streams every crop.
+   *
+   * @return the cursor of the next page, or null if this was the last one
+   */
+  public String streamCrops(PageRequest page, JSONRowSink sink) throws SQLException, IOException {
+    return streamPage("getCrops", cropsQuery(page), page, rs -> CropModel.fromResultSet(rs).toJSON(), PageRequest::cropCursor, sink);
+  }
+
+  /**
+   * @return every crop as the JSON array streamCrops(null, sink) writes, already UTF-8 encoded,
+   *         or null if it isn't rendered for the current data yet (see ListingSnapshot)
+   */
+  public byte[] getCropsSnapshot() {
+    return cropsSnapshot.get();
+  }
+
+  private FilterQuery cropsQuery(PageRequest page) {
+    FilterQuery query = new FilterQuery("SELECT * FROM CROPS");
+    if (page != null) {
+      appendCropsPage(query.append(" WHERE "), page);
+    }
+    return query;
+  }
+
   // SELECTION QUERY
   public ArrayList<JSONObject> getFilteredCrops(CropsFilterModel model) {
     ArrayList<JSONObject> crops = new ArrayList<JSONObject>();
-
     try {
-      String subquery = "SELECT * FROM CROPS";
-      String query = "SELECT * FROM (" + subquery + ") " + model.getQueryString();
-
-      PrintablePreparedStatement ps = new PrintablePreparedStatement(connection.prepareStatement(query), query, false);
-      ResultSet rs = ps.executeQuery();
-
-      while (rs.next()) {
-        CropModel tempModel = new CropModel(
-            CropType.valueOf(rs.getString("cropType").toUpperCase()),
-            CropVariant.valueOf(rs.getString("cropVariant").toUpperCase()),
-            CropStatus.valueOf(rs.getString("cropStatus").toUpperCase()),
-            rs.getInt("quantity"));
-        crops.add(tempModel.toJSON());
-      }
-
-      rs.close();
-      ps.close();
-    } catch (SQLException e) {
+      streamFilteredCrops(model, null, crops::add);
+    } catch (SQLException | IOException e) {
       System.out.println(EXCEPTION_TAG + " " + e.getMessage());
     }
 
@@ -133,49 +329,41 @@ public class DatabaseConnectionHandler {
     return crops;
   }
 
+  /**
+   * Passes one page of the filtered crops to sink. A null page streams every matching crop.
+   *
+   * @return the cursor of the next page, or null if this was the last one
+   */
+  public String streamFilteredCrops(CropsFilterModel model, PageRequest page, JSONRowSink sink)
+      throws SQLException, IOException {
+    String subquery = "SELECT * FROM CROPS";
+    FilterQuery query = new FilterQuery("SELECT * FROM (" + subquery + ") ").append(model.getWhereClause());
+    if (page != null) {
+      appendCropsPage(query.append(" AND "), page);
+    }
+    return streamPage("getFilteredCrops", query, page, rs -> CropModel.fromResultSet(rs).toJSON(), PageRequest::cropCursor, sink);
+  }
+
+  // Keyset predicate on the CROPS primary key (cropType, cropVariant), the first page has no predicate
+  private void appendCropsPage(FilterQuery query, PageRequest page) {
+    String[] after = page.getAfterCropKey();
+    if (after == null) {
+      query.append(" 1 = 1 ");
+    } else {
+      query.append(" (cropType > ? OR (cropType = ? AND cropVariant > ?)) ", after[0], after[0], after[1]);
+    }
+    query.append(" ORDER BY cropType, cropVariant FETCH FIRST ? ROWS ONLY ", page.getLimit() + 1);
+  }
+
 
 	/* -------------------------------------------------------------------------- */
 	/*                              LIVESTOCK METHODS                             */
 	/* -------------------------------------------------------------------------- */
   public ArrayList<JSONObject> getLivestock() {
     ArrayList<JSONObject> livestock = new ArrayList<JSONObject>();
-
     try {
-      String query =
-          " SELECT  l4.tagID AS tagID, " +
-              " l4.animalType AS animalType, " +
-              " l4.age AS age, " +
-              " l1.diet AS diet, " +
-              " l4.weight AS weight, " +
-              " l4.lastFed AS lastFed, " +
-              " l3.harvestable AS harvestable," +
-              " l4.lastViolatedForHarvestedGoods AS lastViolatedForHarvestedGoods " +
-          " FROM LIVESTOCK_1 l1, LIVESTOCK_3 l3, LIVESTOCK_4 l4 " +
-          " WHERE l4.animalType = l3.animalType " +
-          " AND   l4.animalType = l1.animalType " +
-          " AND   l4.age        = l3.age        " +
-          " AND   l4.weight     = l1.weight     " +
-	      " ORDER BY l4.tagID ";
-      PrintablePreparedStatement ps =
-          new PrintablePreparedStatement(connection.prepareStatement(query), query, false);
-      ResultSet rs = ps.executeQuery();
-
-      while(rs.next()) {
-        LivestockModel model = new LivestockModel(
-            rs.getInt("tagID"),
-            AnimalType.valueOf(rs.getString("animalType").toUpperCase()),
-            rs.getInt("age"),
-            CropType.valueOf(rs.getString("diet").toUpperCase()),
-            rs.getDouble("weight"),
-            rs.getDate("lastFed"),
-            rs.getBoolean("harvestable"),
-            rs.getDate("lastViolatedForHarvestedGoods"));
-        livestock.add(model.toJSON());
-      }
-
-      rs.close();
-      ps.close();
-    } catch (SQLException e) {
+      streamLivestock(null, livestock::add);
+    } catch (SQLException | IOException e) {
       System.out.println(EXCEPTION_TAG + " " + e.getMessage());
     }
 
@@ -183,13 +371,57 @@ public class DatabaseConnectionHandler {
     return livestock;
   }
 
+  /**
+   * Passes one page of livestock wide rows, ordered by tagID, to sink. A null page streams every animal.
+   *
+   * @return the cursor of the next page, or null if this was the last one
+   */
+  public String streamLivestock(PageRequest page, JSONRowSink sink) throws SQLException, IOException {
+    if (livestockWideView.isFresh()) {
+      FilterQuery query = new FilterQuery(
+          " SELECT " + WIDE_VIEW_COLUMNS + " FROM " + LivestockWideView.VIEW + " WHERE 1 = 1 ");
+      return streamLivestockWide("getLivestock", query, page, sink,
+          () -> streamLivestockRows("getLivestock", livestockQuery(), null, page, sink));
+    }
+    return streamLivestockRows("getLivestock", livestockQuery(), null, page, sink);
+  }
+
+  /**
+   * @return every livestock wide row as the JSON array streamLivestock(null, sink) writes, already UTF-8 encoded,
+   *         or null if it isn't rendered for the current data yet (see ListingSnapshot)
+   */
+  public byte[] getLivestockSnapshot() {
+    return livestockSnapshot.get();
+  }
+
+  private FilterQuery livestockQuery() {
+    return new FilterQuery(
+        " SELECT tagID, animalType, age, weight, lastFed, lastViolatedForHarvestedGoods " +
+        " FROM LIVESTOCK_4 " +
+        " WHERE 1 = 1 ");
+  }
+
     // INSERT QUERY
 	public boolean insertLivestock(LivestockModel model) {
+		Metrics.Timer timer = Metrics.handler("insertLivestock").start();
+		Connection connection = null;
+		boolean ageAdded = false;
+		boolean weightAdded = false;
 		try {
-			Livestock_1_Model model1 = new Livestock_1_Model(model.getAnimalType(), model.getDiet(), model.getWeight());
-			Livestock_3_Model model3 = new Livestock_3_Model(model.getAnimalType(), model.getAge(), model.isHarvestable());
-			insertLivestock_3(model3);
-			insertLivestock_1(model1);
+			LivestockDimensionCache.Snapshot dimensions = getLivestockDimensions();
+			connection = getConnection();
+
+			// The dimension rows go in the same transaction, and only when the cache doesn't know them already
+			if (model.getAge() != -1 && (dimensions == null || dimensions.getHarvestable(model.getAnimalType(),
+					model.getAge()) == LivestockDimensionCache.Snapshot.MISSING)) {
+				ageAdded = mergeAge(connection,
+						new Livestock_3_Model(model.getAnimalType(), model.getAge(), model.isHarvestable())) > 0;
+			}
+			if (model.getWeight() != -1 && (dimensions == null
+					|| dimensions.getDiet(model.getAnimalType(), model.getWeight()) == null)) {
+				weightAdded = mergeWeight(connection,
+						new Livestock_1_Model(model.getAnimalType(), model.getDiet(), model.getWeight())) > 0;
+			}
 
 			String query = "INSERT INTO Livestock_4(tagID, animalType, age,  weight, lastFed, " +
 					"lastViolatedForHarvestedGoods) " +
@@ -210,34 +442,425 @@ public class DatabaseConnectionHandler {
 				ps.setDouble(4, model.getWeight());
 			}
 
-			if (model.getLastFed() == Date.valueOf("01/01/2001")) {
+			if (model.getLastFed() == null) {
 				ps.setNull(5, Types.DATE);
 			} else {
 				ps.setDate(5, model.getLastFed());
 			}
 
-			if (model.getLastViolatedForHarvestedGoods() == Date.valueOf("01/01/2001")) {
-				ps.setNull(5, Types.DATE);
+			if (model.getLastViolatedForHarvestedGoods() == null) {
+				ps.setNull(6, Types.DATE);
 			} else {
 				ps.setDate(6, model.getLastViolatedForHarvestedGoods());
 			}
 
 			ps.executeUpdate();
 			connection.commit();
-
 			ps.close();
 		} catch (SQLException e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
-			rollbackConnection();
+			rollbackConnection(connection);
 			return false;
+		} finally {
+			releaseConnection(connection);
+			timer.stop(0);
 		}
+
+		boolean dimensionsAdded = ageAdded;
+		boolean weightsAdded = weightAdded;
+		afterCommit(() -> {
+			if (dimensionsAdded) {
+				livestockDimensions.invalidate();
+				tablesChanged(Table.LIVESTOCK_3);
+			}
+			if (weightsAdded) {
+				livestockDimensions.invalidate();
+				tablesChanged(Table.LIVESTOCK_1);
+			}
+			tablesChanged(Table.LIVESTOCK_4);
+			livestockColumns.put(model, livestockDimensions.get());
+		});
 		// Succesfully inserted without errors
 		return true;
 	}
 
+	// BULK INSERT QUERY
+	/**
+	 * Inserts a herd in one transaction: first each distinct LIVESTOCK_3/LIVESTOCK_1 row the animals need and the
+	 * dimension cache doesn't have (once, skipped if it exists), then the LIVESTOCK_4 rows, each table as JDBC
+	 * batches, and commits once. A row that can't be inserted (invalid, tagID taken, ...) is reported and left out,
+	 * the rest are still inserted.
+	 *
+	 * @param models the animals to insert, null for one that could not be parsed
+	 * @return { inserted, failed: [ { index, tagID, error } ] } where index is the position in models
+	 */
+	public JSONObject insertLivestockBatch(List<LivestockModel> models) {
+		Metrics.Timer timer = Metrics.handler("insertLivestockBatch").start();
+		String[] errors = new String[models.size()];
+		Set<Integer> tagIDs = new HashSet<>();
+		for (int i = 0; i < models.size(); i++) {
+			LivestockModel model = models.get(i);
+			if (model == null) {
+				errors[i] = "Invalid livestock";
+			} else if (model.getAnimalType() == AnimalType.ALL || model.getDiet() == CropType.ALL) {
+				errors[i] = "animalType and diet must name one type";
+			} else if (model.getAge() < 0 || model.getWeight() <= 0) {
+				errors[i] = "age and weight are required";
+			} else if (!tagIDs.add(model.getTagID())) {
+				errors[i] = "TagID " + model.getTagID() + " appears more than once";
+			}
+		}
+
+		int inserted = 0;
+		boolean agesWritten = false;
+		boolean weightsWritten = false;
+		Connection connection = null;
+		try {
+			LivestockDimensionCache.Snapshot dimensions = getLivestockDimensions();
+			connection = getConnection();
+			rejectExistingTagIDs(connection, models, errors);
+
+			// One row per missing (animalType, age) and (animalType, weight), the first animal's values win
+			Map<String, Integer> ageRows = new HashMap<>();
+			Map<String, Integer> weightRows = new HashMap<>();
+			List<Integer> ages = new ArrayList<>();
+			List<Integer> weights = new ArrayList<>();
+			for (int i = 0; i < models.size(); i++) {
+				LivestockModel model = models.get(i);
+				if (errors[i] != null) {
+					continue;
+				}
+				if ((dimensions == null || dimensions.getHarvestable(model.getAnimalType(), model.getAge())
+						== LivestockDimensionCache.Snapshot.MISSING) && ageRows.putIfAbsent(ageKey(model), i) == null) {
+					ages.add(i);
+				}
+				if ((dimensions == null || dimensions.getDiet(model.getAnimalType(), model.getWeight()) == null)
+						&& weightRows.putIfAbsent(weightKey(model), i) == null) {
+					weights.add(i);
+				}
+			}
+
+			String[] ageErrors = executeBatchPerRow(connection, LIVESTOCK_3_MERGE, ages.size(), (ps, row) -> {
+				LivestockModel model = models.get(ages.get(row));
+				bindAge(ps, new Livestock_3_Model(model.getAnimalType(), model.getAge(), model.isHarvestable()));
+			});
+			String[] weightErrors = executeBatchPerRow(connection, LIVESTOCK_1_MERGE, weights.size(), (ps, row) -> {
+				LivestockModel model = models.get(weights.get(row));
+				bindWeight(ps, new Livestock_1_Model(model.getAnimalType(), model.getDiet(), model.getWeight()));
+			});
+			agesWritten = !ages.isEmpty();
+			weightsWritten = !weights.isEmpty();
+
+			// An animal whose dimension row failed would fail its foreign key, report the cause instead
+			Map<String, String> failedDimensions = new HashMap<>();
+			for (int row = 0; row < ages.size(); row++) {
+				if (ageErrors[row] != null) {
+					failedDimensions.put(ageKey(models.get(ages.get(row))), ageErrors[row]);
+				}
+			}
+			for (int row = 0; row < weights.size(); row++) {
+				if (weightErrors[row] != null) {
+					failedDimensions.put(weightKey(models.get(weights.get(row))), weightErrors[row]);
+				}
+			}
+			List<Integer> animals = new ArrayList<>();
+			for (int i = 0; i < models.size(); i++) {
+				if (errors[i] == null) {
+					LivestockModel model = models.get(i);
+					String dimensionError = failedDimensions.containsKey(ageKey(model))
+							? failedDimensions.get(ageKey(model))
+							: failedDimensions.get(weightKey(model));
+					if (dimensionError == null) {
+						animals.add(i);
+					} else {
+						errors[i] = dimensionError;
+					}
+				}
+			}
+
+			String query = "INSERT INTO Livestock_4(tagID, animalType, age, weight, lastFed, " +
+					"lastViolatedForHarvestedGoods) " +
+					"VALUES (?, ?, ?, ?, ?, ?)";
+			String[] animalErrors = executeBatchPerRow(connection, query, animals.size(), (ps, row) -> {
+				LivestockModel model = models.get(animals.get(row));
+				ps.setInt(1, model.getTagID());
+				ps.setString(2, model.getAnimalType().toString().toLowerCase());
+				ps.setInt(3, model.getAge());
+				ps.setDouble(4, model.getWeight());
+				if (model.getLastFed() == null) {
+					ps.setNull(5, Types.DATE);
+				} else {
+					ps.setDate(5, model.getLastFed());
+				}
+				if (model.getLastViolatedForHarvestedGoods() == null) {
+					ps.setNull(6, Types.DATE);
+				} else {
+					ps.setDate(6, model.getLastViolatedForHarvestedGoods());
+				}
+			});
+			for (int row = 0; row < animals.size(); row++) {
+				errors[animals.get(row)] = animalErrors[row];
+			}
+
+			connection.commit();
+			for (String error : errors) {
+				if (error == null) {
+					inserted++;
+				}
+			}
+		} catch (SQLException e) {
+			timer.failed();
+			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+			rollbackConnection(connection);
+			// Nothing was committed
+			inserted = 0;
+			agesWritten = false;
+			weightsWritten = false;
+			for (int i = 0; i < errors.length; i++) {
+				if (errors[i] == null) {
+					errors[i] = e.getMessage();
+				}
+			}
+		} finally {
+			releaseConnection(connection);
+			timer.stop(inserted);
+		}
+
+		List<LivestockModel> insertedModels = new ArrayList<>();
+		for (int i = 0; i < errors.length; i++) {
+			if (errors[i] == null) {
+				insertedModels.add(models.get(i));
+			}
+		}
+		boolean dimensionsAdded = agesWritten;
+		boolean weightsAdded = weightsWritten;
+		afterCommit(() -> {
+			// Dimension rows may have been added that the dimension cache doesn't have
+			if (dimensionsAdded) {
+				livestockDimensions.invalidate();
+				tablesChanged(Table.LIVESTOCK_3);
+			}
+			if (weightsAdded) {
+				livestockDimensions.invalidate();
+				tablesChanged(Table.LIVESTOCK_1);
+			}
+			if (!insertedModels.isEmpty()) {
+				tablesChanged(Table.LIVESTOCK_4);
+				// One commit, so one write as far as the column store's version count goes
+				livestockColumns.putAll(insertedModels, livestockDimensions.get());
+			}
+		});
+
+		JSONArray failed = new JSONArray();
+		for (int i = 0; i < errors.length; i++) {
+			if (errors[i] != null) {
+				JSONObject failure = new JSONObject();
+				failure.put("index", i);
+				if (models.get(i) != null) {
+					failure.put("tagID", models.get(i).getTagID());
+				}
+				failure.put("error", errors[i]);
+				failed.put(failure);
+			}
+		}
+		JSONObject result = new JSONObject();
+		result.put("inserted", inserted);
+		result.put("failed", failed);
+		return result;
+	}
+
+	private static String ageKey(LivestockModel model) {
+		return model.getAnimalType() + "|" + model.getAge();
+	}
+
+	private static String weightKey(LivestockModel model) {
+		return model.getAnimalType() + "|" + model.getWeight();
+	}
+
+	/**
+	 * Marks the models whose tagID is already in LIVESTOCK_4 as failed, so the insert batch doesn't have to fail
+	 * and be retried row by row to find them
+	 */
+	private void rejectExistingTagIDs(Connection connection, List<LivestockModel> models, String[] errors)
+			throws SQLException {
+		List<Integer> tagIDs = new ArrayList<>();
+		Map<Integer, Integer> indexOf = new HashMap<>();
+		for (int i = 0; i < models.size(); i++) {
+			if (errors[i] == null) {
+				tagIDs.add(models.get(i).getTagID());
+				indexOf.put(models.get(i).getTagID(), i);
+			}
+		}
+
+		for (int from = 0; from < tagIDs.size(); from += MAX_IN_LIST) {
+			List<Integer> chunk = tagIDs.subList(from, Math.min(from + MAX_IN_LIST, tagIDs.size()));
+			FilterQuery query = new FilterQuery("SELECT tagID FROM Livestock_4 WHERE tagID").append(inList(chunk));
+
+			PrintablePreparedStatement ps = new PrintablePreparedStatement(
+					connection.prepareStatement(query.getSql()), query.getSql(), false);
+			query.bind(ps, 1);
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				int tagID = rs.getInt("tagID");
+				errors[indexOf.get(tagID)] = "Animal with TagID " + tagID + " already exists";
+			}
+			rs.close();
+			ps.close();
+		}
+	}
+
+	/**
+	 * @return " IN (?, ?, ...) " over chunk (at most MAX_IN_LIST values), padded to a power of two by repeating
+	 *         its last value so there are only a few distinct statements
+	 */
+	private static FilterQuery inList(List<Integer> chunk) {
+		int binds = Math.min(Integer.highestOneBit(chunk.size() * 2 - 1), MAX_IN_LIST);
+		FilterQuery query = new FilterQuery(" IN (?", chunk.get(0));
+		for (int i = 1; i < binds; i++) {
+			query.append(", ?", chunk.get(Math.min(i, chunk.size() - 1)));
+		}
+		return query.append(") ");
+	}
+
+	@FunctionalInterface
+	private interface RowBinder {
+		void bind(PreparedStatement ps, int row) throws SQLException;
+	}
+
+	/**
+	 * Runs query for rows 0..rows-1 in executeBatch() chunks of WRITE_BATCH_SIZE within the caller's transaction.
+	 * If a chunk fails it is rolled back to a savepoint and its rows are run one at a time, so only the failing
+	 * rows are lost (a failed statement doesn't end the transaction).
+	 *
+	 * @return each row's error message, null where it succeeded
+	 */
+	private String[] executeBatchPerRow(Connection connection, String query, int rows, RowBinder binder)
+			throws SQLException {
+		String[] errors = new String[rows];
+		if (rows == 0) {
+			return errors;
+		}
+
+		PrintablePreparedStatement ps = new PrintablePreparedStatement(connection.prepareStatement(query), query, false);
+		try {
+			for (int from = 0; from < rows; from += WRITE_BATCH_SIZE) {
+				int to = Math.min(from + WRITE_BATCH_SIZE, rows);
+				Savepoint savepoint = connection.setSavepoint();
+				try {
+					for (int row = from; row < to; row++) {
+						binder.bind(ps, row);
+						ps.addBatch();
+					}
+					ps.executeBatch();
+				} catch (BatchUpdateException e) {
+					// Drivers differ in what they report (and keep) after a failed row, so redo the chunk
+					ps.clearBatch();
+					connection.rollback(savepoint);
+					for (int row = from; row < to; row++) {
+						try {
+							binder.bind(ps, row);
+							ps.executeUpdate();
+						} catch (SQLException rowError) {
+							errors[row] = rowError.getMessage();
+						}
+					}
+				}
+			}
+		} finally {
+			ps.close();
+		}
+		return errors;
+	}
+
+	/**
+	 * Runs query for rows 0..rows-1 in executeBatch() chunks of WRITE_BATCH_SIZE within the caller's transaction,
+	 * the first failure fails the lot
+	 *
+	 * @return the rows changed, a row the driver reports no count for (SUCCESS_NO_INFO) counts as one
+	 */
+	private static int executeBatch(Connection connection, String query, int rows, RowBinder binder)
+			throws SQLException {
+		int changed = 0;
+		PrintablePreparedStatement ps = new PrintablePreparedStatement(connection.prepareStatement(query), query, false);
+		try {
+			for (int from = 0; from < rows; from += WRITE_BATCH_SIZE) {
+				for (int row = from; row < Math.min(from + WRITE_BATCH_SIZE, rows); row++) {
+					binder.bind(ps, row);
+					ps.addBatch();
+				}
+				for (int count : ps.executeBatch()) {
+					changed += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+				}
+			}
+		} finally {
+			ps.close();
+		}
+		return changed;
+	}
+
+	/**
+	 * Runs mutation (a call of one of the insert/update/delete methods) through the write pipeline when it is
+	 * enabled, committed together with other callers' mutations, otherwise right away on this thread
+	 *
+	 * @param failed what to return if the mutation could not be applied
+	 */
+	public <T> T mutate(Supplier<T> mutation, T failed) {
+		return writePipeline == null ? mutation.get() : writePipeline.submit(mutation, failed);
+	}
+
+	/**
+	 * Applies one batch of the write pipeline in one transaction, called on its writer thread. Each mutation runs
+	 * after a savepoint and gets the batch's connection from getConnection(), where its commit() does nothing and
+	 * its rollback() only undoes that mutation. Their cache updates (afterCommit) run once the batch has committed.
+	 */
+	void applyMutations(List<Runnable> mutations) throws SQLException {
+		Metrics.Timer timer = Metrics.handler("applyMutations").start();
+		Connection connection = null;
+		BatchTransaction batch;
+		try {
+			connection = getConnection();
+			batch = new BatchTransaction(connection);
+			batchTransaction.set(batch);
+			for (Runnable mutation : mutations) {
+				batch.savepoint = connection.setSavepoint();
+				int hooks = batch.hooks.size();
+				try {
+					mutation.run();
+				} catch (RuntimeException e) {
+					System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+					connection.rollback(batch.savepoint);
+					batch.hooks.subList(hooks, batch.hooks.size()).clear();
+				}
+			}
+			batchTransaction.remove();
+			connection.commit();
+		} catch (SQLException e) {
+			timer.failed();
+			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+			rollbackConnection(connection);
+			// Loaded on the batch's connection they may have seen its rows, which are gone now
+			livestockDimensions.invalidate();
+			nurtureTotals.invalidate();
+			livestockColumns.invalidate();
+			throw e;
+		} finally {
+			batchTransaction.remove();
+			releaseConnection(connection);
+			timer.stop(mutations.size());
+		}
+
+		for (Runnable hook : batch.hooks) {
+			hook.run();
+		}
+	}
+
 	// DELETE QUERY
 	public boolean deleteLivestock(int tagID) {
+		Metrics.Timer timer = Metrics.handler("deleteLivestock").start();
+		Connection connection = null;
 		try {
+			connection = getConnection();
 			// Delete livestock
 			String query = "DELETE FROM Livestock_4 WHERE tagID = ?";
 			PrintablePreparedStatement ps = new PrintablePreparedStatement(connection.prepareStatement(query), query, false);
@@ -247,138 +870,607 @@ public class DatabaseConnectionHandler {
 				System.out.println(WARNING_TAG + " Animal with TagID " + tagID + " does not exist!");
 			}
 			connection.commit();
+			afterCommit(() -> {
+				// Nurtures, VeterinaryRecords_Has, Contains and Creates rows go with it (ON DELETE CASCADE)
+				tablesChanged(Table.LIVESTOCK_4, Table.NURTURES, Table.VETERINARYRECORDS_HAS, Table.CONTAINS,
+						Table.CREATES);
+				nurtureTotals.remove(tagID);
+				livestockColumns.remove(tagID);
+			});
 
 			ps.close();
 		} catch (SQLException e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
-			rollbackConnection();
+			rollbackConnection(connection);
 			return false;
+		} finally {
+			releaseConnection(connection);
+			timer.stop(0);
 		}
 		return true;
 	}
 
+	// DELETE QUERY
+	/**
+	 * Deletes the animals in tagIDs, and through ON DELETE CASCADE their Nurtures, VeterinaryRecords_Has,
+	 * Contains and Creates rows, as one set-based DELETE per DELETE_CHUNK_SIZE animals. Every chunk is committed
+	 * on its own, so there is no single huge transaction: a failing chunk is rolled back and counted, the
+	 * chunks before it stay deleted and the ones after it are still tried. Unknown tagIDs are skipped.
+	 * Not meant for the write pipeline, whose batches would turn the chunk commits into one transaction.
+	 *
+	 * @param progress gets { deleted, processed, total, failedChunks } after every chunk, may be null
+	 * @return the final { deleted, processed, total, failedChunks }, or { error } if there was no connection
+	 */
+	public JSONObject deleteLivestockBatch(List<Integer> tagIDs, JSONRowSink progress) {
+		List<Integer> distinct = new ArrayList<>(new LinkedHashSet<>(tagIDs));
+		Metrics.Timer timer = Metrics.handler("deleteLivestockBatch").start();
+		Connection connection = null;
+		int deleted = 0;
+		int processed = 0;
+		int failedChunks = 0;
+		try {
+			connection = getConnection();
+			for (int from = 0; from < distinct.size(); from += DELETE_CHUNK_SIZE) {
+				List<Integer> chunk = distinct.subList(from, Math.min(from + DELETE_CHUNK_SIZE, distinct.size()));
+				FilterQuery query = new FilterQuery("DELETE FROM Livestock_4 WHERE tagID").append(inList(chunk));
+				int chunkDeleted = 0;
+				try {
+					chunkDeleted = executeUpdate(connection, query);
+					connection.commit();
+				} catch (SQLException e) {
+					failedChunks++;
+					System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+					rollbackConnection(connection);
+				}
+				processed += chunk.size();
+				deleted += chunkDeleted;
+
+				if (chunkDeleted > 0) {
+					afterCommit(() -> {
+						tablesChanged(Table.LIVESTOCK_4, Table.NURTURES, Table.VETERINARYRECORDS_HAS, Table.CONTAINS,
+								Table.CREATES);
+						for (int tagID : chunk) {
+							nurtureTotals.remove(tagID);
+						}
+					});
+				}
+				progress = reportProgress(progress, deleteProgress(deleted, processed, distinct.size(), failedChunks));
+			}
+		} catch (SQLException e) {
+			// No connection, nothing was deleted
+			timer.failed();
+			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+			JSONObject error = new JSONObject();
+			error.put("error", e.getMessage());
+			return error;
+		} finally {
+			if (failedChunks > 0) {
+				timer.failed();
+			}
+			releaseConnection(connection);
+			timer.stop(deleted);
+
+			if (deleted > 0) {
+				// Removing the rows one at a time would shift the columns once per animal, reload on the next read
+				livestockColumns.invalidate();
+			}
+		}
+		return deleteProgress(deleted, processed, distinct.size(), failedChunks);
+	}
+
+	// DELETE QUERY + HAVING QUERY
+	/**
+	 * Deletes every animal getFilteredLivestock(filter) lists, see deleteLivestockBatch. The matching tagIDs are
+	 * read first (an animal that starts matching while the chunks run is not deleted).
+	 *
+	 * @return the final { deleted, processed, total, failedChunks }, or { error } if the animals couldn't be read
+	 */
+	public JSONObject deleteFilteredLivestock(LivestockFilterModel filter, JSONRowSink progress) {
+		Metrics.Timer timer = Metrics.handler("deleteFilteredLivestock").start();
+		Connection connection = null;
+		List<Integer> tagIDs = new ArrayList<>();
+		try {
+			connection = getConnection();
+			FilterQuery query = new FilterQuery("SELECT tagID FROM Livestock_4 ")
+					.append(filter.getFactWhereClause())
+					.append(filter.getDimensionExistsClause());
+			if (filter.needsAggregation()) {
+				query.append(" AND tagID IN (SELECT tagID FROM Nurtures GROUP BY tagID ")
+						.append(filter.getHavingClause())
+						.append(") ");
+			}
+			query.append(" ORDER BY tagID ");
+			PrintablePreparedStatement ps =
+					new PrintablePreparedStatement(connection.prepareStatement(query.getSql()), query.getSql(), false);
+			query.bind(ps, 1);
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				tagIDs.add(rs.getInt("tagID"));
+			}
+			rs.close();
+			ps.close();
+		} catch (SQLException e) {
+			timer.failed();
+			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+			JSONObject error = new JSONObject();
+			error.put("error", e.getMessage());
+			return error;
+		} finally {
+			releaseConnection(connection);
+			timer.stop(tagIDs.size());
+		}
+
+		return deleteLivestockBatch(tagIDs, progress);
+	}
+
+	private static JSONObject deleteProgress(int deleted, int processed, int total, int failedChunks) {
+		JSONObject json = new JSONObject();
+		json.put("deleted", deleted);
+		json.put("processed", processed);
+		json.put("total", total);
+		json.put("failedChunks", failedChunks);
+		return json;
+	}
+
+	/**
+	 * @return progress, or null once it failed (the client went away), the work goes on without it
+	 */
+	private static JSONRowSink reportProgress(JSONRowSink progress, JSONObject row) {
+		if (progress == null) {
+			return null;
+		}
+		try {
+			progress.accept(row);
+			return progress;
+		} catch (IOException e) {
+			System.out.println(WARNING_TAG + " Progress not reported: " + e.getMessage());
+			return null;
+		}
+	}
+
 	// UPDATE QUERY
 	public boolean updateLivestock(Livestock_4_Model model, ActionType actionType) {
     String query;
     PrintablePreparedStatement ps;
 
+		Metrics.Timer timer = Metrics.handler("updateLivestock").start();
+		Connection connection = null;
+		Date now = new Date(System.currentTimeMillis());
 		try {
+      connection = getConnection();
       switch (actionType) {
         case FEED:
-          query = "UPDATE Livestock_4 SET lastFed = ? " +
-              "WHERE tagID = ? OR (tagID = ? AND lastFed IS NULL)";
+          query = "UPDATE Livestock_4 SET lastFed = ? WHERE tagID = ?";
           ps = new PrintablePreparedStatement(connection.prepareStatement(query), query,
               false);
-          ps.setDate(1, new Date(System.currentTimeMillis()));
+          ps.setDate(1, now);
           ps.setInt(2, model.getTagID());
-          ps.setInt(3, model.getTagID());
           ps.executeUpdate();
           break;
         case HARVEST:
-          query = "UPDATE Livestock_4 SET lastViolatedForHarvestedGoods = ? " +
-              "WHERE tagID = ? OR (tagID = ? AND lastViolatedForHarvestedGoods IS NULL)";
+          query = "UPDATE Livestock_4 SET lastViolatedForHarvestedGoods = ? WHERE tagID = ?";
           ps = new PrintablePreparedStatement(connection.prepareStatement(query), query,
               false);
-          ps.setDate(1, new Date(System.currentTimeMillis()));
+          ps.setDate(1, now);
           ps.setInt(2, model.getTagID());
-          ps.setInt(3, model.getTagID());
           ps.executeUpdate();
           break;
         default:
           System.out.println(WARNING_TAG + " Invalid action type!");
-          rollbackConnection();
+          rollbackConnection(connection);
           return false;
       }
 
 			connection.commit();
+			afterCommit(() -> {
+				tablesChanged(Table.LIVESTOCK_4);
+				if (actionType == ActionType.FEED) {
+					livestockColumns.setLastFed(model.getTagID(), now);
+				} else {
+					livestockColumns.setLastViolated(model.getTagID(), now);
+				}
+			});
 			ps.close();
 		} catch (SQLException e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
-			rollbackConnection();
+			rollbackConnection(connection);
 			return false;
+		} finally {
+			releaseConnection(connection);
+			timer.stop(0);
+		}
+
+		return true;
+	}
+
+	// UPDATE QUERY
+	/**
+	 * Applies actionType to every animal in tagIDs in one transaction, as one set-based UPDATE per
+	 * MAX_IN_LIST tagIDs. Unknown tagIDs are skipped.
+	 *
+	 * @return the number of animals updated, or -1 if nothing was (the transaction failed or rolled back)
+	 */
+	public int updateLivestockBatch(List<Integer> tagIDs, ActionType actionType) {
+		String column = updatedColumn(actionType);
+		if (column == null) {
+			System.out.println(WARNING_TAG + " Invalid action type!");
+			return -1;
+		}
+		// Distinct, so the counts of the chunks add up
+		List<Integer> distinct = new ArrayList<>(new LinkedHashSet<>(tagIDs));
+		if (distinct.isEmpty()) {
+			return 0;
+		}
+
+		Metrics.Timer timer = Metrics.handler("updateLivestockBatch").start();
+		Connection connection = null;
+		Date now = new Date(System.currentTimeMillis());
+		int updated = 0;
+		try {
+			connection = getConnection();
+			for (int from = 0; from < distinct.size(); from += MAX_IN_LIST) {
+				List<Integer> chunk = distinct.subList(from, Math.min(from + MAX_IN_LIST, distinct.size()));
+				FilterQuery query = new FilterQuery("UPDATE Livestock_4 SET " + column + " = ? WHERE tagID", now)
+						.append(inList(chunk));
+				updated += executeUpdate(connection, query);
+			}
+			connection.commit();
+		} catch (SQLException e) {
+			timer.failed();
+			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+			rollbackConnection(connection);
+			return -1;
+		} finally {
+			releaseConnection(connection);
+			timer.stop(updated);
+		}
+
+		if (updated > 0) {
+			afterCommit(() -> {
+				tablesChanged(Table.LIVESTOCK_4);
+				if (actionType == ActionType.FEED) {
+					livestockColumns.setLastFed(distinct, now);
+				} else {
+					livestockColumns.setLastViolated(distinct, now);
+				}
+			});
+		}
+		return updated;
+	}
+
+	// UPDATE QUERY + HAVING QUERY
+	/**
+	 * Applies actionType to every animal getFilteredLivestock(filter) would list, as one set-based UPDATE
+	 *
+	 * @return the number of animals updated, or -1 if the update failed
+	 */
+	public int updateFilteredLivestock(LivestockFilterModel filter, ActionType actionType) {
+		String column = updatedColumn(actionType);
+		if (column == null) {
+			System.out.println(WARNING_TAG + " Invalid action type!");
+			return -1;
+		}
+
+		Metrics.Timer timer = Metrics.handler("updateFilteredLivestock").start();
+		Connection connection = null;
+		Date now = new Date(System.currentTimeMillis());
+		int updated = 0;
+		try {
+			connection = getConnection();
+			FilterQuery query = new FilterQuery("UPDATE Livestock_4 SET " + column + " = ? ", now)
+					.append(filter.getFactWhereClause())
+					.append(filter.getDimensionExistsClause());
+			if (filter.needsAggregation()) {
+				query.append(" AND tagID IN (SELECT tagID FROM Nurtures GROUP BY tagID ")
+						.append(filter.getHavingClause())
+						.append(") ");
+			}
+			updated = executeUpdate(connection, query);
+			connection.commit();
+		} catch (SQLException e) {
+			timer.failed();
+			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+			rollbackConnection(connection);
+			return -1;
+		} finally {
+			releaseConnection(connection);
+			timer.stop(updated);
+		}
+
+		if (updated > 0) {
+			afterCommit(() -> {
+				tablesChanged(Table.LIVESTOCK_4);
+				// Which rows matched is only known to the database, the column store reloads on its next read
+				livestockColumns.invalidate();
+			});
+		}
+		return updated;
+	}
+
+	/**
+	 * @return the LIVESTOCK_4 column actionType sets to today, null if there is none
+	 */
+	private static String updatedColumn(ActionType actionType) {
+		if (actionType == ActionType.FEED) {
+			return "lastFed";
+		} else if (actionType == ActionType.HARVEST) {
+			return "lastViolatedForHarvestedGoods";
 		}
+		return null;
+	}
+
+	private static int executeUpdate(Connection connection, FilterQuery query) throws SQLException {
+		PrintablePreparedStatement ps =
+				new PrintablePreparedStatement(connection.prepareStatement(query.getSql()), query.getSql(), false);
+		try {
+			query.bind(ps, 1);
+			return ps.executeUpdate();
+		} finally {
+			ps.close();
+		}
+	}
+
+	// INSERT QUERY
+	// Records one nurture event and adds it to the running totals
+	public boolean insertNurture(NurtureModel model) {
+		Metrics.Timer timer = Metrics.handler("insertNurture").start();
+		Connection connection = null;
+		try {
+			connection = getConnection();
+			PrintablePreparedStatement ps = new PrintablePreparedStatement(connection.prepareStatement(NURTURE_INSERT),
+					NURTURE_INSERT, false);
+			ps.setInt(1, model.getFarmerID());
+			ps.setInt(2, model.getTagID());
+			ps.setDate(3, model.getDateNurtured());
+			ps.setInt(4, model.getWaterSpent());
+			ps.setInt(5, model.getFoodSpent());
+
+			ps.executeUpdate();
+			connection.commit();
+			afterCommit(() -> {
+				tablesChanged(Table.NURTURES);
+				nurtureTotals.add(model.getTagID(), model.getWaterSpent(), model.getFoodSpent());
+			});
 
+			ps.close();
+		} catch (SQLException e) {
+			timer.failed();
+			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+			rollbackConnection(connection);
+			return false;
+		} finally {
+			releaseConnection(connection);
+			timer.stop(0);
+		}
 		return true;
 	}
 
+	/**
+	 * Queues a nurture event for the next group commit, see NurtureWriteBuffer
+	 *
+	 * @return { outcome: committed | queued | rejected | failed | pending, error, queueDepth }
+	 */
+	public JSONObject bufferNurture(NurtureModel model, NurtureWriteBuffer.Durability durability) {
+		return nurtureBuffer.submit(model, durability);
+	}
+
+	// INSERT QUERY
+	// Writes one batch of the nurture buffer in one transaction, called on its writer thread
+	private String[] flushNurtures(List<NurtureModel> events) throws SQLException {
+		Metrics.Timer timer = Metrics.handler("flushNurtures").start();
+		Connection connection = null;
+		String[] errors;
+		try {
+			connection = getConnection();
+			errors = executeBatchPerRow(connection, NURTURE_INSERT, events.size(), (ps, row) -> {
+				NurtureModel event = events.get(row);
+				ps.setInt(1, event.getFarmerID());
+				ps.setInt(2, event.getTagID());
+				ps.setDate(3, event.getDateNurtured());
+				ps.setInt(4, event.getWaterSpent());
+				ps.setInt(5, event.getFoodSpent());
+			});
+			connection.commit();
+		} catch (SQLException e) {
+			timer.failed();
+			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+			rollbackConnection(connection);
+			throw e;
+		} finally {
+			releaseConnection(connection);
+			timer.stop(events.size());
+		}
+
+		tablesChanged(Table.NURTURES);
+		for (int i = 0; i < errors.length; i++) {
+			if (errors[i] == null) {
+				NurtureModel event = events.get(i);
+				nurtureTotals.add(event.getTagID(), event.getWaterSpent(), event.getFoodSpent());
+			}
+		}
+		return errors;
+	}
+
 	// SELECTION QUERY + HAVING QUERY
 	public ArrayList<JSONObject> getFilteredLivestock(LivestockFilterModel model) {
 		ArrayList<JSONObject> livestock = new ArrayList<JSONObject>();
-
 		try {
-			String subquery = "";
-			// Check to see if we need to do aggregation query having
-			if (model.getMinWaterSpent() <= -1 && model.getMinFoodSpent() <= -1) {
-				// Don't need Join with Nurtures (selection query)
-				subquery =
-						" SELECT l4.tagID AS tagID, " +
-								"       l4.animalType AS animalType, " +
-								"       l4.age AS age, " +
-								"       l1.diet AS diet, " +
-								"       l4.weight AS weight, " +
-								"       l4.lastFed AS lastFed, " +
-								"       l3.harvestable AS harvestable, " +
-								"       l4.lastViolatedForHarvestedGoods AS lastViolatedForHarvestedGoods " +
-								" FROM LIVESTOCK_4 l4 " +
-								" INNER JOIN LIVESTOCK_3 l3 ON l4.animalType = l3.animalType AND l4.age = l3.age " +
-								" INNER JOIN LIVESTOCK_1 l1 ON l1.animalType = l4.animalType AND l1.weight = l4.weight ";
+			streamFilteredLivestock(model, null, livestock::add);
+		} catch (SQLException | IOException e) {
+			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+		}
+
+		// System.out.println(livestock);
+		return livestock;
+	}
+
+	/**
+	 * Passes one page of the filtered livestock, ordered by tagID, to sink. A null page streams every match.
+	 *
+	 * @return the cursor of the next page, or null if this was the last one
+	 */
+	public String streamFilteredLivestock(LivestockFilterModel model, PageRequest page, JSONRowSink sink)
+			throws SQLException, IOException {
+		if (LivestockColumnStore.isEnabled()) {
+			LivestockColumnStore.Result result = filterLivestockColumns(model, page);
+			if (result != null) {
+				return writeLivestockRows(result, sink);
+			}
+		}
+
+		if (livestockWideView.isFresh()) {
+			// diet and harvestable are columns of the view, so the whole filter goes to SQL
+			String subquery;
+			if (!model.needsAggregation()) {
+				subquery = " SELECT " + WIDE_VIEW_COLUMNS + " FROM " + LivestockWideView.VIEW + " ";
 			} else {
-				// Need Join with Nurtures (aggregation with having query)
 				subquery =
-						" SELECT l4.tagID AS tagID, " +
-								"       l4.animalType AS animalType, " +
-								"       l4.age AS age, " +
-								"       l1.diet AS diet, " +
-								"       l4.weight AS weight, " +
-								"       l4.lastFed AS lastFed, " +
-								"       l3.harvestable AS harvestable, " +
-								"       l4.lastViolatedForHarvestedGoods AS lastViolatedForHarvestedGoods, " +
+						" SELECT w.tagID AS tagID, w.animalType AS animalType, w.age AS age, w.diet AS diet, " +
+								"       w.weight AS weight, w.lastFed AS lastFed, w.harvestable AS harvestable, " +
+								"       w.lastViolatedForHarvestedGoods AS lastViolatedForHarvestedGoods, " +
 								"       SUM(N.waterSpent) AS totalWaterSpent, " +
 								"       SUM(N.foodSpent) AS totalFoodSpent " +
-								" FROM LIVESTOCK_4 l4 " +
-								" INNER JOIN LIVESTOCK_3 l3 ON l4.animalType = l3.animalType AND l4.age = l3.age " +
-								" INNER JOIN LIVESTOCK_1 l1 ON l1.animalType = l4.animalType AND l1.weight = l4.weight " +
-								" INNER JOIN Nurtures N ON l4.tagID = N.tagID " +
-								" GROUP BY l4.tagID, l4.animalType, l4.age, l1.diet, l4.weight, l4.lastFed, l3.harvestable, l4.lastViolatedForHarvestedGoods ";
+								" FROM " + LivestockWideView.VIEW + " w " +
+								" INNER JOIN Nurtures N ON w.tagID = N.tagID " +
+								" GROUP BY w.tagID, w.animalType, w.age, w.diet, w.weight, w.lastFed, w.harvestable, " +
+								"          w.lastViolatedForHarvestedGoods ";
 			}
+			FilterQuery query = new FilterQuery("SELECT " + WIDE_VIEW_COLUMNS + " FROM (" + subquery + " ")
+					.append(model.getHavingClause())
+					.append(") ")
+					.append(model.getWhereClause());
+			return streamLivestockWide("getFilteredLivestock", query, page, sink,
+					() -> streamFilteredLivestockRows(model, page, sink));
+		}
+		return streamFilteredLivestockRows(model, page, sink);
+	}
 
-			//  model.getHavingFilter only returns if minWaterSpent or minFoodSpent != -1
-			String query = "SELECT * FROM (" + subquery + " " + model.getHavingFilter() + ") " + model.getQueryString()
-					+ " ORDER BY tagID ";
+	// The LIVESTOCK_4 + dimension cache path of streamFilteredLivestock
+	private String streamFilteredLivestockRows(LivestockFilterModel model, PageRequest page, JSONRowSink sink)
+			throws SQLException, IOException {
+		String subquery = "";
+		// Check to see if we need to do aggregation query having
+		if (!model.needsAggregation()) {
+			// Don't need Join with Nurtures (selection query)
+			subquery =
+					" SELECT l4.tagID AS tagID, " +
+							"       l4.animalType AS animalType, " +
+							"       l4.age AS age, " +
+							"       l4.weight AS weight, " +
+							"       l4.lastFed AS lastFed, " +
+							"       l4.lastViolatedForHarvestedGoods AS lastViolatedForHarvestedGoods " +
+							" FROM LIVESTOCK_4 l4 ";
+		} else {
+			// Need Join with Nurtures (aggregation with having query)
+			subquery =
+					" SELECT l4.tagID AS tagID, " +
+							"       l4.animalType AS animalType, " +
+							"       l4.age AS age, " +
+							"       l4.weight AS weight, " +
+							"       l4.lastFed AS lastFed, " +
+							"       l4.lastViolatedForHarvestedGoods AS lastViolatedForHarvestedGoods, " +
+							"       SUM(N.waterSpent) AS totalWaterSpent, " +
+							"       SUM(N.foodSpent) AS totalFoodSpent " +
+							" FROM LIVESTOCK_4 l4 " +
+							" INNER JOIN Nurtures N ON l4.tagID = N.tagID " +
+							" GROUP BY l4.tagID, l4.animalType, l4.age, l4.weight, l4.lastFed, l4.lastViolatedForHarvestedGoods ";
+		}
 
-			PrintablePreparedStatement ps =
-					new PrintablePreparedStatement(connection.prepareStatement(query), query, false);
-			ResultSet rs = ps.executeQuery();
+		//  model.getHavingClause only has a HAVING if minWaterSpent or minFoodSpent != -1
+		// diet and harvestable are filtered after resolving them from the dimension cache
+		FilterQuery query = new FilterQuery("SELECT * FROM (" + subquery + " ")
+				.append(model.getHavingClause())
+				.append(") ")
+				.append(model.getFactWhereClause());
+		return streamLivestockRows("getFilteredLivestock", query, model, page, sink);
+	}
 
-			while(rs.next()) {
-				LivestockModel tempModel = new LivestockModel(
-						rs.getInt("tagID"),
-						AnimalType.valueOf(rs.getString("animalType").toUpperCase()),
-						rs.getInt("age"),
-						CropType.valueOf(rs.getString("diet").toUpperCase()),
-						rs.getDouble("weight"),
-						rs.getDate("lastFed"),
-						rs.getBoolean("harvestable"),
-						rs.getDate("lastViolatedForHarvestedGoods"));
-				livestock.add(tempModel.toJSON());
+	/**
+	 * Evaluates model against the columnar livestock store, (re)loading it first if it is behind
+	 *
+	 * @return the matching rows, or null if the store couldn't be used and the query has to go to the database
+	 */
+	private LivestockColumnStore.Result filterLivestockColumns(LivestockFilterModel model, PageRequest page) {
+		Metrics.Timer timer = Metrics.handler("getFilteredLivestock.columnar").start();
+		LivestockColumnStore.Result result = null;
+		try {
+			ensureLivestockColumns();
+
+			int[] nurtured = null;
+			if (model.needsAggregation()) {
+				// Same semantics as the INNER JOIN ... HAVING: at least one event, a missing minimum matches anything
+				ensureNurtureTotals();
+				long water = model.getMinWaterSpent() > -1 ? model.getMinWaterSpent() : Long.MIN_VALUE;
+				long food = model.getMinFoodSpent() > -1 ? model.getMinFoodSpent() : Long.MIN_VALUE;
+				nurtured = nurtureTotals.tagIDsAtLeast(water, food);
 			}
-
-			rs.close();
-			ps.close();
+			result = livestockColumns.filter(model, page, nurtured);
 		} catch (SQLException e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+		} finally {
+			timer.stop(result == null ? 0 : result.getRows().size());
 		}
+		return result;
+	}
 
-		// System.out.println(livestock);
+	/**
+	 * Counts livestock per animal type from the columnar store's bitmap indexes, in the form of the
+	 * findCountedTypesSold queries: { animalType, count } for every type with at least one animal
+	 *
+	 * @return the counts, or null if the store couldn't be used and the query has to go to the database
+	 */
+	private ArrayList<JSONObject> countLivestockColumns(String operation, Integer maxAgeExclusive) {
+		Metrics.Timer timer = Metrics.handler(operation + ".columnar").start();
+		ArrayList<JSONObject> livestock = null;
+		try {
+			ensureLivestockColumns();
+			int[] counts = livestockColumns.countByAnimalType(maxAgeExclusive);
+			if (counts != null) {
+				livestock = new ArrayList<JSONObject>();
+				for (AnimalType animalType : AnimalType.values()) {
+					if (counts[animalType.ordinal()] > 0) {
+						JSONObject json = new JSONObject();
+						json.put("animalType", animalType.toString().toLowerCase());
+						json.put("count", counts[animalType.ordinal()]);
+						livestock.add(json);
+					}
+				}
+			}
+		} catch (SQLException e) {
+			timer.failed();
+			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+		} finally {
+			timer.stop(livestock == null ? 0 : livestock.size());
+		}
 		return livestock;
 	}
 
+	/**
+	 * Passes the rows of a columnar store result to sink
+	 *
+	 * @return the cursor of the next page, or null if this was the last one
+	 */
+	private String writeLivestockRows(LivestockColumnStore.Result result, JSONRowSink sink) throws IOException {
+		JSONObject last = null;
+		for (LivestockModel row : result.getRows()) {
+			last = row.toJSON();
+			sink.accept(last);
+		}
+		return result.hasMore() && last != null ? PageRequest.livestockCursor(last) : null;
+	}
+
 	// Finds the animals that are ready to sell with user specified weight
 	public ArrayList<JSONObject> findAnimalToSell(Livestock_4_Model model) {
 		ArrayList<JSONObject> livestock = new ArrayList<JSONObject>();
+		Metrics.Timer timer = Metrics.handler("findAnimalToSell").start();
+		Connection connection = null;
 		try {
+			connection = getConnection();
 			String query = "SELECT tagID FROM Livestock_4 L4 WHERE L4.age > (SELECT MIN(age) " +
-					"FROM Livestock_3 WHERE harvestable = TRUE) AND weight = ?";
+					"FROM Livestock_3 WHERE harvestable = 1) AND weight = ?";
 			PrintablePreparedStatement ps = new PrintablePreparedStatement(connection.prepareStatement(query), query, false);
 			ps.setDouble(1, model.getWeight());
 
@@ -394,9 +1486,13 @@ public class DatabaseConnectionHandler {
 			ps.close();
 			rs.close();
 		} catch (SQLException e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
-			rollbackConnection();
+			rollbackConnection(connection);
 			return null;
+		} finally {
+			releaseConnection(connection);
+			timer.stop(livestock.size());
 		}
 		return livestock;
 	}
@@ -404,7 +1500,26 @@ public class DatabaseConnectionHandler {
 	// PROJECTION QUERY
 	public ArrayList<JSONObject> projectTable(String relation_name, ArrayList<String> columns) {
 		ArrayList<JSONObject> to_return = new ArrayList<JSONObject>();
+		streamProjection(relation_name, columns, to_return::add);
+		return to_return;
+	}
+
+	/**
+	 * Passes every projected row to sink as it is read from the ResultSet
+	 */
+	public void streamProjection(String relation_name, ArrayList<String> columns, JSONRowSink sink) {
+		int count = 0;
+		// Table and column names are pasted into the SQL, so only ones the dictionary knows are accepted
+		if (!isKnownProjection(relation_name, columns)) {
+			System.out.println(WARNING_TAG + " Unknown table or columns in projection of " + relation_name + ": " + columns);
+			Metrics.handler("projectTable").record(0, 0, true);
+			return;
+		}
+
+		Metrics.Timer timer = Metrics.handler("projectTable").start();
+		Connection connection = null;
 		try {
+			connection = getConnection();
 			String columnsString = "";
 			for (int i = 0; i < columns.size(); i++) {
 				if (i != columns.size() - 1) {
@@ -416,6 +1531,7 @@ public class DatabaseConnectionHandler {
 			}
 			String query = "SELECT DISTINCT " + columnsString + " FROM " + relation_name;
 			PrintablePreparedStatement ps = new PrintablePreparedStatement(connection.prepareStatement(query), query, false);
+			ps.setFetchSize(STREAM_FETCH_SIZE);
 
 			ResultSet rs = ps.executeQuery();
 
@@ -426,22 +1542,48 @@ public class DatabaseConnectionHandler {
 					// System.out.println(rs.getObject(columns.get(i)));
 					json.put(columns.get(i), rs.getObject(columns.get(i)));
 				}
-				to_return.add(json);
+				sink.accept(json);
+				count++;
 			}
 
 			rs.close();
 			ps.close();
-		} catch (SQLException e) {
+		} catch (SQLException | IOException e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+		} finally {
+			releaseConnection(connection);
+			timer.stop(count);
 		}
-		return to_return;
+	}
+
+	/**
+	 * Checks a projection against the cached dictionary metadata, only going to the database when it is missing
+	 * or expired
+	 */
+	private boolean isKnownProjection(String relation_name, ArrayList<String> columns) {
+		if (relation_name == null || columns == null || columns.isEmpty()) {
+			return false;
+		}
+
+		if (metadataCache.hasTable(relation_name) == null) {
+			getUserTables();
+		}
+		if (metadataCache.hasColumns(relation_name, columns) == null) {
+			getTableColumns(relation_name);
+		}
+		return Boolean.TRUE.equals(metadataCache.hasTable(relation_name))
+				&& Boolean.TRUE.equals(metadataCache.hasColumns(relation_name, columns));
 	}
 
 	// JOIN QUERY
 	// Finds the health status of the animal with tagID specified by user
 	public ArrayList<JSONObject> findLivestockHealthStatus(int id) {
 		ArrayList<JSONObject> livestock = new ArrayList<JSONObject>();
+		Metrics.Timer timer = Metrics.handler("findLivestockHealthStatus").start();
+		Connection connection = null;
 		try {
+			connection = getConnection();
 			String query = "SELECT * FROM Livestock_4 L4, " +
 					"VeterinaryRecords_Has VR WHERE VR.tagID = L4.tagID and L4.tagID = ?";
 
@@ -464,15 +1606,36 @@ public class DatabaseConnectionHandler {
 			ps.close();
 
 		} catch (SQLException e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+		} finally {
+			releaseConnection(connection);
+			timer.stop(livestock.size());
 		}
 		return livestock;
 	}
 
 	// AGGREGATION WITH GROUP BY
 	public ArrayList<JSONObject> findCountedTypesSold() {
+		if (LivestockColumnStore.isEnabled()) {
+			ArrayList<JSONObject> counted = countLivestockColumns("findCountedTypesSold", null);
+			if (counted != null) {
+				return counted;
+			}
+		}
+
 		ArrayList<JSONObject> livestock = new ArrayList<JSONObject>();
+		Metrics.Timer timer = Metrics.handler("findCountedTypesSold").start();
+		String cacheKey = "findCountedTypesSold";
+		ArrayList<JSONObject> cached = resultCache.get(cacheKey);
+		if (cached != null) {
+			timer.stop(cached.size());
+			return cached;
+		}
+		ResultCache.Ticket ticket = resultCache.begin(cacheKey, Table.LIVESTOCK_4);
+		Connection connection = null;
 		try {
+			connection = getConnection();
 			String query = "SELECT L4.animalType, COUNT(DISTINCT tagID) AS num " +
 					"FROM Livestock_4 L4 " +
 					"GROUP BY L4.animalType";
@@ -490,14 +1653,36 @@ public class DatabaseConnectionHandler {
 
 			rs.close();
 			ps.close();
+			resultCache.put(ticket, livestock);
 		} catch (SQLException e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+		} finally {
+			releaseConnection(connection);
+			timer.stop(livestock.size());
 		}
 		return livestock;
 	}
 	public ArrayList<JSONObject> findCountedTypesSoldByAge(int age) {
+		if (LivestockColumnStore.isEnabled()) {
+			ArrayList<JSONObject> counted = countLivestockColumns("findCountedTypesSoldByAge", age);
+			if (counted != null) {
+				return counted;
+			}
+		}
+
 		ArrayList<JSONObject> livestock = new ArrayList<JSONObject>();
+		Metrics.Timer timer = Metrics.handler("findCountedTypesSoldByAge").start();
+		String cacheKey = "findCountedTypesSoldByAge:" + age;
+		ArrayList<JSONObject> cached = resultCache.get(cacheKey);
+		if (cached != null) {
+			timer.stop(cached.size());
+			return cached;
+		}
+		ResultCache.Ticket ticket = resultCache.begin(cacheKey, Table.LIVESTOCK_4);
+		Connection connection = null;
 		try {
+			connection = getConnection();
 			String query = "SELECT L4.animalType, COUNT(DISTINCT tagID) AS num " +
 					"FROM Livestock_4 L4 " +
 					" WHERE  L4.age < ? " +
@@ -517,41 +1702,38 @@ public class DatabaseConnectionHandler {
 
 			rs.close();
 			ps.close();
+			resultCache.put(ticket, livestock);
 		} catch (SQLException e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+		} finally {
+			releaseConnection(connection);
+			timer.stop(livestock.size());
 		}
 		return livestock;
 	}
 
 
 	// Gets the total amount of water and food spent given a livestock id.
+	// Served from the running totals, see NurtureTotals
 	public ArrayList<JSONObject> getWaterAndFoodSpentOfLivestock(int tagID) {
 		ArrayList<JSONObject> livestock = new ArrayList<JSONObject>();
+		Metrics.Timer timer = Metrics.handler("getWaterAndFoodSpentOfLivestock").start();
 		try {
-			String query = "SELECT N.tagID AS tagID, SUM(N.waterSpent) AS totalWaterConsumed," +
-					" SUM(N.foodSpent) AS totalFoodConsumed " +
-					"FROM Nurtures N, Livestock_4 L4 " +
-					"WHERE N.tagID = L4.tagID AND L4.tagID = ? " +
-					"GROUP BY N.tagID ";
-
-			PrintablePreparedStatement ps = new PrintablePreparedStatement(connection.prepareStatement(query), query, false);
-			ps.setInt(1, tagID);
-
-			ResultSet rs = ps.executeQuery();
-
-			while(rs.next()) {
+			ensureNurtureTotals();
+			long[] totals = nurtureTotals.get(tagID);
+			if (totals != null) {
 				JSONObject json = new JSONObject();
-				json.put("tagID", rs.getInt("tagID"));
-				json.put("totalWaterConsumed", rs.getInt("totalWaterConsumed"));
-				json.put("totalFoodConsumed", rs.getInt("totalFoodConsumed"));
+				json.put("tagID", tagID);
+				json.put("totalWaterConsumed", totals[0]);
+				json.put("totalFoodConsumed", totals[1]);
 				livestock.add(json);
 			}
-
-			rs.close();
-			ps.close();
-
 		} catch (SQLException e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+		} finally {
+			timer.stop(livestock.size());
 		}
 		return livestock;
 	}
@@ -559,47 +1741,45 @@ public class DatabaseConnectionHandler {
 	// AGGREGATION GROUP BY WITH HAVING
 	// Find all the animals (of an animal type) that have been fed well with water and food.
 	// (most plump animals?) :D
+	// The HAVING is evaluated over the running totals (NurtureTotals), only LIVESTOCK_4 is queried
 	public ArrayList<JSONObject> findWateredAndFed(AnimalType animalType, int water, int food) {
 		ArrayList<JSONObject> livestock = new ArrayList<JSONObject>();
+		Metrics.Timer timer = Metrics.handler("findWateredAndFed").start();
+		Connection connection = null;
 		try {
+			ensureNurtureTotals();
+			int[] wateredAndFed = nurtureTotals.tagIDsAtLeast(water, food);
+			if (wateredAndFed.length == 0) {
+				return livestock;
+			}
+
+			LivestockDimensionCache.Snapshot dimensions = getLivestockDimensions();
+			connection = getConnection();
 			String query =
-					" SELECT l4.tagID AS tagID, " +
-					"       l4.animalType AS animalType, " +
-					"       l4.age AS age, " +
-					"       l1.diet AS diet, " +
-					"       l4.weight AS weight, " +
-					"       l4.lastFed AS lastFed, " +
-					"       l3.harvestable AS harvestable, " +
-					"       l4.lastViolatedForHarvestedGoods AS lastViolatedForHarvestedGoods, " +
-					"       SUM(N.waterSpent) AS totalWaterSpent, " +
-					"       SUM(N.foodSpent) AS totalFoodSpent " +
-					" FROM LIVESTOCK_4 l4 " +
-					" INNER JOIN LIVESTOCK_3 l3 ON l4.animalType = l3.animalType AND l4.age = l3.age " +
-					" INNER JOIN LIVESTOCK_1 l1 ON l1.animalType = l4.animalType AND l1.weight = l4.weight " +
-					" INNER JOIN Nurtures N ON l4.tagID = N.tagID " +
-					" WHERE l4.animalType = ? " +
-					" GROUP BY l4.tagID, l4.animalType, l4.age, l1.diet, l4.weight, l4.lastFed, l3.harvestable, l4.lastViolatedForHarvestedGoods " +
-					" HAVING SUM(N.waterSpent) >= ? AND SUM(N.foodSpent) >= ? ";
+					" SELECT tagID, animalType, age, weight, lastFed, lastViolatedForHarvestedGoods " +
+					" FROM LIVESTOCK_4 " +
+					" WHERE animalType = ? " +
+					" ORDER BY tagID ";
 
 			PrintablePreparedStatement ps = new PrintablePreparedStatement(connection.prepareStatement(query), query, false);
+			ps.setFetchSize(STREAM_FETCH_SIZE);
 			ps.setString(1, animalType.toString().toLowerCase());
-			ps.setInt(2, water);
-			ps.setInt(3, food);
 
 			ResultSet rs = ps.executeQuery();
 
 			while(rs.next()) {
-				JSONObject json = new JSONObject();
-				json.put("tagID", rs.getInt("tagID"));
-				json.put("animalType", AnimalType.valueOf(rs.getString("animalType").toUpperCase()));
-				json.put("age", rs.getInt("age"));
-				json.put("diet", CropType.valueOf(rs.getString("diet").toUpperCase()));
-				json.put("weight", rs.getDouble("weight"));
-				json.put("lastFed", rs.getDate("lastFed"));
-				json.put("harvestable", rs.getBoolean("harvestable"));
-				json.put("lastViolatedForHarvestedGoods", rs.getDate("lastViolatedForHarvestedGoods"));
-				json.put("totalWaterSpent", rs.getInt("totalWaterSpent"));
-				json.put("totalFoodSpent", rs.getInt("totalFoodSpent"));
+				int tagID = rs.getInt("tagID");
+				if (Arrays.binarySearch(wateredAndFed, tagID) < 0) {
+					continue;
+				}
+				LivestockModel model = resolveLivestock(rs, dimensions);
+				long[] totals = nurtureTotals.get(tagID);
+				if (model == null || totals == null) {
+					continue;
+				}
+				JSONObject json = model.toJSON();
+				json.put("totalWaterSpent", totals[0]);
+				json.put("totalFoodSpent", totals[1]);
 				livestock.add(json);
 			}
 
@@ -608,7 +1788,11 @@ public class DatabaseConnectionHandler {
 			ps.close();
 
 		} catch (SQLException e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+		} finally {
+			releaseConnection(connection);
+			timer.stop(livestock.size());
 		}
 		return livestock;
 	}
@@ -622,7 +1806,17 @@ public class DatabaseConnectionHandler {
      */
     public ArrayList<JSONObject> findMaxCountNurtureFarmers() {
       ArrayList<JSONObject> farmers = new ArrayList<>();
+      Metrics.Timer timer = Metrics.handler("findMaxCountNurtureFarmers").start();
+      String cacheKey = "findMaxCountNurtureFarmers";
+      ArrayList<JSONObject> cached = resultCache.get(cacheKey);
+      if (cached != null) {
+          timer.stop(cached.size());
+          return cached;
+      }
+      ResultCache.Ticket ticket = resultCache.begin(cacheKey, Table.FARMERS_2, Table.NURTURES);
+      Connection connection = null;
       try {
+          connection = getConnection();
           String query =
                   " SELECT f2.farmerID, f2.fullName, f2.yearsOfEmployment, COUNT(*) AS maxNurtureCount " +
                   " FROM FARMERS_2 f2, Nurtures n " +
@@ -647,8 +1841,16 @@ public class DatabaseConnectionHandler {
               farmers.add(json);
           }
 
+          rs.close();
+          ps.close();
+          resultCache.put(ticket, farmers);
+
       } catch (SQLException e) {
+          timer.failed();
           System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+      } finally {
+          releaseConnection(connection);
+          timer.stop(farmers.size());
       }
 
       return farmers;
@@ -656,7 +1858,10 @@ public class DatabaseConnectionHandler {
 
 	public ArrayList<JSONObject> findOverweightAnimals() {
 		ArrayList<JSONObject> livestock = new ArrayList<JSONObject>();
+		Metrics.Timer timer = Metrics.handler("findOverweightAnimals").start();
+		Connection connection = null;
 		try {
+			connection = getConnection();
 			String query = "CREATE VIEW temp AS SELECT animalType, AVG(weight) AS avgweight FROM Livestock_1 GROUP BY animalType; " +
 					"SELECT L4.animalType, L1.diet " +
 					"FROM Livestock_4 L4, Livestock_1 L1 " +
@@ -679,7 +1884,11 @@ public class DatabaseConnectionHandler {
 			rs.close();
 			ps.close();
 		} catch(Exception e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+		} finally {
+			releaseConnection(connection);
+			timer.stop(livestock.size());
 		}
 		return livestock;
 	}
@@ -688,7 +1897,19 @@ public class DatabaseConnectionHandler {
 	// Need a param to indicate which query
 	public ArrayList<JSONObject> findAllFarmersDivision(int type) {
 		ArrayList<JSONObject> result = new ArrayList<JSONObject>();
+		Metrics.Timer timer = Metrics.handler("findAllFarmersDivision").start();
+		String cacheKey = "findAllFarmersDivision:" + type;
+		ArrayList<JSONObject> cached = resultCache.get(cacheKey);
+		if (cached != null) {
+			timer.stop(cached.size());
+			return cached;
+		}
+		ResultCache.Ticket ticket = resultCache.begin(cacheKey, type == 1
+				? new Table[]{Table.FARMERS_2, Table.LIVESTOCK_4, Table.NURTURES}
+				: new Table[]{Table.FARMERS_2, Table.FIELDS_4, Table.TENDS});
+		Connection connection = null;
 		try {
+			connection = getConnection();
 			String query;
 			if (type == 1) {
 				 query = "SELECT * FROM Farmers_2 F2 WHERE NOT " +
@@ -714,17 +1935,36 @@ public class DatabaseConnectionHandler {
 
 			rs.close();
 			ps.close();
+			resultCache.put(ticket, result);
 
 		} catch (SQLException e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+		} finally {
+			releaseConnection(connection);
+			timer.stop(result.size());
 		}
 		return result;
 	}
 	// ================ GENERAL PROJECTION FUNCTIONS ===================================
+	/**
+	 * @return the user's table names, from the metadata cache unless missing or expired
+	 */
 	public ArrayList<String> getUserTables() {
 		ArrayList<String> tables = new ArrayList<String>();
 
+		Metrics.Timer timer = Metrics.handler("getUserTables").start();
+		List<String> cached = metadataCache.getUserTables();
+		if (cached != null) {
+			tables.addAll(cached);
+			timer.stop(tables.size());
+			return tables;
+		}
+
+		long generation = metadataCache.getGeneration();
+		Connection connection = null;
 		try {
+			connection = getConnection();
 			String query = "select table_name from user_tables";
 
 			PrintablePreparedStatement ps =
@@ -737,16 +1977,35 @@ public class DatabaseConnectionHandler {
 
 			rs.close();
 			ps.close();
+			metadataCache.putUserTables(tables, generation);
 		} catch (SQLException e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+		} finally {
+			releaseConnection(connection);
+			timer.stop(tables.size());
 		}
 
 		return tables;
 	}
+	/**
+	 * @return the column names of tableName, from the metadata cache unless missing or expired
+	 */
 	public ArrayList<String> getTableColumns(String tableName) {
 		ArrayList<String> columns = new ArrayList<String>();
 
+		Metrics.Timer timer = Metrics.handler("getTableColumns").start();
+		List<String> cached = metadataCache.getTableColumns(tableName);
+		if (cached != null) {
+			columns.addAll(cached);
+			timer.stop(columns.size());
+			return columns;
+		}
+
+		long generation = metadataCache.getGeneration();
+		Connection connection = null;
 		try {
+			connection = getConnection();
 			String query = "select column_name from ALL_TAB_COLUMNS WHERE table_name= ?";
 
 			PrintablePreparedStatement ps =
@@ -761,161 +2020,541 @@ public class DatabaseConnectionHandler {
 
 			rs.close();
 			ps.close();
+			metadataCache.putTableColumns(tableName, columns, generation);
 		} catch (SQLException e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+		} finally {
+			releaseConnection(connection);
+			timer.stop(columns.size());
 		}
 
 		return columns;
 	}
 
 	// ================ FUNCTION FOR POPULATING DATABASE ===============================
+	// Adds the LIVESTOCK_3 row unless (animalType, age) is there already
 	public boolean insertLivestock_3(Livestock_3_Model model) {
-		try {
-			String query = "DECLARE " +
-					"    n int := 0; " +
-					"BEGIN " +
-					"    SELECT count(*) into n " +
-					"    from Livestock_3 " +
-					"    where animalType = ? AND age = ?; " +
-					"    if n = 0 then " +
-					"        insert into Livestock_3(animalType, age, harvestable) VALUES (?, ?, ?); " +
-					"    end if; " +
-					"END; ";
-			PrintablePreparedStatement ps = new PrintablePreparedStatement(connection.prepareStatement(query), query, false);
-			ps.setString(1, model.getAnimalType().toString().toLowerCase());
-			ps.setInt(2, model.getAge());
-			ps.setString(3, model.getAnimalType().toString().toLowerCase());
-			ps.setInt(4, model.getAge());
-			ps.setBoolean(5, model.isHarvestable());
+		return insertLivestock_3(Collections.singletonList(model));
+	}
 
-			ps.executeUpdate();
-			connection.commit();
+	/**
+	 * Adds every LIVESTOCK_3 row whose (animalType, age) isn't there yet in one transaction, keys the dimension
+	 * cache already has are skipped without a statement
+	 *
+	 * @return false if the transaction failed (nothing was added)
+	 */
+	public boolean insertLivestock_3(List<Livestock_3_Model> models) {
+		Metrics.Timer timer = Metrics.handler("insertLivestock_3").start();
+		List<Livestock_3_Model> missing = new ArrayList<>();
+		for (Livestock_3_Model model : models) {
+			if (!livestockDimensions.containsAge(model.getAnimalType(), model.getAge())) {
+				missing.add(model);
+			}
+		}
+		if (missing.isEmpty()) {
+			timer.stop(0);
+			return true;
+		}
 
-			ps.close();
+		int added = 0;
+		Connection connection = null;
+		try {
+			connection = getConnection();
+			added = executeBatch(connection, LIVESTOCK_3_MERGE, missing.size(), (ps, row) -> bindAge(ps, missing.get(row)));
+			connection.commit();
 		} catch (SQLException e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
-			rollbackConnection();
+			rollbackConnection(connection);
 			return false;
+		} finally {
+			releaseConnection(connection);
+			timer.stop(added);
 		}
-		// Succesfully inserted without errors
-		return true;
 
+		if (added != 0) {
+			afterCommit(() -> {
+				// Rows the dimension cache doesn't have
+				livestockDimensions.invalidate();
+				tablesChanged(Table.LIVESTOCK_3);
+			});
+		}
+		return true;
 	}
+
+	// Adds the LIVESTOCK_1 row unless (animalType, weight) is there already
 	public boolean insertLivestock_1(Livestock_1_Model model) {
-		try {
-			String query = "DECLARE " +
-					"    n int := 0; " +
-					"BEGIN " +
-					"    SELECT count(*) into n " +
-					"    from Livestock_1 where animalType = ? AND " +
-					"                           WEIGHT = ?; " +
-					"    if n = 0 then " +
-					"        insert into Livestock_1(animalType, weight, diet) VALUES (?, ?, ?); " +
-					"    end if; " +
-					"end;";
-			PrintablePreparedStatement ps = new PrintablePreparedStatement(connection.prepareStatement(query), query, false);
-			ps.setString(1, model.getAnimalType().toString().toLowerCase());
-			ps.setDouble(2, model.getWeight());
-			ps.setString(3, model.getAnimalType().toString().toLowerCase());
-			ps.setDouble(4, model.getWeight());
-			ps.setString(5, model.getDiet().toString().toLowerCase());
+		return insertLivestock_1(Collections.singletonList(model));
+	}
 
-			ps.executeUpdate();
-			connection.commit();
+	/**
+	 * Adds every LIVESTOCK_1 row whose (animalType, weight) isn't there yet in one transaction, keys the dimension
+	 * cache already has are skipped without a statement
+	 *
+	 * @return false if the transaction failed (nothing was added)
+	 */
+	public boolean insertLivestock_1(List<Livestock_1_Model> models) {
+		Metrics.Timer timer = Metrics.handler("insertLivestock_1").start();
+		List<Livestock_1_Model> missing = new ArrayList<>();
+		for (Livestock_1_Model model : models) {
+			if (!livestockDimensions.containsWeight(model.getAnimalType(), model.getWeight())) {
+				missing.add(model);
+			}
+		}
+		if (missing.isEmpty()) {
+			timer.stop(0);
+			return true;
+		}
 
-			ps.close();
+		int added = 0;
+		Connection connection = null;
+		try {
+			connection = getConnection();
+			added = executeBatch(connection, LIVESTOCK_1_MERGE, missing.size(), (ps, row) -> bindWeight(ps, missing.get(row)));
+			connection.commit();
 		} catch (SQLException e) {
+			timer.failed();
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
-			rollbackConnection();
+			rollbackConnection(connection);
 			return false;
+		} finally {
+			releaseConnection(connection);
+			timer.stop(added);
+		}
+
+		if (added != 0) {
+			afterCommit(() -> {
+				// Rows the dimension cache doesn't have
+				livestockDimensions.invalidate();
+				tablesChanged(Table.LIVESTOCK_1);
+			});
 		}
-		// Succesfully inserted without errors
 		return true;
 	}
-	private void populateLivestock_3() {
+
+	/**
+	 * @return 1 if model's LIVESTOCK_3 row was added, 0 if its (animalType, age) was there already
+	 */
+	private static int mergeAge(Connection connection, Livestock_3_Model model) throws SQLException {
+		PrintablePreparedStatement ps = new PrintablePreparedStatement(connection.prepareStatement(LIVESTOCK_3_MERGE),
+				LIVESTOCK_3_MERGE, false);
+		try {
+			bindAge(ps, model);
+			return ps.executeUpdate();
+		} finally {
+			ps.close();
+		}
+	}
+
+	/**
+	 * @return 1 if model's LIVESTOCK_1 row was added, 0 if its (animalType, weight) was there already
+	 */
+	private static int mergeWeight(Connection connection, Livestock_1_Model model) throws SQLException {
+		PrintablePreparedStatement ps = new PrintablePreparedStatement(connection.prepareStatement(LIVESTOCK_1_MERGE),
+				LIVESTOCK_1_MERGE, false);
 		try {
-			// Insert values for all animal types ages 1-15
-			for (int i = 1; i <= 15; i++) {
-				// insert cows
-				Livestock_3_Model temp = new Livestock_3_Model(AnimalType.COW, i, getRandomBool());
-				insertLivestock_3(temp);
+			bindWeight(ps, model);
+			return ps.executeUpdate();
+		} finally {
+			ps.close();
+		}
+	}
 
-				// insert pigs
-				temp = new Livestock_3_Model(AnimalType.PIG, i, getRandomBool());
-				insertLivestock_3(temp);
+	private static void bindAge(PreparedStatement ps, Livestock_3_Model model) throws SQLException {
+		ps.setString(1, model.getAnimalType().toString().toLowerCase());
+		ps.setInt(2, model.getAge());
+		ps.setInt(3, model.isHarvestable() ? 1 : 0);
+	}
+
+	private static void bindWeight(PreparedStatement ps, Livestock_1_Model model) throws SQLException {
+		ps.setString(1, model.getAnimalType().toString().toLowerCase());
+		ps.setDouble(2, model.getWeight());
+		ps.setString(3, model.getDiet().toString().toLowerCase());
+	}
+
+	/**
+	 * Loads synthetic farm data at benchmark scale, see FarmDataGenerator. Runs on up to settings' threads
+	 * pooled connections in parallel, at most GENERATOR_MAX_THREADS, and drops every cache afterwards.
+	 *
+	 * @return the rows inserted per table and the time taken, or { error } if the load failed part way
+	 */
+	public JSONObject generateData(FarmDataGenerator.Settings settings) {
+		Metrics.Timer timer = Metrics.handler("generateData").start();
+		JSONObject result;
+		try {
+			result = new FarmDataGenerator(this::getConnection, settings, GENERATOR_MAX_THREADS).generate();
+		} catch (SQLException e) {
+			timer.failed();
+			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+			result = new JSONObject();
+			result.put("error", e.getMessage());
+		} finally {
+			// Even a failed load may have committed some of its batches
+			livestockDimensions.invalidate();
+			tablesChanged(Table.values());
+			nurtureTotals.invalidate();
+			livestockColumns.invalidate();
+			timer.stop(0);
+		}
+		return result;
+	}
 
-				// insert chicken
-				temp = new Livestock_3_Model(AnimalType.CHICKEN, i, getRandomBool());
-				insertLivestock_3(temp);
+	/**
+	 * Runs query and passes each mapped row to sink as it is read, timing it under the given handler
+	 * operation name in Metrics. When paged, the query must fetch
+	 * page.getLimit() + 1 rows: the extra row is not passed on, it only tells us another page follows.
+	 *
+	 * @return the cursor of the last row passed on if another page follows, otherwise null
+	 * @throws SQLException or IOException if the rows couldn't be read or passed on, the page is then incomplete
+	 */
+	private String streamPage(String operation, FilterQuery query, PageRequest page, RowMapper mapper,
+							  Function<JSONObject, String> cursorOf, JSONRowSink sink) throws SQLException, IOException {
+		String nextCursor = null;
+		int count = 0;
+		Metrics.Timer timer = Metrics.handler(operation).start();
+		Connection connection = null;
+		try {
+			connection = getConnection();
+			PrintablePreparedStatement ps =
+					new PrintablePreparedStatement(connection.prepareStatement(query.getSql()), query.getSql(), false);
+			ps.setFetchSize(page == null ? STREAM_FETCH_SIZE : Math.min(page.getLimit() + 1, STREAM_FETCH_SIZE));
+			query.bind(ps, 1);
+			ResultSet rs = ps.executeQuery();
 
-				// insert sheep
-				temp = new Livestock_3_Model(AnimalType.SHEEP, i, getRandomBool());
-				insertLivestock_3(temp);
+			JSONObject last = null;
+			while (rs.next()) {
+				if (page != null && count == page.getLimit()) {
+					nextCursor = cursorOf.apply(last);
+					break;
+				}
+				last = mapper.map(rs);
+				sink.accept(last);
+				count++;
 			}
 
-		} catch (Exception e) {
-			System.out.println(e);
+			rs.close();
+			ps.close();
+		} catch (SQLException | IOException e) {
+			timer.failed();
+			throw e;
+		} finally {
+			releaseConnection(connection);
+			timer.stop(count);
 		}
+		return nextCursor;
 	}
-	private void populateLivestock_1() {
+
+	/**
+	 * Streams LIVESTOCK_4 based rows ordered by tagID to sink, resolving diet and harvestable from the dimension
+	 * cache. Rows without both dimension rows are dropped (as the inner joins did), as are rows failing filter's
+	 * diet/harvestable predicates, so a page may need more than one round trip: each refill continues after the
+	 * last tagID read and doubles the batch, up to MAX_REFILL_BATCH.
+	 *
+	 * @param query the query up to and including its WHERE clause, projecting tagID, animalType, age, weight,
+	 *              lastFed and lastViolatedForHarvestedGoods
+	 * @param filter the diet/harvestable filter, or null for none
+	 * @return the cursor of the next page, or null if this was the last one
+	 */
+	private String streamLivestockRows(String operation, FilterQuery query, LivestockFilterModel filter,
+									   PageRequest page, JSONRowSink sink) throws SQLException, IOException {
+		String nextCursor = null;
+		int count = 0;
+		Metrics.Timer timer = Metrics.handler(operation).start();
+		Connection connection = null;
 		try {
+			LivestockDimensionCache.Snapshot dimensions = getLivestockDimensions();
+			connection = getConnection();
+
+			int afterTagID = page == null ? Integer.MIN_VALUE : page.getAfterTagID();
+			int batch = page == null ? 0 : page.getLimit() + 1;
+			JSONObject last = null;
+			boolean done = false;
+			while (!done) {
+				FilterQuery batchQuery = new FilterQuery().append(query);
+				if (page != null) {
+					batchQuery.append(" AND tagID > ? ", afterTagID);
+				}
+				batchQuery.append(" ORDER BY tagID ");
+				if (page != null) {
+					batchQuery.append(" FETCH FIRST ? ROWS ONLY ", batch);
+				}
 
-			for (int i = 0; i <= 40; i++) {
-				// Insert cows weighted 300-500 kg (increments of 5) (40 cows total)
-				Livestock_1_Model temp = new Livestock_1_Model(AnimalType.COW, getRandomCropType(), (5*i+300));
-				insertLivestock_1(temp);
+				PrintablePreparedStatement ps = new PrintablePreparedStatement(
+						connection.prepareStatement(batchQuery.getSql()), batchQuery.getSql(), false);
+				ps.setFetchSize(page == null ? STREAM_FETCH_SIZE : Math.min(batch, STREAM_FETCH_SIZE));
+				batchQuery.bind(ps, 1);
+				ResultSet rs = ps.executeQuery();
+
+				int read = 0;
+				while (rs.next()) {
+					read++;
+					afterTagID = rs.getInt("tagID");
+					LivestockModel model = resolveLivestock(rs, dimensions);
+					if (model == null || (filter != null && !filter.matchesDimensions(model))) {
+						continue;
+					}
+					if (page != null && count == page.getLimit()) {
+						nextCursor = PageRequest.livestockCursor(last);
+						done = true;
+						break;
+					}
+					last = model.toJSON();
+					sink.accept(last);
+					count++;
+				}
 
-				// insert pigs weighted 50-250 kg (increments of 5)  (40 pigs total)
-				temp = new Livestock_1_Model(AnimalType.PIG, getRandomCropType(), 5*i+50);
-				insertLivestock_1(temp);
+				rs.close();
+				ps.close();
 
-				// insert chicken weighted 1-41 kg (increments of 1) (40 chickens total)
-				temp = new Livestock_1_Model(AnimalType.CHICKEN, getRandomCropType(), i+1);
-				insertLivestock_1(temp);
+				// Unpaged reads everything in one go, a short batch means there is nothing left
+				if (page == null || read < batch) {
+					done = true;
+				}
+				batch = Math.min(batch * 2, MAX_REFILL_BATCH);
+			}
+		} catch (SQLException | IOException e) {
+			timer.failed();
+			throw e;
+		} finally {
+			releaseConnection(connection);
+			timer.stop(count);
+		}
+		return nextCursor;
+	}
+
+	/**
+	 * Streams rows of the LIVESTOCK_WIDE materialized view ordered by tagID to sink, mapped with
+	 * LivestockModel.fromResultSet. If the view can't be read and nothing was passed on yet, the view is
+	 * marked unusable (see LivestockWideView.failed) and fallback streams from the base tables instead.
+	 *
+	 * @param query the query up to and including its WHERE clause, projecting WIDE_VIEW_COLUMNS
+	 * @return the cursor of the next page, or null if this was the last one
+	 */
+	private String streamLivestockWide(String operation, FilterQuery query, PageRequest page, JSONRowSink sink,
+									   PageStream fallback) throws SQLException, IOException {
+		FilterQuery wideQuery = new FilterQuery().append(query);
+		if (page != null) {
+			wideQuery.append(" AND tagID > ? ORDER BY tagID FETCH FIRST ? ROWS ONLY ",
+					page.getAfterTagID(), page.getLimit() + 1);
+		} else {
+			wideQuery.append(" ORDER BY tagID ");
+		}
 
-				// insert sheep weighted 50-250 kg (increments of 5)  (40 sheeps total)
-				temp = new Livestock_1_Model(AnimalType.SHEEP, getRandomCropType(), 5*i+50);
-				insertLivestock_1(temp);
+		int[] passedOn = {0};
+		try {
+			return streamPage(operation + ".wideView", wideQuery, page, rs -> LivestockModel.fromResultSet(rs).toJSON(),
+					PageRequest::livestockCursor, row -> {
+						passedOn[0]++;
+						sink.accept(row);
+					});
+		} catch (SQLException e) {
+			livestockWideView.failed(e);
+			if (passedOn[0] == 0) {
+				return fallback.stream();
 			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Maps the current LIVESTOCK_4 row with its diet and harvestable taken from dimensions
+	 *
+	 * @return the livestock, or null if it has no LIVESTOCK_1 or LIVESTOCK_3 row (the join would have dropped it)
+	 */
+	static LivestockModel resolveLivestock(ResultSet rs, LivestockDimensionCache.Snapshot dimensions)
+			throws SQLException {
+		String animalTypeValue = rs.getString("animalType");
+		int age = rs.getInt("age");
+		boolean ageIsNull = rs.wasNull();
+		double weight = rs.getDouble("weight");
+		if (animalTypeValue == null || ageIsNull || rs.wasNull()) {
+			return null;
+		}
+
+		AnimalType animalType = AnimalType.valueOf(animalTypeValue.toUpperCase());
+		CropType diet = dimensions.getDiet(animalType, weight);
+		int harvestable = dimensions.getHarvestable(animalType, age);
+		if (diet == null || harvestable == LivestockDimensionCache.Snapshot.MISSING) {
+			return null;
+		}
 
-		} catch (Exception e) {
-			System.out.println(e);
+		return new LivestockModel(
+				rs.getInt("tagID"),
+				animalType,
+				age,
+				diet,
+				weight,
+				rs.getDate("lastFed"),
+				harvestable == 1,
+				rs.getDate("lastViolatedForHarvestedGoods"));
+	}
+
+	/**
+	 * @return the loaded dimension cache, loading it first (on its own pooled connection) if needed.
+	 * Call before borrowing the connection for the main query so a request never holds two.
+	 */
+	private LivestockDimensionCache.Snapshot getLivestockDimensions() throws SQLException {
+		LivestockDimensionCache.Snapshot dimensions = livestockDimensions.get();
+		if (dimensions != null) {
+			return dimensions;
+		}
+
+		Connection connection = null;
+		try {
+			connection = getConnection();
+			return livestockDimensions.load(connection);
+		} finally {
+			releaseConnection(connection);
 		}
 	}
-	public void populateLivestock() {
-		populateLivestock_3();
-		populateLivestock_1();
+
+	@FunctionalInterface
+	private interface RowMapper {
+		JSONObject map(ResultSet rs) throws SQLException;
 	}
-	public boolean getRandomBool() {
-		Random random = new Random();
-		return random.nextBoolean();
+
+	@FunctionalInterface
+	private interface PageStream {
+		String stream() throws SQLException, IOException;
 	}
-	public CropType getRandomCropType() {
-		Random random = new Random();
-		int crop = random.nextInt(0, 6);
 
-		switch (crop) {
-			case 0:
-				return CropType.MUSTARD;
-			case 1:
-				return CropType.CANOLA;
-			case 2:
-				return CropType.WHEAT;
-			case 3:
-				return CropType.CORN;
-			case 4:
-				return CropType.POTATOES;
-			case 5:
-				return CropType.COCONUT;
+	/**
+	 * (Re)loads the columnar livestock store (on its own pooled connection) if it is behind LIVESTOCK_4.
+	 * Call before borrowing the connection for the main query so a request never holds two.
+	 */
+	private void ensureLivestockColumns() throws SQLException {
+		if (livestockColumns.isFresh()) {
+			return;
+		}
+
+		LivestockDimensionCache.Snapshot dimensions = getLivestockDimensions();
+		Connection connection = null;
+		try {
+			connection = getConnection();
+			livestockColumns.load(connection, dimensions);
+		} finally {
+			releaseConnection(connection);
 		}
-		return CropType.WHEAT;
 	}
 
-	private void rollbackConnection() {
+	/**
+	 * Loads the running nurture totals (on their own pooled connection) if they aren't yet.
+	 * Call before borrowing the connection for the main query so a request never holds two.
+	 */
+	private void ensureNurtureTotals() throws SQLException {
+		if (nurtureTotals.isLoaded()) {
+			return;
+		}
+
+		Connection connection = null;
+		try {
+			connection = getConnection();
+			nurtureTotals.load(connection);
+		} finally {
+			releaseConnection(connection);
+		}
+	}
+
+	/**
+	 * Runs hook, the cache updates of a committed write, right away, or once the batch has committed when called
+	 * from a mutation of the write pipeline (whose commit() only marks the end of the mutation)
+	 */
+	private void afterCommit(Runnable hook) {
+		BatchTransaction batch = batchTransaction.get();
+		if (batch == null) {
+			hook.run();
+		} else {
+			batch.hooks.add(hook);
+		}
+	}
+
+	/**
+	 * Call after committing a write to tables: bumps their versions and drops the cached results that read them
+	 */
+	private void tablesChanged(Table... tables) {
+		tableVersions.bump(tables);
+		resultCache.tablesChanged(tables);
+		cropsSnapshot.tablesChanged(tables);
+		livestockSnapshot.tablesChanged(tables);
+		livestockWideView.tablesChanged(tables);
+	}
+
+	private Connection getConnection() throws SQLException {
+		BatchTransaction batch = batchTransaction.get();
+		if (batch != null) {
+			// A mutation of the write pipeline's current batch
+			return batch.proxy;
+		}
+		ConnectionPool pool = connectionPool;
+		if (pool == null) {
+			throw new SQLException("Not connected to Oracle, please log in first");
+		}
+		return pool.getConnection();
+	}
+
+	private void releaseConnection(Connection connection) {
+		try {
+			if (connection != null) {
+				connection.close();
+			}
+		} catch (SQLException e) {
+			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+		}
+	}
+
+	private void rollbackConnection(Connection connection) {
 		try  {
-			connection.rollback();
+			if (connection != null) {
+				connection.rollback();
+			}
 		} catch (SQLException e) {
 			System.out.println(EXCEPTION_TAG + " " + e.getMessage());
 		}
 	}
+
+	/**
+	 * The pooled connection a write pipeline batch runs on, handed to its mutations as a proxy whose close() and
+	 * commit() do nothing and whose rollback() goes back to the savepoint taken before the current mutation
+	 */
+	private static final class BatchTransaction implements InvocationHandler {
+		private final Connection connection;
+		private final Connection proxy;
+		// The cache updates of the mutations applied so far, in order
+		private final List<Runnable> hooks = new ArrayList<>();
+		private Savepoint savepoint;
+
+		BatchTransaction(Connection connection) {
+			this.connection = connection;
+			this.proxy = (Connection) Proxy.newProxyInstance(
+					Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+				case "close":
+				case "commit":
+					return null;
+				case "rollback":
+					if (args == null) {
+						connection.rollback(savepoint);
+						return null;
+					}
+					break;
+				case "equals":
+					return proxy == args[0];
+				case "hashCode":
+					return System.identityHashCode(proxy);
+				default:
+					break;
+			}
+
+			try {
+				return method.invoke(connection, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
 }
@@ -0,0 +1,96 @@
+package database;
+
+import java.util.Arrays;
+
+/**
+ * Bitmap index over one low-cardinality column (an enum ordinal or a 0/1 flag) of a positional row store:
+ * one bitmap of row positions per value, each a plain long[] of 64 rows per word.
+ *
+ * Rows are inserted and removed by position like the column arrays they index, shifting the bits of every
+ * later row, so the bitmaps stay aligned with the columns without renumbering anything. Combining filters
+ * is a word-wise AND, counting is a popcount.
+ */
+class EnumBitmapIndex {
+    private static final int INITIAL_WORDS = 16;
+
+    private final long[][] bitmaps;
+    private int rows = 0;
+
+    EnumBitmapIndex(int values) {
+        bitmaps = new long[values][INITIAL_WORDS];
+    }
+
+    /**
+     * Inserts a row with the given value at position, moving every row at or after it up by one
+     */
+    void insert(int position, int value) {
+        int lastWord = rows >>> 6;
+        if (lastWord >= bitmaps[0].length) {
+            for (int v = 0; v < bitmaps.length; v++) {
+                bitmaps[v] = Arrays.copyOf(bitmaps[v], bitmaps[v].length * 2);
+            }
+        }
+
+        int word = position >>> 6;
+        long below = (1L << position) - 1;
+        for (long[] bitmap : bitmaps) {
+            for (int i = lastWord; i > word; i--) {
+                bitmap[i] = (bitmap[i] << 1) | (bitmap[i - 1] >>> 63);
+            }
+            long bits = bitmap[word];
+            bitmap[word] = (bits & below) | ((bits & ~below) << 1);
+        }
+        bitmaps[value][word] |= 1L << position;
+        rows++;
+    }
+
+    /**
+     * Removes the row at position, moving every later row down by one
+     */
+    void remove(int position) {
+        int lastWord = (rows - 1) >>> 6;
+        int word = position >>> 6;
+        long below = (1L << position) - 1;
+        for (long[] bitmap : bitmaps) {
+            long bits = bitmap[word];
+            bitmap[word] = (bits & below) | ((bits >>> 1) & ~below);
+            for (int i = word; i < lastWord; i++) {
+                bitmap[i] |= bitmap[i + 1] << 63;
+                bitmap[i + 1] >>>= 1;
+            }
+        }
+        rows--;
+    }
+
+    /**
+     * @return the rows having value, shared and only valid until the next insert/remove
+     */
+    long[] get(int value) {
+        return bitmaps[value];
+    }
+
+    int count(int value) {
+        long[] bitmap = bitmaps[value];
+        int count = 0;
+        for (int i = 0, words = wordCount(); i < words; i++) {
+            count += Long.bitCount(bitmap[i]);
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of words holding rows
+     */
+    int wordCount() {
+        return (rows + 63) >>> 6;
+    }
+
+    /**
+     * ANDs other into target over the first words words
+     */
+    static void and(long[] target, long[] other, int words) {
+        for (int i = 0; i < words; i++) {
+            target[i] &= other[i];
+        }
+    }
+}
@@ -0,0 +1,562 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+import model.enums.AnimalType;
+import model.enums.CropType;
+import util.PrintablePreparedStatement;
+
+/**
+ * Fills the database with synthetic farm data at benchmark scale: farmers, fields and the farmers tending them,
+ * buyers, and animals with their nurture events and veterinary records, on top of the rows databaseSetup.sql
+ * inserts (its Farmers_1 and Fields_1 rows are referenced, so it has to have run first).
+ *
+ * Generated keys start above the largest existing one, so it can be run again to grow the data. Every row
+ * references rows that exist, the dimension rows (LIVESTOCK_1 weights, LIVESTOCK_3 ages) are inserted first
+ * unless already there, and an animal's events go in on the same connection right after it.
+ *
+ * Output only depends on the seed and the Settings: animals are generated in partitions of PARTITION_ANIMALS,
+ * each from its own Random derived from the seed and the partition number, so the partitions can be loaded in
+ * parallel (one pooled connection each) in any order. Rows go in through executeBatch() with a commit per
+ * BATCH_SIZE rows, there is no single huge transaction; a failure stops the load and leaves what was committed.
+ *
+ * Only reachable over HTTP (POST /generate) when the backend is started with -Dfms.generate.enabled=true.
+ *
+ * Distributions, roughly: more chickens than anything else, ages skewed young within each type's lifespan,
+ * weight following a growth curve to the adult weight of the type, harvestable once the type is mature, a few
+ * farmers doing most of the nurturing, and most animals healthy.
+ */
+public class FarmDataGenerator {
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("fms.generate.enabled", "false"));
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int PARTITION_ANIMALS = 10000;
+
+    private static final AnimalType[] TYPES = { AnimalType.CHICKEN, AnimalType.SHEEP, AnimalType.COW, AnimalType.PIG };
+    // Share of the herd, by TYPES
+    private static final double[] TYPE_SHARE = { 0.5, 0.2, 0.1, 0.2 };
+    private static final int[] MAX_AGE = { 8, 12, 20, 15 };
+    private static final int[] MATURE_AGE = { 1, 2, 3, 1 };
+    // The LIVESTOCK_1 weight grid of each type: lightest, heaviest and step, in kg
+    private static final int[] MIN_WEIGHT = { 1, 5, 40, 5 };
+    private static final int[] MAX_WEIGHT = { 10, 160, 900, 300 };
+    private static final int[] WEIGHT_STEP = { 1, 5, 10, 5 };
+    private static final CropType[][] DIETS = {
+            { CropType.CORN, CropType.WHEAT, CropType.CANOLA },
+            { CropType.WHEAT, CropType.CANOLA, CropType.MUSTARD },
+            { CropType.CORN, CropType.WHEAT, CropType.CANOLA },
+            { CropType.CORN, CropType.POTATOES, CropType.COCONUT }
+    };
+    // Mean water and food per nurture event, by TYPES
+    private static final int[] WATER = { 1, 8, 60, 15 };
+    private static final int[] FOOD = { 1, 3, 25, 6 };
+
+    private static final String[] HEALTH = { "healthy", "sick", "injured" };
+    private static final double[] HEALTH_SHARE = { 0.85, 0.1, 0.05 };
+    private static final String[] FIELD_STATES = { "growing", "empty", "resting" };
+    private static final double[] FIELD_STATE_SHARE = { 0.5, 0.3, 0.2 };
+
+    private static final String[] FIRST_NAMES = { "Ava", "Ben", "Chloe", "Daniel", "Emma", "Felix", "Grace", "Henry",
+            "Isla", "Jack", "Kai", "Lily", "Mason", "Nora", "Owen", "Priya", "Quinn", "Ruby", "Sam", "Tara" };
+    private static final String[] LAST_NAMES = { "Anderson", "Brown", "Chen", "Dubois", "Evans", "Garcia", "Hughes",
+            "Ito", "Jones", "Kim", "Lopez", "Miller", "Nguyen", "Olsen", "Patel", "Singh", "Taylor", "Wong" };
+    private static final String[] STREETS = { "Maple Street", "Oak Avenue", "Cedar Road", "Elm Drive", "Main Street",
+            "Linden Avenue", "Birch Lane", "Willow Way" };
+    private static final String[] CITIES = { "Vancouver, BC", "Kelowna, BC", "Calgary, AB", "Seattle, WA",
+            "Portland, OR", "Boise, ID" };
+
+    /**
+     * Borrows a connection for one part of the load, it is closed (returned) afterwards
+     */
+    @FunctionalInterface
+    public interface ConnectionSource {
+        Connection getConnection() throws SQLException;
+    }
+
+    /**
+     * How much to generate, with the seed that makes it reproducible
+     */
+    public static class Settings {
+        private final long seed;
+        private final int animals;
+        private final int farmers;
+        private final int fields;
+        private final int buyers;
+        private final int nurturesPerAnimal;
+        private final int vetRecordsPerAnimal;
+        private final int threads;
+        private final LocalDate asOf;
+
+        public Settings(long seed, int animals, int farmers, int fields, int buyers, int nurturesPerAnimal,
+                        int vetRecordsPerAnimal, int threads, LocalDate asOf) {
+            this.seed = seed;
+            this.animals = animals;
+            this.farmers = farmers;
+            this.fields = fields;
+            this.buyers = buyers;
+            this.nurturesPerAnimal = nurturesPerAnimal;
+            this.vetRecordsPerAnimal = vetRecordsPerAnimal;
+            this.threads = Math.max(1, threads);
+            this.asOf = asOf;
+        }
+
+        /**
+         * Builds the settings from a /generate request body, every key is optional:
+         * { seed, animals, farmers, fields, buyers, nurturesPerAnimal, vetRecordsPerAnimal, threads, asOf (yyyy-mm-dd) }
+         */
+        public static Settings fromRequestBody(Map<String, Object> map) {
+            return new Settings(
+                    Long.parseLong(valueOf(map, "seed", "42")),
+                    Integer.parseInt(valueOf(map, "animals", "100000")),
+                    Integer.parseInt(valueOf(map, "farmers", "200")),
+                    Integer.parseInt(valueOf(map, "fields", "2000")),
+                    Integer.parseInt(valueOf(map, "buyers", "1000")),
+                    Integer.parseInt(valueOf(map, "nurturesPerAnimal", "20")),
+                    Integer.parseInt(valueOf(map, "vetRecordsPerAnimal", "2")),
+                    Integer.parseInt(valueOf(map, "threads", "4")),
+                    LocalDate.parse(valueOf(map, "asOf", LocalDate.now().toString())));
+        }
+
+        private static String valueOf(Map<String, Object> map, String key, String defaultValue) {
+            Object value = map.get(key);
+            return value == null ? defaultValue : value.toString();
+        }
+    }
+
+    private final ConnectionSource connections;
+    private final Settings settings;
+    private final int threads;
+
+    // Keys of the rows the generated ones reference, read before generating
+    private final List<Integer> yearsOfEmployment = new ArrayList<>();
+    private final List<Double> nutrientLevels = new ArrayList<>();
+    private final List<Integer> farmerIDs = new ArrayList<>();
+    private int firstTagID;
+    private int firstFarmerID;
+    private int firstPlotNum;
+    private int firstBuyerID;
+
+    private final LongAdder ages = new LongAdder();
+    private final LongAdder weights = new LongAdder();
+    private final LongAdder livestock = new LongAdder();
+    private final LongAdder nurtures = new LongAdder();
+    private final LongAdder vetRecords = new LongAdder();
+    private final LongAdder tends = new LongAdder();
+    private final LongAdder buyerRows = new LongAdder();
+
+    /**
+     * @param maxThreads the most connections to load on at once, settings' threads is capped to it
+     */
+    public FarmDataGenerator(ConnectionSource connections, Settings settings, int maxThreads) {
+        this.connections = connections;
+        this.settings = settings;
+        this.threads = Math.max(1, Math.min(settings.threads, maxThreads));
+    }
+
+    /**
+     * Generates and loads everything
+     *
+     * @return { seed, threads, ages, weights, livestock, farmers, fields, tends, buyers, nurtures, vetRecords,
+     *           millis }, the rows inserted (ages and weights only count the dimension rows that were missing)
+     * @throws SQLException if a part of the load failed, the parts committed before stay
+     */
+    public JSONObject generate() throws SQLException {
+        long start = System.currentTimeMillis();
+        try (Connection connection = connections.getConnection()) {
+            readReferences(connection);
+            insertDimensions(connection);
+            insertFarmers(connection);
+            insertFields(connection);
+        }
+
+        ExecutorService loaders = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "farm-data-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Void>> parts = new ArrayList<>();
+            parts.add(loaders.submit(() -> load(this::insertTends)));
+            parts.add(loaders.submit(() -> load(this::insertBuyers)));
+            for (int from = 0; from < settings.animals; from += PARTITION_ANIMALS) {
+                int partition = from / PARTITION_ANIMALS;
+                int count = Math.min(PARTITION_ANIMALS, settings.animals - from);
+                parts.add(loaders.submit(() -> load(connection -> insertAnimals(connection, partition, count))));
+            }
+            for (Future<Void> part : parts) {
+                part.get();
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof SQLException ? (SQLException) e.getCause() : new SQLException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while generating data", e);
+        } finally {
+            loaders.shutdownNow();
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("seed", settings.seed);
+        result.put("threads", threads);
+        result.put("ages", ages.sum());
+        result.put("weights", weights.sum());
+        result.put("livestock", livestock.sum());
+        result.put("farmers", settings.farmers);
+        result.put("fields", settings.fields);
+        result.put("tends", tends.sum());
+        result.put("buyers", buyerRows.sum());
+        result.put("nurtures", nurtures.sum());
+        result.put("vetRecords", vetRecords.sum());
+        result.put("millis", System.currentTimeMillis() - start);
+        return result;
+    }
+
+    @FunctionalInterface
+    private interface Part {
+        void run(Connection connection) throws SQLException;
+    }
+
+    private Void load(Part part) throws SQLException {
+        try (Connection connection = connections.getConnection()) {
+            try {
+                part.run(connection);
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        }
+        return null;
+    }
+
+    private void readReferences(Connection connection) throws SQLException {
+        readColumn(connection, "SELECT yearsOfEmployment FROM Farmers_1 ORDER BY yearsOfEmployment", rs ->
+                yearsOfEmployment.add(rs.getInt(1)));
+        readColumn(connection, "SELECT nutrientLevels FROM Fields_1 ORDER BY nutrientLevels", rs ->
+                nutrientLevels.add(rs.getDouble(1)));
+        readColumn(connection, "SELECT farmerID FROM Farmers_2 ORDER BY farmerID", rs ->
+                farmerIDs.add(rs.getInt(1)));
+        if (yearsOfEmployment.isEmpty() || nutrientLevels.isEmpty()) {
+            throw new SQLException("Farmers_1 or Fields_1 is empty, run databaseSetup.sql first");
+        }
+
+        firstTagID = maxOf(connection, "SELECT MAX(tagID) FROM Livestock_4", 4000) + 1;
+        firstFarmerID = maxOf(connection, "SELECT MAX(farmerID) FROM Farmers_2", 1000) + 1;
+        firstPlotNum = maxOf(connection, "SELECT MAX(plotNum) FROM Fields_4", 5000) + 1;
+        firstBuyerID = maxOf(connection, "SELECT MAX(buyerID) FROM Buyers_DealsWith", 6000) + 1;
+    }
+
+    @FunctionalInterface
+    private interface RowReader {
+        void read(ResultSet rs) throws SQLException;
+    }
+
+    private static void readColumn(Connection connection, String query, RowReader reader) throws SQLException {
+        PrintablePreparedStatement ps = new PrintablePreparedStatement(connection.prepareStatement(query), query, false);
+        ResultSet rs = ps.executeQuery();
+        while (rs.next()) {
+            reader.read(rs);
+        }
+        rs.close();
+        ps.close();
+    }
+
+    private static int maxOf(Connection connection, String query, int whenEmpty) throws SQLException {
+        int[] max = { whenEmpty };
+        readColumn(connection, query, rs -> {
+            int value = rs.getInt(1);
+            if (!rs.wasNull()) {
+                max[0] = Math.max(max[0], value);
+            }
+        });
+        return max[0];
+    }
+
+    // Every age of every type, and every weight of the grid, unless the row is already there
+    private void insertDimensions(Connection connection) throws SQLException {
+        Random random = random(0, 0);
+
+        try (Batch batch = new Batch(connection, DatabaseConnectionHandler.LIVESTOCK_3_MERGE)) {
+            for (int t = 0; t < TYPES.length; t++) {
+                String type = TYPES[t].toString().toLowerCase();
+                for (int age = 0; age <= MAX_AGE[t]; age++) {
+                    batch.ps.setString(1, type);
+                    batch.ps.setInt(2, age);
+                    batch.ps.setInt(3, age >= MATURE_AGE[t] ? 1 : 0);
+                    batch.add();
+                }
+            }
+            ages.add(batch.finish());
+        }
+
+        try (Batch batch = new Batch(connection, DatabaseConnectionHandler.LIVESTOCK_1_MERGE)) {
+            for (int t = 0; t < TYPES.length; t++) {
+                String type = TYPES[t].toString().toLowerCase();
+                for (int weight = MIN_WEIGHT[t]; weight <= MAX_WEIGHT[t]; weight += WEIGHT_STEP[t]) {
+                    batch.ps.setString(1, type);
+                    batch.ps.setDouble(2, weight);
+                    batch.ps.setString(3, DIETS[t][random.nextInt(DIETS[t].length)].toString().toLowerCase());
+                    batch.add();
+                }
+            }
+            weights.add(batch.finish());
+        }
+    }
+
+    private void insertFarmers(Connection connection) throws SQLException {
+        Random random = random(1, 0);
+        String query = "INSERT INTO Farmers_2(farmerID, fullName, yearsOfEmployment) VALUES (?, ?, ?)";
+        try (Batch batch = new Batch(connection, query)) {
+            for (int i = 0; i < settings.farmers; i++) {
+                batch.ps.setInt(1, firstFarmerID + i);
+                batch.ps.setString(2, name(random));
+                // Most farmers are fairly new
+                batch.ps.setInt(3, yearsOfEmployment.get(skewed(random, yearsOfEmployment.size())));
+                batch.add();
+                farmerIDs.add(firstFarmerID + i);
+            }
+            batch.finish();
+        }
+        if (farmerIDs.isEmpty()) {
+            throw new SQLException("no farmers to nurture the animals, generate at least one");
+        }
+    }
+
+    private void insertFields(Connection connection) throws SQLException {
+        Random random = random(2, 0);
+        String query = "INSERT INTO Fields_4(plotNum, nutrientLevels, capacity, state) VALUES (?, ?, ?, ?)";
+        try (Batch batch = new Batch(connection, query)) {
+            for (int i = 0; i < settings.fields; i++) {
+                batch.ps.setInt(1, firstPlotNum + i);
+                batch.ps.setDouble(2, nutrientLevels.get(random.nextInt(nutrientLevels.size())));
+                // Mostly small plots, a few very large ones
+                batch.ps.setInt(3, (int) Math.round(Math.exp(6 + 2 * random.nextGaussian())));
+                batch.ps.setString(4, pick(random, FIELD_STATES, FIELD_STATE_SHARE));
+                batch.add();
+            }
+            batch.finish();
+        }
+    }
+
+    // One to three farmers tend each generated plot
+    private void insertTends(Connection connection) throws SQLException {
+        Random random = random(3, 0);
+        String query = "INSERT INTO Tends(farmerID, plotNum, waterSpent) VALUES (?, ?, ?)";
+        try (Batch batch = new Batch(connection, query)) {
+            for (int i = 0; i < settings.fields; i++) {
+                int count = Math.min(1 + random.nextInt(3), farmerIDs.size());
+                int first = random.nextInt(farmerIDs.size());
+                for (int j = 0; j < count; j++) {
+                    batch.ps.setInt(1, farmerIDs.get((first + j) % farmerIDs.size()));
+                    batch.ps.setInt(2, firstPlotNum + i);
+                    batch.ps.setInt(3, 50 + random.nextInt(500));
+                    batch.add();
+                }
+            }
+            tends.add(batch.finish());
+        }
+    }
+
+    private void insertBuyers(Connection connection) throws SQLException {
+        Random random = random(4, 0);
+        String query = "INSERT INTO Buyers_DealsWith(buyerID, farmerID, address, dealer_name, phoneNumber, " +
+                "purchase_date) VALUES (?, ?, ?, ?, ?, ?)";
+        try (Batch batch = new Batch(connection, query)) {
+            for (int i = 0; i < settings.buyers; i++) {
+                batch.ps.setInt(1, firstBuyerID + i);
+                batch.ps.setInt(2, farmerIDs.get(skewed(random, farmerIDs.size())));
+                batch.ps.setString(3, (100 + random.nextInt(9900)) + " " + STREETS[random.nextInt(STREETS.length)]
+                        + ", " + CITIES[random.nextInt(CITIES.length)]);
+                batch.ps.setString(4, name(random));
+                batch.ps.setString(5, String.format("(604) %03d-%04d", random.nextInt(1000), random.nextInt(10000)));
+                batch.ps.setDate(6, daysAgo(random.nextInt(730)));
+                batch.add();
+            }
+            buyerRows.add(batch.finish());
+        }
+    }
+
+    /**
+     * Inserts animals partition * PARTITION_ANIMALS up to (excluding) partition * PARTITION_ANIMALS + count,
+     * then their nurture events and veterinary records
+     */
+    private void insertAnimals(Connection connection, int partition, int count) throws SQLException {
+        Random random = random(5, partition);
+        int firstTag = firstTagID + partition * PARTITION_ANIMALS;
+        int[] types = new int[count];
+        int[] ages = new int[count];
+
+        String query = "INSERT INTO Livestock_4(tagID, animalType, age, weight, lastFed, " +
+                "lastViolatedForHarvestedGoods) VALUES (?, ?, ?, ?, ?, ?)";
+        try (Batch batch = new Batch(connection, query)) {
+            for (int i = 0; i < count; i++) {
+                int t = pickIndex(random, TYPE_SHARE);
+                // The younger of two draws, so there are more young animals than old ones
+                int age = Math.min(random.nextInt(MAX_AGE[t] + 1), random.nextInt(MAX_AGE[t] + 1));
+                types[i] = t;
+                ages[i] = age;
+
+                batch.ps.setInt(1, firstTag + i);
+                batch.ps.setString(2, TYPES[t].toString().toLowerCase());
+                batch.ps.setInt(3, age);
+                batch.ps.setDouble(4, weight(random, t, age));
+                // Fed within the last few days, most of them today or yesterday
+                batch.ps.setDate(5, daysAgo((int) Math.min(14, -Math.log(1 - random.nextDouble()))));
+                if (age >= MATURE_AGE[t] && random.nextDouble() < 0.6) {
+                    batch.ps.setDate(6, daysAgo(random.nextInt(60)));
+                } else {
+                    batch.ps.setNull(6, Types.DATE);
+                }
+                batch.add();
+            }
+            livestock.add(batch.finish());
+        }
+
+        query = "INSERT INTO Nurtures(farmerID, tagID, dateNurtured, waterSpent, foodSpent) VALUES (?, ?, ?, ?, ?)";
+        try (Batch batch = new Batch(connection, query)) {
+            for (int i = 0; i < count; i++) {
+                int t = types[i];
+                int events = (int) Math.round(settings.nurturesPerAnimal * (0.5 + random.nextDouble()));
+                // One event per day at most, so (farmerID, tagID, dateNurtured) stays unique
+                int day = 0;
+                for (int e = 0; e < events; e++) {
+                    day += 1 + random.nextInt(3);
+                    batch.ps.setInt(1, farmerIDs.get(skewed(random, farmerIDs.size())));
+                    batch.ps.setInt(2, firstTag + i);
+                    batch.ps.setDate(3, daysAgo(day));
+                    batch.ps.setInt(4, around(random, WATER[t]));
+                    batch.ps.setInt(5, around(random, FOOD[t]));
+                    batch.add();
+                }
+            }
+            nurtures.add(batch.finish());
+        }
+
+        query = "INSERT INTO VeterinaryRecords_Has(tagID, recordID, record_date, healthStatus) VALUES (?, ?, ?, ?)";
+        try (Batch batch = new Batch(connection, query)) {
+            for (int i = 0; i < count; i++) {
+                int records = random.nextInt(2 * settings.vetRecordsPerAnimal + 1);
+                for (int r = 1; r <= records; r++) {
+                    batch.ps.setInt(1, firstTag + i);
+                    batch.ps.setInt(2, r);
+                    batch.ps.setDate(3, daysAgo(random.nextInt(365 * (ages[i] + 1))));
+                    batch.ps.setString(4, pick(random, HEALTH, HEALTH_SHARE));
+                    batch.add();
+                }
+            }
+            vetRecords.add(batch.finish());
+        }
+    }
+
+    /**
+     * @return a weight on the type's grid, growing towards the adult weight until maturity, with some spread
+     */
+    private static double weight(Random random, int t, int age) {
+        double grown = Math.min(1.0, (age + 1.0) / (MATURE_AGE[t] + 1.0));
+        double adult = MIN_WEIGHT[t] + 0.7 * (MAX_WEIGHT[t] - MIN_WEIGHT[t]);
+        double weight = MIN_WEIGHT[t] + grown * (adult - MIN_WEIGHT[t]) * (1 + 0.15 * random.nextGaussian());
+        int steps = (int) Math.round((weight - MIN_WEIGHT[t]) / WEIGHT_STEP[t]);
+        int maxSteps = (MAX_WEIGHT[t] - MIN_WEIGHT[t]) / WEIGHT_STEP[t];
+        return MIN_WEIGHT[t] + Math.max(0, Math.min(maxSteps, steps)) * WEIGHT_STEP[t];
+    }
+
+    // Each stream of rows (table) and partition has its own Random, so the load order doesn't matter
+    private Random random(int stream, int partition) {
+        return new Random(settings.seed * 1_000_003L + stream * 65_537L + partition);
+    }
+
+    private Date daysAgo(int days) {
+        return Date.valueOf(settings.asOf.minusDays(days));
+    }
+
+    private static String name(Random random) {
+        return FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+    }
+
+    // 0..size-1, the low indexes much more often than the high ones
+    private static int skewed(Random random, int size) {
+        double u = random.nextDouble();
+        return (int) (size * u * u);
+    }
+
+    private static int around(Random random, int mean) {
+        return Math.max(1, (int) Math.round(mean * (0.7 + 0.6 * random.nextDouble())));
+    }
+
+    private static String pick(Random random, String[] values, double[] shares) {
+        return values[pickIndex(random, shares)];
+    }
+
+    private static int pickIndex(Random random, double[] shares) {
+        double u = random.nextDouble();
+        for (int i = 0; i < shares.length - 1; i++) {
+            u -= shares[i];
+            if (u < 0) {
+                return i;
+            }
+        }
+        return shares.length - 1;
+    }
+
+    /**
+     * A prepared insert run with executeBatch() and committed every BATCH_SIZE rows, finish() sends the rest
+     */
+    private static final class Batch implements AutoCloseable {
+        private final Connection connection;
+        private final PrintablePreparedStatement ps;
+        private int pending = 0;
+        private long rows = 0;
+
+        Batch(Connection connection, String query) throws SQLException {
+            this.connection = connection;
+            this.ps = new PrintablePreparedStatement(connection.prepareStatement(query), query, false);
+        }
+
+        void add() throws SQLException {
+            ps.addBatch();
+            if (++pending == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * @return the rows inserted, a MERGE only counts the rows it didn't find. A row the driver reports no count
+         *         for (SUCCESS_NO_INFO) counts as one.
+         */
+        long finish() throws SQLException {
+            flush();
+            return rows;
+        }
+
+        private void flush() throws SQLException {
+            if (pending > 0) {
+                for (int count : ps.executeBatch()) {
+                    rows += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+                }
+                connection.commit();
+                pending = 0;
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            ps.close();
+        }
+    }
+}
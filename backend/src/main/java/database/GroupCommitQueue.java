@@ -0,0 +1,237 @@
+package database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+import util.LatencyHistogram;
+
+/**
+ * The group commit behind NurtureWriteBuffer and MutationPipeline: a bounded queue with one daemon writer thread.
+ * The writer takes the first waiting entry, keeps collecting until it has batchSize entries or flushMillis have
+ * passed, hands the batch to its Writer to apply in one transaction, then completes each entry.
+ *
+ * Configured from the system properties under a prefix (e.g. fms.nurtures): prefix.capacity (default 10000),
+ * prefix.batchSize, prefix.flushMillis and prefix.offerMillis (default 1000). When the queue is full offer()
+ * waits up to offerMillis for room and then rejects the entry, so a database that can't keep up slows the
+ * callers down instead of growing the heap.
+ */
+class GroupCommitQueue<E extends GroupCommitQueue.Entry> {
+    /**
+     * Applies one batch in one transaction
+     */
+    @FunctionalInterface
+    interface Writer<E> {
+        /**
+         * @return each entry's error message, null where it was committed
+         * @throws SQLException if the transaction failed and nothing was committed
+         */
+        String[] write(List<E> batch) throws SQLException;
+    }
+
+    /**
+     * One queued item, completed on the writer thread once its batch is done
+     */
+    abstract static class Entry {
+        final long submittedAt = System.nanoTime();
+
+        /**
+         * @param error null if the entry was committed
+         */
+        abstract void complete(String error);
+    }
+
+    private final int capacity;
+    private final int batchSize;
+    private final long flushMillis;
+    private final long offerMillis;
+    // Plural of what an entry is, for the warnings
+    private final String entries;
+    private final Writer<E> batchWriter;
+    private final BlockingQueue<E> queue;
+    private final Thread writer;
+    private volatile boolean closed = false;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder committed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batched = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final AtomicInteger maxBatch = new AtomicInteger();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final LatencyHistogram batchLatency = new LatencyHistogram();
+    // Time from offer() to the entry's commit
+    private final LatencyHistogram commitLatency = new LatencyHistogram();
+
+    /**
+     * Starts the writer thread
+     *
+     * @param prefix   the system property prefix, see the class comment
+     * @param entries  what an entry is, in the plural, e.g. "mutations"
+     */
+    GroupCommitQueue(String prefix, int defaultBatchSize, long defaultFlushMillis, String threadName, String entries,
+                     Writer<E> batchWriter) {
+        this.capacity = Integer.parseInt(System.getProperty(prefix + ".capacity", "10000"));
+        this.batchSize = Integer.parseInt(System.getProperty(prefix + ".batchSize", String.valueOf(defaultBatchSize)));
+        this.flushMillis = Long.parseLong(System.getProperty(prefix + ".flushMillis", String.valueOf(defaultFlushMillis)));
+        this.offerMillis = Long.parseLong(System.getProperty(prefix + ".offerMillis", "1000"));
+        this.entries = entries;
+        this.batchWriter = batchWriter;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        writer = new Thread(this::run, threadName);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues entry, waiting up to offerMillis for room
+     *
+     * @return false if the queue stayed full or is closed, entry then won't be completed
+     */
+    boolean offer(E entry) {
+        boolean queued = false;
+        if (!closed) {
+            try {
+                queued = queue.offer(entry, offerMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        maxDepth.accumulateAndGet(queue.size(), Math::max);
+        if (!queued) {
+            rejected.increment();
+            return false;
+        }
+        submitted.increment();
+        return true;
+    }
+
+    int depth() {
+        return queue.size();
+    }
+
+    /**
+     * @return whether the caller is the writer thread, i.e. runs inside a batch
+     */
+    boolean isWriter() {
+        return Thread.currentThread() == writer;
+    }
+
+    /**
+     * Stops taking entries and waits (up to a few seconds) for the queued ones to be written
+     */
+    void close() {
+        closed = true;
+        try {
+            writer.join(5000 + flushMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            System.out.println("[WARNING] " + queue.size() + " queued " + entries + " not written");
+        }
+    }
+
+    /**
+     * Adds { capacity, batchSize, flushMillis, queueDepth, maxQueueDepth, submitted, rejected, committed, failed,
+     * batches, failedBatches, averageBatch, maxBatch, batchLatency, commitLatency } to json
+     */
+    JSONObject putStats(JSONObject json) {
+        json.put("capacity", capacity);
+        json.put("batchSize", batchSize);
+        json.put("flushMillis", flushMillis);
+        json.put("queueDepth", queue.size());
+        json.put("maxQueueDepth", maxDepth.get());
+        json.put("submitted", submitted.sum());
+        json.put("rejected", rejected.sum());
+        json.put("committed", committed.sum());
+        json.put("failed", failed.sum());
+        json.put("batches", batches.sum());
+        json.put("failedBatches", failedBatches.sum());
+        long batchCount = batches.sum();
+        json.put("averageBatch", batchCount == 0 ? 0 : (double) batched.sum() / batchCount);
+        json.put("maxBatch", maxBatch.get());
+        json.put("batchLatency", batchLatency.toJSON());
+        json.put("commitLatency", commitLatency.toJSON());
+        return json;
+    }
+
+    private void run() {
+        List<E> batch = new ArrayList<>(batchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                E first = queue.poll(flushMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushMillis);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long left = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || left <= 0 || closed) {
+                        break;
+                    }
+                    E next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Only a daemon thread, but don't lose what was taken already
+                closed = true;
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<E> batch) {
+        long start = System.nanoTime();
+        String[] errors;
+        try {
+            errors = batchWriter.write(batch);
+        } catch (Throwable e) {
+            // Even an Error fails the batch instead of the writer thread, its callers are waiting on the entries
+            failedBatches.increment();
+            // An Error (e.g. StackOverflowError) usually has no message
+            String error = e.getMessage() != null ? e.getMessage() : e.toString();
+            System.out.println("[WARNING] " + batch.size() + " " + entries + " not written: " + error);
+            errors = new String[batch.size()];
+            Arrays.fill(errors, error);
+        }
+        long end = System.nanoTime();
+        batchLatency.record(end - start);
+        batches.increment();
+        batched.add(batch.size());
+        maxBatch.accumulateAndGet(batch.size(), Math::max);
+
+        int batchFailures = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            E entry = batch.get(i);
+            if (errors[i] == null) {
+                committed.increment();
+                commitLatency.record(end - entry.submittedAt);
+            } else {
+                failed.increment();
+                batchFailures++;
+            }
+            entry.complete(errors[i]);
+        }
+        if (batchFailures > 0 && batchFailures < batch.size()) {
+            System.out.println("[WARNING] " + batchFailures + " of " + batch.size() + " " + entries + " not written");
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package database;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import util.JSONArrayWriter;
+import util.JSONRowSink;
+
+/**
+ * Pre-rendered UTF-8 JSON body of one unfiltered listing (e.g. every crop), so serving it is a single buffer write.
+ *
+ * The body is rendered on a background thread and remembers the TableVersions of the tables it read, captured
+ * before rendering. get() only hands it out while none of those versions moved; otherwise it schedules a rebuild
+ * and returns null, and the caller streams from the database as before. Once a listing has been asked for,
+ * tablesChanged() schedules its rebuild right after every write, so it is usually ready again by the next read.
+ * Rebuilds are coalesced: while one is queued, further requests for it are no-ops. A failed build is not
+ * retried until one of the tables changes again.
+ *
+ * Bodies larger than the system property fms.snapshot.maxBytes (default 16MB) are not kept.
+ */
+public class ListingSnapshot {
+    private static final long MAX_BYTES = Long.parseLong(System.getProperty("fms.snapshot.maxBytes", "16777216"));
+
+    // One builder for every listing, rebuilds are rare and each one holds a pooled connection
+    private static final ExecutorService builder = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "listing-snapshot-builder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Streams every row of the listing to sink, throwing if it could not be read completely
+     */
+    @FunctionalInterface
+    public interface Renderer {
+        void render(JSONRowSink sink) throws SQLException, IOException;
+    }
+
+    private final String name;
+    private final TableVersions versions;
+    private final Renderer renderer;
+    private final List<Table> dependsOn;
+
+    private volatile Body body = null;
+    // Versions the last failed build saw, so get() doesn't retry it on every request
+    private volatile long[] failedAt = null;
+    private volatile boolean requested = false;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile long lastBuildMillis = 0;
+
+    public ListingSnapshot(String name, TableVersions versions, Renderer renderer, Table... dependsOn) {
+        this.name = name;
+        this.versions = versions;
+        this.renderer = renderer;
+        this.dependsOn = Arrays.asList(dependsOn);
+    }
+
+    /**
+     * @return the rendered JSON array, or null if it is missing or out of date (a rebuild is then scheduled)
+     */
+    public byte[] get() {
+        requested = true;
+        Body current = body;
+        long[] now = currentVersions();
+        if (current != null && Arrays.equals(current.seen, now)) {
+            hits.increment();
+            return current.bytes;
+        }
+        misses.increment();
+        if (!Arrays.equals(failedAt, now)) {
+            schedule();
+        }
+        return null;
+    }
+
+    /**
+     * Call after the versions of tables were bumped, rebuilds the body if it read one of them
+     */
+    public void tablesChanged(Table... tables) {
+        if (!requested) {
+            return;
+        }
+        for (Table table : tables) {
+            if (dependsOn.contains(table)) {
+                schedule();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return { ready, bytes, hits, misses, builds, failures, lastBuildMillis }
+     */
+    public JSONObject getStats() {
+        Body current = body;
+        JSONObject json = new JSONObject();
+        json.put("ready", current != null && Arrays.equals(current.seen, currentVersions()));
+        json.put("bytes", current == null ? 0 : current.bytes.length);
+        json.put("hits", hits.sum());
+        json.put("misses", misses.sum());
+        json.put("builds", builds.sum());
+        json.put("failures", failures.sum());
+        json.put("lastBuildMillis", lastBuildMillis);
+        return json;
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            builder.execute(this::build);
+        }
+    }
+
+    private void build() {
+        // Cleared first, so a write landing while we render queues another build
+        scheduled.set(false);
+        long[] seen = currentVersions();
+        long start = System.currentTimeMillis();
+
+        BoundedBuffer buffer = new BoundedBuffer();
+        try {
+            Writer writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+            try (JSONArrayWriter out = new JSONArrayWriter(writer)) {
+                renderer.render(out);
+            }
+        } catch (SQLException | IOException | JSONException e) {
+            // JSONException wraps IOExceptions thrown while a row is written
+            failures.increment();
+            body = null;
+            failedAt = seen;
+            System.out.println("[WARNING] " + name + " snapshot not rebuilt: " + e.getMessage());
+            return;
+        }
+
+        // Kept even if a write raced with the render, get() compares versions and a rebuild is already queued
+        body = new Body(buffer.toByteArray(), seen);
+        failedAt = null;
+        builds.increment();
+        lastBuildMillis = System.currentTimeMillis() - start;
+    }
+
+    private long[] currentVersions() {
+        long[] current = new long[dependsOn.size()];
+        for (int i = 0; i < current.length; i++) {
+            current[i] = versions.get(dependsOn.get(i));
+        }
+        return current;
+    }
+
+    private static class Body {
+        private final byte[] bytes;
+        private final long[] seen;
+
+        Body(byte[] bytes, long[] seen) {
+            this.bytes = bytes;
+            this.seen = seen;
+        }
+    }
+
+    /**
+     * Gives up with an IOException once MAX_BYTES is exceeded, so an oversized listing is never fully buffered
+     */
+    private static class BoundedBuffer extends OutputStream {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureRoom(1);
+            bytes.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureRoom(len);
+            bytes.write(b, off, len);
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+
+        private void ensureRoom(int len) throws IOException {
+            if (bytes.size() + (long) len > MAX_BYTES) {
+                throw new IOException("listing exceeds fms.snapshot.maxBytes (" + MAX_BYTES + ")");
+            }
+        }
+    }
+}
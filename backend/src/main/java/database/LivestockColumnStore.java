@@ -0,0 +1,592 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.json.JSONObject;
+
+import model.enums.AnimalType;
+import model.enums.CropType;
+import model.filters.LivestockFilterModel;
+import model.filters.PageRequest;
+import model.models.livestock.LivestockModel;
+import util.PrintablePreparedStatement;
+
+/**
+ * Optional in-process copy of the livestock wide row
+ * (tagID, animalType, age, diet, weight, lastFed, harvestable, lastViolatedForHarvestedGoods)
+ * held as primitive column arrays sorted by tagID: enums as byte ordinals, dates as epoch days, so
+ * getFilteredLivestock can be answered with a few tight loops instead of a database round trip.
+ * Enabled with the system property fms.livestock.columnar (default false).
+ *
+ * animalType, diet and harvestable also have an EnumBitmapIndex each. filter() narrows the tagID range with
+ * binary searches, ANDs the bitmaps of the enum values filtered on, walks the set bits in that range to fill a
+ * selection vector of row indexes, runs each remaining predicate as one pass compacting it, and only builds
+ * LivestockModels for the rows it returns. countByAnimalType() answers the per-type counts from popcounts.
+ *
+ * The handler applies every committed LIVESTOCK_4 write with put()/remove()/setLastFed()/setLastViolated(),
+ * each call counting as one bump of the LIVESTOCK_4 version. The store is only used while the writes it applied
+ * add up to the current version, anything else (a login, a load racing with a write, a row it couldn't
+ * resolve) makes filter() return null and the caller reloads or falls back to SQL. LIVESTOCK_1/LIVESTOCK_3
+ * rows are never changed once inserted, so the diet and harvestable resolved at load time stay valid.
+ */
+public class LivestockColumnStore {
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("fms.livestock.columnar", "false"));
+    private static final String LOAD_QUERY =
+            " SELECT tagID, animalType, age, weight, lastFed, lastViolatedForHarvestedGoods " +
+            " FROM LIVESTOCK_4 ORDER BY tagID ";
+
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int NOT_LOADED = -1;
+    private static final AnimalType[] ANIMAL_TYPES = AnimalType.values();
+    private static final CropType[] CROP_TYPES = CropType.values();
+
+    private final TableVersions versions;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock
+    private Columns columns = null;
+    // The LIVESTOCK_4 version the columns reflect, guarded by lock
+    private long seen = NOT_LOADED;
+    // LIVESTOCK_4 rows left out because they have no dimension rows (NULL age or weight), guarded by lock.
+    // Only an upper bound once one of them may have been deleted, counts are only exact while it is 0.
+    private int unresolved = 0;
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder writesApplied = new LongAdder();
+    private volatile long lastLoadMillis = 0;
+
+    public LivestockColumnStore(TableVersions versions) {
+        this.versions = versions;
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * @return true if the columns reflect every committed LIVESTOCK_4 write
+     */
+    public boolean isFresh() {
+        lock.readLock().lock();
+        try {
+            return columns != null && seen == versions.get(Table.LIVESTOCK_4);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads LIVESTOCK_4 through connection, resolving diet and harvestable from dimensions, and installs the
+     * result unless LIVESTOCK_4 was written meanwhile
+     */
+    public void load(Connection connection, LivestockDimensionCache.Snapshot dimensions) throws SQLException {
+        long loadVersion = versions.get(Table.LIVESTOCK_4);
+        long start = System.currentTimeMillis();
+
+        Columns loaded = new Columns();
+        int loadedUnresolved = 0;
+        PrintablePreparedStatement ps =
+                new PrintablePreparedStatement(connection.prepareStatement(LOAD_QUERY), LOAD_QUERY, false);
+        ps.setFetchSize(500);
+        ResultSet rs = ps.executeQuery();
+        while (rs.next()) {
+            LivestockModel row = DatabaseConnectionHandler.resolveLivestock(rs, dimensions);
+            if (row != null) {
+                loaded.insertAt(loaded.size, row);
+            } else {
+                loadedUnresolved++;
+            }
+        }
+        rs.close();
+        ps.close();
+        loads.increment();
+
+        lock.writeLock().lock();
+        try {
+            if (versions.get(Table.LIVESTOCK_4) == loadVersion) {
+                columns = loaded;
+                seen = loadVersion;
+                unresolved = loadedUnresolved;
+                lastLoadMillis = System.currentTimeMillis() - start;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            columns = null;
+            seen = NOT_LOADED;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies an inserted LIVESTOCK_4 row, resolving its diet and harvestable from dimensions (as the join would)
+     */
+    public void put(LivestockModel model, LivestockDimensionCache.Snapshot dimensions) {
+        putAll(Collections.singletonList(model), dimensions);
+    }
+
+    /**
+     * Applies the LIVESTOCK_4 rows inserted by one commit, see put()
+     */
+    public void putAll(List<LivestockModel> models, LivestockDimensionCache.Snapshot dimensions) {
+        lock.writeLock().lock();
+        try {
+            if (columns == null) {
+                return;
+            }
+            applied();
+            for (LivestockModel model : models) {
+                if (!insert(model, dimensions)) {
+                    return;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Guarded by the write lock
+     *
+     * @return false if the row couldn't be resolved and the columns were dropped
+     */
+    private boolean insert(LivestockModel model, LivestockDimensionCache.Snapshot dimensions) {
+        int index = columns.indexOf(model.getTagID());
+        if (index >= 0) {
+            columns.removeAt(index);
+            index = columns.indexOf(model.getTagID());
+        }
+        // A NULL age or weight has no dimension rows, the wide row query drops it
+        if (model.getAge() == -1 || model.getWeight() == -1) {
+            unresolved++;
+            return true;
+        }
+        CropType diet = dimensions == null ? null : dimensions.getDiet(model.getAnimalType(), model.getWeight());
+        int harvestable = dimensions == null
+                ? LivestockDimensionCache.Snapshot.MISSING
+                : dimensions.getHarvestable(model.getAnimalType(), model.getAge());
+        if (diet == null || harvestable == LivestockDimensionCache.Snapshot.MISSING) {
+            // The dimension rows exist (foreign keys) but aren't cached yet, reload rather than guess
+            columns = null;
+            seen = NOT_LOADED;
+            return false;
+        }
+        columns.insertAt(-index - 1, new LivestockModel(model.getTagID(), model.getAnimalType(), model.getAge(),
+                diet, model.getWeight(), model.getLastFed(), harvestable == 1,
+                model.getLastViolatedForHarvestedGoods()));
+        return true;
+    }
+
+    /**
+     * Applies a deleted LIVESTOCK_4 row
+     */
+    public void remove(int tagID) {
+        lock.writeLock().lock();
+        try {
+            if (columns == null) {
+                return;
+            }
+            applied();
+            int index = columns.indexOf(tagID);
+            if (index >= 0) {
+                columns.removeAt(index);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies a FEED update of tagID
+     */
+    public void setLastFed(int tagID, Date lastFed) {
+        setLastFed(Collections.singletonList(tagID), lastFed);
+    }
+
+    /**
+     * Applies a FEED update of every tagID in tagIDs, committed as one write
+     */
+    public void setLastFed(Collection<Integer> tagIDs, Date lastFed) {
+        setDates(tagIDs, lastFed, true);
+    }
+
+    /**
+     * Applies a HARVEST update of tagID
+     */
+    public void setLastViolated(int tagID, Date lastViolated) {
+        setLastViolated(Collections.singletonList(tagID), lastViolated);
+    }
+
+    /**
+     * Applies a HARVEST update of every tagID in tagIDs, committed as one write
+     */
+    public void setLastViolated(Collection<Integer> tagIDs, Date lastViolated) {
+        setDates(tagIDs, lastViolated, false);
+    }
+
+    private void setDates(Collection<Integer> tagIDs, Date date, boolean fed) {
+        lock.writeLock().lock();
+        try {
+            if (columns == null) {
+                return;
+            }
+            applied();
+            int[] column = fed ? columns.lastFed : columns.lastViolated;
+            int epochDay = epochDayOf(date);
+            for (int tagID : tagIDs) {
+                int index = columns.indexOf(tagID);
+                if (index >= 0) {
+                    column[index] = epochDay;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Evaluates filter over the columns, in tagID order
+     *
+     * @param nurtured the sorted tagIDs passing the minWaterSpent/minFoodSpent filter, or null if not filtered on
+     * @return the matching rows (one page of them if page is given), or null if the store isn't fresh
+     */
+    public Result filter(LivestockFilterModel filter, PageRequest page, int[] nurtured) {
+        lock.readLock().lock();
+        try {
+            if (columns == null || seen != versions.get(Table.LIVESTOCK_4)) {
+                stale.increment();
+                return null;
+            }
+            hits.increment();
+            Columns c = columns;
+
+            int[] tagBounds = filter.getTagIDBounds();
+            int minTagID = tagBounds[0];
+            if (page != null && page.getAfterTagID() != Integer.MIN_VALUE) {
+                if (page.getAfterTagID() == Integer.MAX_VALUE) {
+                    return new Result(new ArrayList<>(), false);
+                }
+                minTagID = Math.max(minTagID, page.getAfterTagID() + 1);
+            }
+            int from = c.lowerBound(minTagID);
+            int to = c.lowerBound(tagBounds[1]);
+            if (to < c.size && c.tagIDs[to] == tagBounds[1]) {
+                to++;
+            }
+
+            // Rows having every enum value filtered on, or null if none is
+            long[] mask = null;
+            if (filter.getAnimalType() != AnimalType.ALL) {
+                mask = and(mask, c.byAnimalType.get(filter.getAnimalType().ordinal()), c.byAnimalType.wordCount());
+            }
+            if (filter.getDiet() != CropType.ALL) {
+                mask = and(mask, c.byDiet.get(filter.getDiet().ordinal()), c.byDiet.wordCount());
+            }
+            if (filter.isHarvestable().equals("true")) {
+                mask = and(mask, c.byHarvestable.get(1), c.byHarvestable.wordCount());
+            } else if (filter.isHarvestable().equals("false")) {
+                mask = and(mask, c.byHarvestable.get(0), c.byHarvestable.wordCount());
+            }
+
+            // The first pass fills the selection vector, every later one compacts it in place
+            int[] selection = new int[Math.max(0, to - from)];
+            int n = mask == null ? selectRange(selection, from, to) : selectBits(selection, mask, from, to);
+
+            int[] ageBounds = filter.getAgeBounds();
+            int minAge = ageBounds[0];
+            int maxAge = ageBounds[1];
+            int[] ages = c.ages;
+            int kept = 0;
+            for (int i = 0; i < n; i++) {
+                int row = selection[i];
+                int age = ages[row];
+                if (age >= minAge && age <= maxAge) {
+                    selection[kept++] = row;
+                }
+            }
+            n = kept;
+
+            if (nurtured != null) {
+                n = keepTagIDsIn(selection, n, c.tagIDs, nurtured);
+            }
+
+            int limit = page == null ? n : Math.min(n, page.getLimit());
+            List<LivestockModel> rows = new ArrayList<>(limit);
+            for (int i = 0; i < limit; i++) {
+                rows.add(c.toModel(selection[i]));
+            }
+            return new Result(rows, limit < n);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the rows per AnimalType, as SELECT animalType, COUNT(DISTINCT tagID) ... GROUP BY animalType would
+     *
+     * @param maxAgeExclusive only count rows with age < maxAgeExclusive, or null to count every row
+     * @return the counts indexed by AnimalType ordinal, or null if the store isn't fresh or doesn't hold every row
+     */
+    public int[] countByAnimalType(Integer maxAgeExclusive) {
+        lock.readLock().lock();
+        try {
+            if (columns == null || seen != versions.get(Table.LIVESTOCK_4) || unresolved > 0) {
+                stale.increment();
+                return null;
+            }
+            hits.increment();
+            Columns c = columns;
+
+            int[] counts = new int[ANIMAL_TYPES.length];
+            for (int type = 0; type < ANIMAL_TYPES.length; type++) {
+                if (maxAgeExclusive == null) {
+                    counts[type] = c.byAnimalType.count(type);
+                    continue;
+                }
+                int maxAge = maxAgeExclusive;
+                long[] bitmap = c.byAnimalType.get(type);
+                for (int w = 0, words = c.byAnimalType.wordCount(); w < words; w++) {
+                    long bits = bitmap[w];
+                    while (bits != 0) {
+                        int row = (w << 6) + Long.numberOfTrailingZeros(bits);
+                        bits &= bits - 1;
+                        if (c.ages[row] < maxAge) {
+                            counts[type]++;
+                        }
+                    }
+                }
+            }
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return { enabled, loaded, fresh, rows, unresolved, loads, hits, stale, writesApplied, lastLoadMillis }
+     */
+    public JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        lock.readLock().lock();
+        try {
+            json.put("loaded", columns != null);
+            json.put("fresh", columns != null && seen == versions.get(Table.LIVESTOCK_4));
+            json.put("rows", columns == null ? 0 : columns.size);
+            json.put("unresolved", unresolved);
+        } finally {
+            lock.readLock().unlock();
+        }
+        json.put("enabled", ENABLED);
+        json.put("loads", loads.sum());
+        json.put("hits", hits.sum());
+        json.put("stale", stale.sum());
+        json.put("writesApplied", writesApplied.sum());
+        json.put("lastLoadMillis", lastLoadMillis);
+        return json;
+    }
+
+    // Call with the write lock held, once per LIVESTOCK_4 version bump
+    private void applied() {
+        seen++;
+        writesApplied.increment();
+    }
+
+    // Copies mask into a new array on first use, the index bitmaps themselves are never modified
+    private static long[] and(long[] mask, long[] bitmap, int words) {
+        if (mask == null) {
+            return Arrays.copyOf(bitmap, words);
+        }
+        EnumBitmapIndex.and(mask, bitmap, words);
+        return mask;
+    }
+
+    private static int selectRange(int[] selection, int from, int to) {
+        int n = 0;
+        for (int i = from; i < to; i++) {
+            selection[n++] = i;
+        }
+        return n;
+    }
+
+    // Appends the set bits of mask in [from, to), skipping a whole word of non-matching rows at a time
+    static int selectBits(int[] selection, long[] mask, int from, int to) {
+        int n = 0;
+        if (from >= to) {
+            return n;
+        }
+        int lastWord = (to - 1) >>> 6;
+        for (int w = from >>> 6; w <= lastWord; w++) {
+            long bits = mask[w];
+            if (w == from >>> 6) {
+                bits &= -1L << from;
+            }
+            if (w == lastWord) {
+                bits &= -1L >>> (63 - ((to - 1) & 63));
+            }
+            while (bits != 0) {
+                selection[n++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        return n;
+    }
+
+    // Both the selected tagIDs and allowed are ascending, so this is a single merge
+    private static int keepTagIDsIn(int[] selection, int n, int[] tagIDs, int[] allowed) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < n && j < allowed.length; i++) {
+            int row = selection[i];
+            int tagID = tagIDs[row];
+            while (j < allowed.length && allowed[j] < tagID) {
+                j++;
+            }
+            if (j < allowed.length && allowed[j] == tagID) {
+                selection[kept++] = row;
+            }
+        }
+        return kept;
+    }
+
+    private static int epochDayOf(Date date) {
+        return date == null ? NO_DATE : (int) date.toLocalDate().toEpochDay();
+    }
+
+    private static Date dateOf(int epochDay) {
+        return epochDay == NO_DATE ? null : Date.valueOf(LocalDate.ofEpochDay(epochDay));
+    }
+
+    /**
+     * The rows filter() selected, and whether more rows matched after the last one
+     */
+    public static class Result {
+        private final List<LivestockModel> rows;
+        private final boolean more;
+
+        Result(List<LivestockModel> rows, boolean more) {
+            this.rows = rows;
+            this.more = more;
+        }
+
+        public List<LivestockModel> getRows() {
+            return rows;
+        }
+
+        public boolean hasMore() {
+            return more;
+        }
+    }
+
+    /**
+     * Parallel column arrays, rows [0, size) sorted by tagID
+     */
+    private static class Columns {
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private int size = 0;
+        private int[] tagIDs = new int[INITIAL_CAPACITY];
+        private byte[] animalTypes = new byte[INITIAL_CAPACITY];
+        private int[] ages = new int[INITIAL_CAPACITY];
+        private byte[] diets = new byte[INITIAL_CAPACITY];
+        private double[] weights = new double[INITIAL_CAPACITY];
+        private int[] lastFed = new int[INITIAL_CAPACITY];
+        private byte[] harvestable = new byte[INITIAL_CAPACITY];
+        private int[] lastViolated = new int[INITIAL_CAPACITY];
+        private final EnumBitmapIndex byAnimalType = new EnumBitmapIndex(ANIMAL_TYPES.length);
+        private final EnumBitmapIndex byDiet = new EnumBitmapIndex(CROP_TYPES.length);
+        private final EnumBitmapIndex byHarvestable = new EnumBitmapIndex(2);
+
+        int indexOf(int tagID) {
+            return Arrays.binarySearch(tagIDs, 0, size, tagID);
+        }
+
+        // The first row whose tagID is >= tagID
+        int lowerBound(int tagID) {
+            int index = indexOf(tagID);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        void insertAt(int index, LivestockModel row) {
+            if (size == tagIDs.length) {
+                grow();
+            }
+            int tail = size - index;
+            if (tail > 0) {
+                System.arraycopy(tagIDs, index, tagIDs, index + 1, tail);
+                System.arraycopy(animalTypes, index, animalTypes, index + 1, tail);
+                System.arraycopy(ages, index, ages, index + 1, tail);
+                System.arraycopy(diets, index, diets, index + 1, tail);
+                System.arraycopy(weights, index, weights, index + 1, tail);
+                System.arraycopy(lastFed, index, lastFed, index + 1, tail);
+                System.arraycopy(harvestable, index, harvestable, index + 1, tail);
+                System.arraycopy(lastViolated, index, lastViolated, index + 1, tail);
+            }
+            tagIDs[index] = row.getTagID();
+            animalTypes[index] = (byte) row.getAnimalType().ordinal();
+            ages[index] = row.getAge();
+            diets[index] = (byte) row.getDiet().ordinal();
+            weights[index] = row.getWeight();
+            lastFed[index] = epochDayOf(row.getLastFed());
+            harvestable[index] = (byte) (row.isHarvestable() ? 1 : 0);
+            lastViolated[index] = epochDayOf(row.getLastViolatedForHarvestedGoods());
+            byAnimalType.insert(index, animalTypes[index]);
+            byDiet.insert(index, diets[index]);
+            byHarvestable.insert(index, harvestable[index]);
+            size++;
+        }
+
+        void removeAt(int index) {
+            int tail = size - index - 1;
+            if (tail > 0) {
+                System.arraycopy(tagIDs, index + 1, tagIDs, index, tail);
+                System.arraycopy(animalTypes, index + 1, animalTypes, index, tail);
+                System.arraycopy(ages, index + 1, ages, index, tail);
+                System.arraycopy(diets, index + 1, diets, index, tail);
+                System.arraycopy(weights, index + 1, weights, index, tail);
+                System.arraycopy(lastFed, index + 1, lastFed, index, tail);
+                System.arraycopy(harvestable, index + 1, harvestable, index, tail);
+                System.arraycopy(lastViolated, index + 1, lastViolated, index, tail);
+            }
+            byAnimalType.remove(index);
+            byDiet.remove(index);
+            byHarvestable.remove(index);
+            size--;
+        }
+
+        LivestockModel toModel(int index) {
+            return new LivestockModel(tagIDs[index], ANIMAL_TYPES[animalTypes[index]], ages[index],
+                    CROP_TYPES[diets[index]], weights[index], dateOf(lastFed[index]),
+                    harvestable[index] == 1, dateOf(lastViolated[index]));
+        }
+
+        private void grow() {
+            int capacity = tagIDs.length * 2;
+            tagIDs = Arrays.copyOf(tagIDs, capacity);
+            animalTypes = Arrays.copyOf(animalTypes, capacity);
+            ages = Arrays.copyOf(ages, capacity);
+            diets = Arrays.copyOf(diets, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+            lastFed = Arrays.copyOf(lastFed, capacity);
+            harvestable = Arrays.copyOf(harvestable, capacity);
+            lastViolated = Arrays.copyOf(lastViolated, capacity);
+        }
+    }
+}
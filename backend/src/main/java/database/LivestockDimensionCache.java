@@ -0,0 +1,216 @@
+package database;
+
+import model.enums.AnimalType;
+import model.enums.CropType;
+import util.PrintablePreparedStatement;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+/**
+ * In-process copy of the two livestock lookup tables:
+ * - LIVESTOCK_1 (animalType, weight) -> diet
+ * - LIVESTOCK_3 (animalType, age) -> harvestable
+ *
+ * so livestock reads only touch LIVESTOCK_4 and resolve diet/harvestable in the application instead of joining.
+ * Both tables are tiny and only grow through insertLivestock_1/_3, which invalidate this cache when they add a key
+ * it doesn't hold yet. The next read reloads both tables in one go.
+ *
+ * A loaded Snapshot is immutable: per animal type, sorted primitive key arrays (weights as double, ages as int)
+ * with the looked up values alongside, searched with a binary search. A load that raced with an invalidation
+ * is returned to its caller but not installed, so a stale copy is never kept.
+ */
+public class LivestockDimensionCache {
+    private static final String LIVESTOCK_1_QUERY = "SELECT animalType, weight, diet FROM LIVESTOCK_1";
+    private static final String LIVESTOCK_3_QUERY = "SELECT animalType, age, harvestable FROM LIVESTOCK_3";
+
+    private volatile Snapshot snapshot = null;
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private volatile long lastLoadMillis = 0;
+
+    /**
+     * @return the loaded snapshot, or null if it has to be (re)loaded with load()
+     */
+    public Snapshot get() {
+        return snapshot;
+    }
+
+    /**
+     * Reads both lookup tables through connection and installs the result, unless invalidate() was called meanwhile
+     */
+    public Snapshot load(Connection connection) throws SQLException {
+        long loadGeneration = generation.get();
+        long start = System.currentTimeMillis();
+
+        List<Object[]> weightRows = new ArrayList<>();
+        PrintablePreparedStatement ps =
+                new PrintablePreparedStatement(connection.prepareStatement(LIVESTOCK_1_QUERY), LIVESTOCK_1_QUERY, false);
+        ResultSet rs = ps.executeQuery();
+        while (rs.next()) {
+            AnimalType animalType = animalTypeOf(rs.getString("animalType"));
+            double weight = rs.getDouble("weight");
+            if (animalType == null || rs.wasNull() || rs.getString("diet") == null) {
+                continue;
+            }
+            weightRows.add(new Object[]{animalType, weight, CropType.valueOf(rs.getString("diet").toUpperCase())});
+        }
+        rs.close();
+        ps.close();
+
+        List<Object[]> ageRows = new ArrayList<>();
+        ps = new PrintablePreparedStatement(connection.prepareStatement(LIVESTOCK_3_QUERY), LIVESTOCK_3_QUERY, false);
+        rs = ps.executeQuery();
+        while (rs.next()) {
+            AnimalType animalType = animalTypeOf(rs.getString("animalType"));
+            int age = rs.getInt("age");
+            if (animalType == null || rs.wasNull()) {
+                continue;
+            }
+            ageRows.add(new Object[]{animalType, age, rs.getInt("harvestable") != 0});
+        }
+        rs.close();
+        ps.close();
+
+        Snapshot loaded = new Snapshot(weightRows, ageRows);
+        loads.increment();
+        synchronized (this) {
+            if (generation.get() == loadGeneration) {
+                snapshot = loaded;
+                lastLoadMillis = System.currentTimeMillis() - start;
+            }
+        }
+        return loaded;
+    }
+
+    public void invalidate() {
+        synchronized (this) {
+            generation.incrementAndGet();
+            snapshot = null;
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * @return true if the loaded snapshot already has a LIVESTOCK_1 row for (animalType, weight)
+     */
+    public boolean containsWeight(AnimalType animalType, double weight) {
+        Snapshot current = snapshot;
+        return current != null && current.getDiet(animalType, weight) != null;
+    }
+
+    /**
+     * @return true if the loaded snapshot already has a LIVESTOCK_3 row for (animalType, age)
+     */
+    public boolean containsAge(AnimalType animalType, int age) {
+        Snapshot current = snapshot;
+        return current != null && current.getHarvestable(animalType, age) != Snapshot.MISSING;
+    }
+
+    /**
+     * @return { loaded, weights, ages, loads, invalidations, lastLoadMillis }
+     */
+    public JSONObject getStats() {
+        Snapshot current = snapshot;
+        JSONObject json = new JSONObject();
+        json.put("loaded", current != null);
+        json.put("weights", current == null ? 0 : current.weightCount);
+        json.put("ages", current == null ? 0 : current.ageCount);
+        json.put("loads", loads.sum());
+        json.put("invalidations", invalidations.sum());
+        json.put("lastLoadMillis", lastLoadMillis);
+        return json;
+    }
+
+    private static AnimalType animalTypeOf(String value) {
+        return value == null ? null : AnimalType.valueOf(value.toUpperCase());
+    }
+
+    /**
+     * An immutable copy of LIVESTOCK_1 and LIVESTOCK_3, indexed by AnimalType ordinal
+     */
+    public static final class Snapshot {
+        public static final int MISSING = -1;
+
+        private final double[][] weights;
+        private final CropType[][] diets;
+        private final int[][] ages;
+        private final boolean[][] harvestable;
+        private final int weightCount;
+        private final int ageCount;
+
+        private Snapshot(List<Object[]> weightRows, List<Object[]> ageRows) {
+            int types = AnimalType.values().length;
+            weights = new double[types][];
+            diets = new CropType[types][];
+            ages = new int[types][];
+            harvestable = new boolean[types][];
+            weightCount = weightRows.size();
+            ageCount = ageRows.size();
+
+            weightRows.sort(Comparator.comparingDouble(row -> (Double) row[1]));
+            ageRows.sort(Comparator.comparingInt(row -> (Integer) row[1]));
+
+            for (AnimalType animalType : AnimalType.values()) {
+                int type = animalType.ordinal();
+
+                List<Object[]> typeWeights = rowsOf(weightRows, animalType);
+                weights[type] = new double[typeWeights.size()];
+                diets[type] = new CropType[typeWeights.size()];
+                for (int i = 0; i < typeWeights.size(); i++) {
+                    weights[type][i] = (Double) typeWeights.get(i)[1];
+                    diets[type][i] = (CropType) typeWeights.get(i)[2];
+                }
+
+                List<Object[]> typeAges = rowsOf(ageRows, animalType);
+                ages[type] = new int[typeAges.size()];
+                harvestable[type] = new boolean[typeAges.size()];
+                for (int i = 0; i < typeAges.size(); i++) {
+                    ages[type][i] = (Integer) typeAges.get(i)[1];
+                    harvestable[type][i] = (Boolean) typeAges.get(i)[2];
+                }
+            }
+        }
+
+        /**
+         * @return the LIVESTOCK_1 diet of (animalType, weight), or null if there is no such row
+         */
+        public CropType getDiet(AnimalType animalType, double weight) {
+            int type = animalType.ordinal();
+            int index = Arrays.binarySearch(weights[type], weight);
+            return index < 0 ? null : diets[type][index];
+        }
+
+        /**
+         * @return 1 or 0 for the LIVESTOCK_3 harvestable flag of (animalType, age), or MISSING if there is no such row
+         */
+        public int getHarvestable(AnimalType animalType, int age) {
+            int type = animalType.ordinal();
+            int index = Arrays.binarySearch(ages[type], age);
+            if (index < 0) {
+                return MISSING;
+            }
+            return harvestable[type][index] ? 1 : 0;
+        }
+
+        private static List<Object[]> rowsOf(List<Object[]> rows, AnimalType animalType) {
+            List<Object[]> matching = new ArrayList<>();
+            for (Object[] row : rows) {
+                if (row[0] == animalType) {
+                    matching.add(row);
+                }
+            }
+            return matching;
+        }
+    }
+}
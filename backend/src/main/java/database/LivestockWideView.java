@@ -0,0 +1,224 @@
+package database;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+import util.PrintablePreparedStatement;
+
+/**
+ * Tracks whether the LIVESTOCK_WIDE materialized view (see livestockWideView.sql) can be read instead of
+ * LIVESTOCK_4 plus the dimension lookups. Selected with the system property fms.livestock.wideView:
+ * - off (default): never read
+ * - commit: the view is created REFRESH FAST ON COMMIT, so it is current as soon as a write commits. It is
+ *   used once USER_MVIEWS reports it FRESH (checked in the background after each login).
+ * - demand: the view is created REFRESH ON DEMAND. After every write to LIVESTOCK_1/3/4 a background refresh
+ *   (DBMS_MVIEW.REFRESH, fast if possible) is queued, and the view is only read while the TableVersions it was
+ *   last refreshed at are still current.
+ *
+ * Whenever isFresh() is false, or reading the view fails, the handler uses its usual path instead.
+ * Refreshes and status checks run on one daemon thread, coalesced like ListingSnapshot's rebuilds, and a
+ * failed one is not retried until one of the tables changes again.
+ */
+public class LivestockWideView {
+    public static final String VIEW = "LIVESTOCK_WIDE";
+
+    public enum Mode { OFF, COMMIT, DEMAND }
+
+    private static final Mode MODE = parseMode(System.getProperty("fms.livestock.wideView", "off"));
+    private static final String STATUS_QUERY = "SELECT refresh_mode, staleness FROM user_mviews WHERE mview_name = ?";
+    // '?' is FORCE: a fast refresh when the view logs allow it, otherwise a complete one
+    private static final String REFRESH_CALL = "{call DBMS_MVIEW.REFRESH('" + VIEW + "', '?')}";
+    private static final List<Table> DEPENDS_ON = Arrays.asList(Table.LIVESTOCK_4, Table.LIVESTOCK_1, Table.LIVESTOCK_3);
+
+    private static final ExecutorService refresher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "livestock-wide-view-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Borrows a connection for a refresh or status check, it is closed (returned) afterwards
+     */
+    @FunctionalInterface
+    public interface ConnectionSource {
+        Connection getConnection() throws SQLException;
+    }
+
+    private final TableVersions versions;
+    private final ConnectionSource connections;
+
+    // Versions the view is known to reflect, null while unknown or unusable
+    private volatile long[] refreshedAt = null;
+    // Versions the last failed refresh/check saw, so isFresh() doesn't retry it on every read
+    private volatile long[] failedAt = null;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile long lastRefreshMillis = 0;
+
+    public LivestockWideView(TableVersions versions, ConnectionSource connections) {
+        this.versions = versions;
+        this.connections = connections;
+    }
+
+    // An unknown mode only warns, it mustn't keep the handler class from loading
+    private static Mode parseMode(String mode) {
+        try {
+            return Mode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("[WARNING] Unknown fms.livestock.wideView mode " + mode + ", using off");
+            return Mode.OFF;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return MODE != Mode.OFF;
+    }
+
+    /**
+     * @return true if the view reflects every committed livestock write and may be read. Otherwise a refresh
+     *         (or status check) is queued and the caller has to read the base tables.
+     */
+    public boolean isFresh() {
+        if (MODE == Mode.OFF) {
+            return false;
+        }
+        long[] now = currentVersions();
+        long[] refreshed = refreshedAt;
+        if (refreshed != null && (MODE == Mode.COMMIT || Arrays.equals(refreshed, now))) {
+            reads.increment();
+            return true;
+        }
+        fallbacks.increment();
+        if (!Arrays.equals(failedAt, now)) {
+            schedule();
+        }
+        return false;
+    }
+
+    /**
+     * Call after the versions of tables were bumped, queues a refresh if the view reads one of them
+     */
+    public void tablesChanged(Table... tables) {
+        if (MODE != Mode.DEMAND || refreshedAt == null) {
+            return;
+        }
+        for (Table table : tables) {
+            if (DEPENDS_ON.contains(table)) {
+                schedule();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Call when reading the view failed, it isn't used again until a refresh or status check succeeds
+     */
+    public void failed(SQLException e) {
+        failures.increment();
+        refreshedAt = null;
+        failedAt = currentVersions();
+        System.out.println("[WARNING] " + VIEW + " not readable, falling back to the base tables: " + e.getMessage());
+    }
+
+    /**
+     * Forgets what is known about the view, e.g. when switching users
+     */
+    public void invalidate() {
+        refreshedAt = null;
+        failedAt = null;
+    }
+
+    /**
+     * @return { mode, fresh, reads, fallbacks, refreshes, failures, lastRefreshMillis }
+     */
+    public JSONObject getStats() {
+        long[] refreshed = refreshedAt;
+        JSONObject json = new JSONObject();
+        json.put("mode", MODE.toString().toLowerCase());
+        json.put("fresh", refreshed != null && (MODE == Mode.COMMIT || Arrays.equals(refreshed, currentVersions())));
+        json.put("reads", reads.sum());
+        json.put("fallbacks", fallbacks.sum());
+        json.put("refreshes", refreshes.sum());
+        json.put("failures", failures.sum());
+        json.put("lastRefreshMillis", lastRefreshMillis);
+        return json;
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            refresher.execute(this::refresh);
+        }
+    }
+
+    private void refresh() {
+        // Cleared first, so a write landing while we refresh queues another one
+        scheduled.set(false);
+        long[] seen = currentVersions();
+        long start = System.currentTimeMillis();
+
+        try (Connection connection = connections.getConnection()) {
+            if (MODE == Mode.DEMAND || !"FRESH".equals(checkStatus(connection))) {
+                CallableStatement call = connection.prepareCall(REFRESH_CALL);
+                call.execute();
+                call.close();
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            failures.increment();
+            refreshedAt = null;
+            failedAt = seen;
+            System.out.println("[WARNING] " + VIEW + " not refreshed: " + e.getMessage());
+            return;
+        }
+
+        refreshedAt = seen;
+        failedAt = null;
+        refreshes.increment();
+        lastRefreshMillis = System.currentTimeMillis() - start;
+    }
+
+    /**
+     * @return the USER_MVIEWS staleness of the view (FRESH, STALE, ...)
+     * @throws SQLException if there is no such view, or in commit mode if it isn't refreshed on commit
+     */
+    private static String checkStatus(Connection connection) throws SQLException {
+        PrintablePreparedStatement ps =
+                new PrintablePreparedStatement(connection.prepareStatement(STATUS_QUERY), STATUS_QUERY, false);
+        ps.setString(1, VIEW);
+        ResultSet rs = ps.executeQuery();
+        boolean exists = rs.next();
+        String refreshMode = exists ? rs.getString("refresh_mode") : null;
+        String staleness = exists ? rs.getString("staleness") : null;
+        rs.close();
+        ps.close();
+
+        if (!exists) {
+            throw new SQLException(VIEW + " does not exist, see livestockWideView.sql");
+        }
+        if (MODE == Mode.COMMIT && !"COMMIT".equals(refreshMode)) {
+            throw new SQLException(VIEW + " is refreshed " + refreshMode + ", not on commit");
+        }
+        return staleness;
+    }
+
+    private long[] currentVersions() {
+        long[] current = new long[DEPENDS_ON.size()];
+        for (int i = 0; i < current.length; i++) {
+            current[i] = versions.get(DEPENDS_ON.get(i));
+        }
+        return current;
+    }
+}
@@ -0,0 +1,172 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+/**
+ * Time-to-live cache of the Oracle dictionary lookups behind the general projection screen:
+ * the user's tables (user_tables) and each table's columns (ALL_TAB_COLUMNS).
+ *
+ * Entries expire after the TTL (system property fms.metadata.ttlSeconds, default 300) and can be dropped
+ * explicitly with invalidate()/invalidate(table). Table names and columns are matched case-insensitively,
+ * as Oracle does for unquoted identifiers. Only successful lookups should be put here.
+ */
+public class MetadataCache {
+    private static final long DEFAULT_TTL_SECONDS = Long.parseLong(System.getProperty("fms.metadata.ttlSeconds", "300"));
+
+    private final long ttlNanos;
+    private volatile Entry userTables = null;
+    private final ConcurrentHashMap<String, Entry> tableColumns = new ConcurrentHashMap<>();
+    // Bumped by every invalidation, a lookup that started before one is not cached
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public MetadataCache() {
+        this(DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public MetadataCache(long ttl, TimeUnit unit) {
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * @return the generation to pass back to a put after a lookup
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @return the cached table names, or null if missing or expired
+     */
+    public List<String> getUserTables() {
+        return fresh(userTables);
+    }
+
+    public void putUserTables(List<String> tables, long lookupGeneration) {
+        Entry entry = new Entry(tables);
+        synchronized (this) {
+            if (generation.get() == lookupGeneration) {
+                userTables = entry;
+            }
+        }
+    }
+
+    /**
+     * @return the cached column names of tableName, or null if missing or expired
+     */
+    public List<String> getTableColumns(String tableName) {
+        return fresh(tableColumns.get(keyOf(tableName)));
+    }
+
+    public void putTableColumns(String tableName, List<String> columns, long lookupGeneration) {
+        Entry entry = new Entry(columns);
+        synchronized (this) {
+            if (generation.get() == lookupGeneration) {
+                tableColumns.put(keyOf(tableName), entry);
+            }
+        }
+    }
+
+    /**
+     * @return true if tableName is in the cached user tables, or null if they aren't cached
+     */
+    public Boolean hasTable(String tableName) {
+        Entry entry = userTables;
+        if (fresh(entry) == null) {
+            return null;
+        }
+        return entry.names.contains(keyOf(tableName));
+    }
+
+    /**
+     * @return true if every column is a cached column of tableName, or null if its columns aren't cached
+     */
+    public Boolean hasColumns(String tableName, List<String> columns) {
+        Entry entry = tableColumns.get(keyOf(tableName));
+        if (fresh(entry) == null) {
+            return null;
+        }
+        for (String column : columns) {
+            if (column == null || !entry.names.contains(keyOf(column))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drops everything, e.g. after DDL or when switching users
+     */
+    public void invalidate() {
+        synchronized (this) {
+            generation.incrementAndGet();
+            userTables = null;
+            tableColumns.clear();
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * Drops one table's columns and the table list (the table may have been created or dropped)
+     */
+    public void invalidate(String tableName) {
+        synchronized (this) {
+            generation.incrementAndGet();
+            userTables = null;
+            tableColumns.remove(keyOf(tableName));
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * @return { ttlSeconds, tables, hits, misses, invalidations }
+     */
+    public JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        json.put("ttlSeconds", TimeUnit.NANOSECONDS.toSeconds(ttlNanos));
+        json.put("tables", tableColumns.size());
+        json.put("hits", hits.sum());
+        json.put("misses", misses.sum());
+        json.put("invalidations", invalidations.sum());
+        return json;
+    }
+
+    private List<String> fresh(Entry entry) {
+        if (entry == null || System.nanoTime() - entry.loadedAt > ttlNanos) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.values;
+    }
+
+    private static String keyOf(String name) {
+        return name.toUpperCase(Locale.ROOT);
+    }
+
+    private static class Entry {
+        private final List<String> values;
+        private final Set<String> names = new HashSet<>();
+        private final long loadedAt = System.nanoTime();
+
+        Entry(List<String> values) {
+            this.values = Collections.unmodifiableList(new ArrayList<>(values));
+            for (String value : values) {
+                names.add(keyOf(value));
+            }
+        }
+    }
+}
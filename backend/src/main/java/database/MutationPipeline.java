@@ -0,0 +1,137 @@
+package database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.json.JSONObject;
+
+/**
+ * Single-writer queue for the FarmingSystem mutations (inserts, updates, deletes), enabled with the system
+ * property fms.writes.pipeline (default false). Request threads submit() a mutation and wait; the mutations are
+ * group-committed by a GroupCommitQueue configured under fms.writes (batchSize default 200, flushMillis default 5),
+ * each batch goes to the Transactor, which applies them in order in one transaction with one commit. Each caller
+ * then gets its own mutation's result.
+ *
+ * A mutation that fails on its own is rolled back alone and its caller gets its usual failure result, the others
+ * in the batch still commit. If the commit itself fails every caller in the batch gets its failure result.
+ * Callers only return once their batch has committed (or failed), so an acknowledged write is in the database.
+ * A mutation that finds the queue full for fms.writes.offerMillis fails without running, and a caller whose batch
+ * hasn't finished after WAIT_TIMEOUT_MILLIS gets its failure result (the mutation may still commit later).
+ */
+public class MutationPipeline {
+    public static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("fms.writes.pipeline", "false"));
+
+    // A caller gives up on waiting (not on the mutation) after this long
+    private static final long WAIT_TIMEOUT_MILLIS = 30 * 1000;
+
+    /**
+     * Runs mutations in order in one transaction and commits once. A mutation that throws is rolled back alone.
+     *
+     * @throws SQLException if the transaction failed and nothing was committed
+     */
+    @FunctionalInterface
+    public interface Transactor {
+        void run(List<Runnable> mutations) throws SQLException;
+    }
+
+    private final GroupCommitQueue<Pending<?>> queue;
+
+    public MutationPipeline(Transactor transactor) {
+        queue = new GroupCommitQueue<>("fms.writes", 200, 5, "mutation-pipeline", "mutations", batch -> {
+            List<Runnable> mutations = new ArrayList<>(batch.size());
+            for (Pending<?> pending : batch) {
+                mutations.add(pending::run);
+            }
+            transactor.run(mutations);
+            return new String[batch.size()];
+        });
+    }
+
+    /**
+     * Queues mutation and waits until its batch has committed, up to WAIT_TIMEOUT_MILLIS
+     *
+     * @param failed what to return if the mutation couldn't be queued, its batch failed to commit or the wait
+     *               timed out
+     * @return mutation's result once committed, otherwise failed
+     */
+    public <T> T submit(Supplier<T> mutation, T failed) {
+        if (queue.isWriter()) {
+            // Already inside a batch
+            return mutation.get();
+        }
+
+        Pending<T> pending = new Pending<>(mutation, failed);
+        if (!queue.offer(pending)) {
+            System.out.println("[WARNING] Write pipeline full, mutation not applied");
+            return failed;
+        }
+
+        // Its result is only known once the batch commits, an interrupt doesn't stop the wait
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT_TIMEOUT_MILLIS);
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return pending.done.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (TimeoutException e) {
+                    System.out.println("[WARNING] Write pipeline batch not done after " + WAIT_TIMEOUT_MILLIS
+                            + " ms, mutation reported as failed");
+                    return failed;
+                } catch (ExecutionException e) {
+                    return failed;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Stops taking mutations and waits (up to a few seconds) for the queued ones to be applied
+     */
+    public void close() {
+        queue.close();
+    }
+
+    /**
+     * @return { enabled } and the GroupCommitQueue stats
+     */
+    public JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        json.put("enabled", ENABLED);
+        return queue.putStats(json);
+    }
+
+    private static final class Pending<T> extends GroupCommitQueue.Entry {
+        private final Supplier<T> mutation;
+        private final T failed;
+        private final CompletableFuture<T> done = new CompletableFuture<>();
+        private T result;
+
+        Pending(Supplier<T> mutation, T failed) {
+            this.mutation = mutation;
+            this.failed = failed;
+            this.result = failed;
+        }
+
+        // Called on the writer thread, inside the batch's transaction. If it throws the result stays failed.
+        void run() {
+            result = mutation.get();
+        }
+
+        @Override
+        void complete(String error) {
+            done.complete(error == null ? result : failed);
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.json.JSONObject;
+
+import util.PrintablePreparedStatement;
+
+/**
+ * Running per-tagID totals of NURTURES (water spent, food spent, number of events), so the feed/water
+ * endpoints don't SUM the whole history on every request.
+ *
+ * Loaded once with a single GROUP BY and then kept up to date by the handler: add() for every nurture event
+ * it commits, remove() when a livestock (and with it, through ON DELETE CASCADE, its history) is deleted.
+ * Totals live in an open addressing int-keyed table with parallel primitive arrays, so a lookup is O(1) and
+ * a threshold scan walks a few arrays. A write that lands while a load is running makes the load discard
+ * its result, the next caller loads again.
+ */
+public class NurtureTotals {
+    private static final String LOAD_QUERY =
+            "SELECT tagID, SUM(waterSpent) AS water, SUM(foodSpent) AS food, COUNT(*) AS events " +
+            "FROM Nurtures GROUP BY tagID";
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder eventsApplied = new LongAdder();
+    private volatile boolean loaded = false;
+    // Guarded by lock
+    private Slots slots = new Slots();
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Replaces the totals with a fresh GROUP BY over NURTURES, unless a write or invalidate() happened meanwhile
+     */
+    public void load(Connection connection) throws SQLException {
+        long loadGeneration = generation.get();
+
+        Slots loadedSlots = new Slots();
+        PrintablePreparedStatement ps = new PrintablePreparedStatement(connection.prepareStatement(LOAD_QUERY), LOAD_QUERY, false);
+        ResultSet rs = ps.executeQuery();
+        while (rs.next()) {
+            loadedSlots.add(rs.getInt("tagID"), rs.getLong("water"), rs.getLong("food"), rs.getInt("events"));
+        }
+        rs.close();
+        ps.close();
+        loads.increment();
+
+        lock.writeLock().lock();
+        try {
+            if (generation.get() == loadGeneration) {
+                slots = loadedSlots;
+                loaded = true;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the totals, the next read reloads them
+     */
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            generation.incrementAndGet();
+            loaded = false;
+            slots = new Slots();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies a committed nurture event
+     */
+    public void add(int tagID, int waterSpent, int foodSpent) {
+        lock.writeLock().lock();
+        try {
+            generation.incrementAndGet();
+            // Not applied to an unloaded table, the next load reads it from NURTURES
+            if (loaded) {
+                slots.add(tagID, waterSpent, foodSpent, 1);
+                eventsApplied.increment();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forgets tagID's history, after the livestock was deleted
+     */
+    public void remove(int tagID) {
+        lock.writeLock().lock();
+        try {
+            generation.incrementAndGet();
+            slots.remove(tagID);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return { water, food, events } for tagID, or null if it has never been nurtured
+     */
+    public long[] get(int tagID) {
+        lock.readLock().lock();
+        try {
+            int slot = slots.find(tagID);
+            if (slots.tagIDs[slot] == Slots.EMPTY) {
+                return null;
+            }
+            return new long[]{slots.water[slot], slots.food[slot], slots.events[slot]};
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the sorted tagIDs with at least one event whose totals reach both minimums
+     */
+    public int[] tagIDsAtLeast(long minWater, long minFood) {
+        lock.readLock().lock();
+        try {
+            int[] matches = new int[slots.size];
+            int count = 0;
+            for (int i = 0; i < slots.tagIDs.length; i++) {
+                if (slots.tagIDs[i] != Slots.EMPTY && slots.water[i] >= minWater && slots.food[i] >= minFood) {
+                    matches[count++] = slots.tagIDs[i];
+                }
+            }
+            int[] result = Arrays.copyOf(matches, count);
+            Arrays.sort(result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return { loaded, animals, loads, eventsApplied }
+     */
+    public JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        lock.readLock().lock();
+        try {
+            json.put("loaded", loaded);
+            json.put("animals", slots.size);
+        } finally {
+            lock.readLock().unlock();
+        }
+        json.put("loads", loads.sum());
+        json.put("eventsApplied", eventsApplied.sum());
+        return json;
+    }
+
+    /**
+     * Linear probing table of tagID -> (water, food, events), kept at most half full
+     */
+    private static final class Slots {
+        private static final int EMPTY = Integer.MIN_VALUE;
+        private static final int INITIAL_CAPACITY = 64;
+
+        private int[] tagIDs;
+        private long[] water;
+        private long[] food;
+        private int[] events;
+        private int size = 0;
+
+        Slots() {
+            allocate(INITIAL_CAPACITY);
+        }
+
+        void add(int tagID, long waterSpent, long foodSpent, int eventCount) {
+            if ((size + 1) * 2 > tagIDs.length) {
+                grow();
+            }
+            int slot = find(tagID);
+            if (tagIDs[slot] == EMPTY) {
+                tagIDs[slot] = tagID;
+                size++;
+            }
+            water[slot] += waterSpent;
+            food[slot] += foodSpent;
+            events[slot] += eventCount;
+        }
+
+        void remove(int tagID) {
+            int slot = find(tagID);
+            if (tagIDs[slot] == EMPTY) {
+                return;
+            }
+            tagIDs[slot] = EMPTY;
+            water[slot] = 0;
+            food[slot] = 0;
+            events[slot] = 0;
+            size--;
+
+            // Backward shift deletion keeps every remaining key reachable from its home slot
+            int mask = tagIDs.length - 1;
+            int next = (slot + 1) & mask;
+            while (tagIDs[next] != EMPTY) {
+                int home = home(tagIDs[next], mask);
+                boolean movable = slot <= next ? (home <= slot || home > next) : (home <= slot && home > next);
+                if (movable) {
+                    move(next, slot);
+                    slot = next;
+                }
+                next = (next + 1) & mask;
+            }
+        }
+
+        /**
+         * @return the slot holding tagID, or the empty slot where it would go
+         */
+        int find(int tagID) {
+            int mask = tagIDs.length - 1;
+            int slot = home(tagID, mask);
+            while (tagIDs[slot] != EMPTY && tagIDs[slot] != tagID) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void move(int from, int to) {
+            tagIDs[to] = tagIDs[from];
+            water[to] = water[from];
+            food[to] = food[from];
+            events[to] = events[from];
+            tagIDs[from] = EMPTY;
+            water[from] = 0;
+            food[from] = 0;
+            events[from] = 0;
+        }
+
+        private void grow() {
+            int[] oldTagIDs = tagIDs;
+            long[] oldWater = water;
+            long[] oldFood = food;
+            int[] oldEvents = events;
+
+            allocate(oldTagIDs.length * 2);
+            size = 0;
+            for (int i = 0; i < oldTagIDs.length; i++) {
+                if (oldTagIDs[i] != EMPTY) {
+                    add(oldTagIDs[i], oldWater[i], oldFood[i], oldEvents[i]);
+                }
+            }
+        }
+
+        private void allocate(int capacity) {
+            tagIDs = new int[capacity];
+            Arrays.fill(tagIDs, EMPTY);
+            water = new long[capacity];
+            food = new long[capacity];
+            events = new int[capacity];
+        }
+
+        private static int home(int tagID, int mask) {
+            int hash = tagID * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+    }
+}
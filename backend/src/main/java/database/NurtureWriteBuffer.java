@@ -0,0 +1,147 @@
+package database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.json.JSONObject;
+
+import model.models.NurtureModel;
+
+/**
+ * Bounded in-memory queue of NURTURES events in front of the database, for the feeders that report one every
+ * few seconds per pen. The events are group-committed by a GroupCommitQueue configured under fms.nurtures
+ * (batchSize default 500, flushMillis default 50), each batch goes to the Flusher, which inserts it in one
+ * transaction and reports each event's outcome.
+ *
+ * Durability is chosen per event, the default with the system property fms.nurtures.durability:
+ * - ack (default): submit() returns once the event's batch has committed (or failed), so an acknowledged event
+ *   is in the database. Callers still share commits, each waits at most about one flush interval.
+ * - async: submit() returns as soon as the event is queued. Events still queued are lost if the process dies,
+ *   and an event that fails to insert (e.g. its animal was deleted meanwhile) is only logged and counted.
+ *
+ * When the queue is full submit() waits up to fms.nurtures.offerMillis for room and then rejects the event.
+ * Reads don't see an event before its batch commits.
+ */
+public class NurtureWriteBuffer {
+    public enum Durability { ACK, ASYNC }
+
+    public static final Durability DEFAULT_DURABILITY =
+            Durability.valueOf(System.getProperty("fms.nurtures.durability", "ack").toUpperCase());
+
+    // An acknowledging caller gives up on waiting (not on the event) after this long
+    private static final long ACK_TIMEOUT_MILLIS = 30 * 1000;
+
+    /**
+     * Inserts events in one transaction
+     *
+     * @return each event's error message, null where it was committed
+     * @throws SQLException if the transaction failed and nothing was committed
+     */
+    @FunctionalInterface
+    public interface Flusher {
+        String[] flush(List<NurtureModel> events) throws SQLException;
+    }
+
+    /**
+     * What became of one submitted event
+     */
+    public enum Outcome {
+        // In the database
+        COMMITTED,
+        // Queued, durability async
+        QUEUED,
+        // The queue stayed full, the event was dropped
+        REJECTED,
+        // Inserting it failed, see the error
+        FAILED,
+        // Still queued or being written when the caller stopped waiting
+        PENDING
+    }
+
+    private final GroupCommitQueue<Pending> queue;
+
+    public NurtureWriteBuffer(Flusher flusher) {
+        queue = new GroupCommitQueue<>("fms.nurtures", 500, 50, "nurture-write-buffer", "nurture events", batch -> {
+            List<NurtureModel> events = new ArrayList<>(batch.size());
+            for (Pending pending : batch) {
+                events.add(pending.event);
+            }
+            return flusher.flush(events);
+        });
+    }
+
+    /**
+     * Queues event, waiting for room if the queue is full, and with durability ack also for its commit
+     *
+     * @return { outcome, error (only when failed), queueDepth }
+     */
+    public JSONObject submit(NurtureModel event, Durability durability) {
+        JSONObject result = new JSONObject();
+        Pending pending = new Pending(event);
+        boolean queued = queue.offer(pending);
+        result.put("queueDepth", queue.depth());
+
+        if (!queued) {
+            result.put("outcome", toString(Outcome.REJECTED));
+            return result;
+        }
+        if (durability == Durability.ASYNC) {
+            result.put("outcome", toString(Outcome.QUEUED));
+            return result;
+        }
+
+        try {
+            String error = pending.done.get(ACK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            result.put("outcome", toString(error == null ? Outcome.COMMITTED : Outcome.FAILED));
+            if (error != null) {
+                result.put("error", error);
+            }
+        } catch (TimeoutException | ExecutionException e) {
+            result.put("outcome", toString(Outcome.PENDING));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.put("outcome", toString(Outcome.PENDING));
+        }
+        return result;
+    }
+
+    /**
+     * Stops taking events and waits (up to a few seconds) for the queued ones to be written
+     */
+    public void close() {
+        queue.close();
+    }
+
+    /**
+     * @return { durability } and the GroupCommitQueue stats
+     */
+    public JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        json.put("durability", DEFAULT_DURABILITY.toString().toLowerCase());
+        return queue.putStats(json);
+    }
+
+    private static String toString(Outcome outcome) {
+        return outcome.toString().toLowerCase();
+    }
+
+    private static final class Pending extends GroupCommitQueue.Entry {
+        private final NurtureModel event;
+        // Completed with the event's error message, null once it is committed
+        private final CompletableFuture<String> done = new CompletableFuture<>();
+
+        Pending(NurtureModel event) {
+            this.event = event;
+        }
+
+        @Override
+        void complete(String error) {
+            done.complete(error);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Cache of query results that only change when one of the tables they read from is written.
+ *
+ * Each entry records the tables it depends on. tablesChanged() drops exactly the entries depending on any
+ * of the given tables, so it has to be called after every committed write, after bumping their TableVersions.
+ * A lookup captures the versions of its tables in a Ticket before querying, and put() discards the result if
+ * any of them moved meanwhile, so a result computed across a write is never kept.
+ *
+ * Rows are shared between callers and must not be modified.
+ */
+public class ResultCache {
+    // Bound on entries, parameterized lookups (e.g. by age) beyond it are simply not cached
+    private static final int MAX_ENTRIES = 256;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final TableVersions versions;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public ResultCache(TableVersions versions) {
+        this.versions = versions;
+    }
+
+    /**
+     * @return a copy of the cached rows for key, or null on a miss
+     */
+    public ArrayList<JSONObject> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entry.hits.increment();
+        return new ArrayList<>(entry.rows);
+    }
+
+    /**
+     * Call before running the query that computes key
+     */
+    public Ticket begin(String key, Table... dependsOn) {
+        long[] seen = new long[dependsOn.length];
+        for (int i = 0; i < dependsOn.length; i++) {
+            seen[i] = versions.get(dependsOn[i]);
+        }
+        return new Ticket(key, dependsOn, seen);
+    }
+
+    /**
+     * Caches rows under the ticket's key, unless one of its tables changed since begin()
+     */
+    public void put(Ticket ticket, List<JSONObject> rows) {
+        if (entries.size() >= MAX_ENTRIES && !entries.containsKey(ticket.key)) {
+            return;
+        }
+
+        Entry entry = new Entry(rows, ticket.dependsOn);
+        synchronized (this) {
+            for (int i = 0; i < ticket.dependsOn.length; i++) {
+                if (versions.get(ticket.dependsOn[i]) != ticket.seen[i]) {
+                    return;
+                }
+            }
+            entries.put(ticket.key, entry);
+        }
+    }
+
+    /**
+     * Drops every entry that depends on one of tables, whose versions must already have been bumped
+     */
+    public void tablesChanged(Table... tables) {
+        synchronized (this) {
+            entries.values().removeIf(entry -> {
+                for (Table table : tables) {
+                    if (entry.dependsOn.contains(table)) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * @return { hits, misses, hitRatio, invalidations, entries: { key: { ageMillis, rows, hits, dependsOn } } }
+     */
+    public JSONObject getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long now = System.nanoTime();
+
+        JSONObject entriesJSON = new JSONObject();
+        Map<String, Entry> sorted = new TreeMap<>(entries);
+        for (Map.Entry<String, Entry> entry : sorted.entrySet()) {
+            JSONObject json = new JSONObject();
+            json.put("ageMillis", (now - entry.getValue().createdAt) / 1_000_000);
+            json.put("rows", entry.getValue().rows.size());
+            json.put("hits", entry.getValue().hits.sum());
+            json.put("dependsOn", new JSONArray(entry.getValue().dependsOn));
+            entriesJSON.put(entry.getKey(), json);
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("hits", hitCount);
+        json.put("misses", missCount);
+        json.put("hitRatio", hitCount + missCount == 0 ? 0.0 : hitCount / (double) (hitCount + missCount));
+        json.put("invalidations", invalidations.sum());
+        json.put("entries", entriesJSON);
+        return json;
+    }
+
+    /**
+     * The table versions a lookup saw before it queried
+     */
+    public static final class Ticket {
+        private final String key;
+        private final Table[] dependsOn;
+        private final long[] seen;
+
+        private Ticket(String key, Table[] dependsOn, long[] seen) {
+            this.key = key;
+            this.dependsOn = dependsOn;
+            this.seen = seen;
+        }
+    }
+
+    private static class Entry {
+        private final List<JSONObject> rows;
+        private final Set<Table> dependsOn;
+        private final long createdAt = System.nanoTime();
+        private final LongAdder hits = new LongAdder();
+
+        Entry(List<JSONObject> rows, Table[] dependsOn) {
+            this.rows = Collections.unmodifiableList(new ArrayList<>(rows));
+            this.dependsOn = dependsOn.length == 0 ? EnumSet.noneOf(Table.class) : EnumSet.copyOf(Arrays.asList(dependsOn));
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+/**
+ * An LRU cache of prepared statements for a single physical connection, keyed by SQL text.
+ *
+ * Statements handed out by prepare() are proxies: calling close() on them clears their parameters and
+ * keeps the cursor open for the next caller preparing the same SQL, so the statement is only parsed once
+ * per connection. A connection is only ever used by one thread at a time, so this class is not thread safe.
+ */
+public class StatementCache {
+    private static final String EXCEPTION_TAG = "[EXCEPTION]";
+
+    private final Connection physical;
+    private final int maxSize;
+    private final Counters counters;
+    private final LinkedHashMap<String, CachedStatement> statements;
+    private final List<PreparedStatement> uncached = new ArrayList<>();
+
+    public StatementCache(Connection physical, int maxSize, Counters counters) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.counters = counters;
+        // accessOrder = true makes iteration order least recently used first
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= StatementCache.this.maxSize) {
+                    return false;
+                }
+                counters.evictions.increment();
+                CachedStatement evicted = eldest.getValue();
+                if (evicted.evict()) {
+                    // Still open by its borrower, closed on release if the borrower doesn't close it
+                    uncached.add(evicted.statement);
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached statement for sql, preparing it on a miss. If the cached statement is still open
+     * by another caller on this connection, a one-off statement is prepared instead.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        if (maxSize <= 0) {
+            counters.misses.increment();
+            return trackUncached(physical.prepareStatement(sql));
+        }
+
+        CachedStatement cached = statements.get(sql);
+        if (cached != null && !cached.inUse) {
+            counters.hits.increment();
+            cached.inUse = true;
+            return cached.proxy;
+        }
+
+        counters.misses.increment();
+        PreparedStatement statement = physical.prepareStatement(sql);
+        if (cached != null) {
+            return trackUncached(statement);
+        }
+
+        cached = new CachedStatement(statement);
+        cached.inUse = true;
+        statements.put(sql, cached);
+        return cached.proxy;
+    }
+
+    public int size() {
+        return statements.size();
+    }
+
+    /**
+     * Called when the connection goes back to the pool: returns statements the borrower forgot to close
+     * (e.g. when an exception skipped ps.close()) and closes any one-off statements, including the ones
+     * evicted while still open.
+     */
+    public void reset() {
+        for (CachedStatement cached : statements.values()) {
+            if (cached.inUse) {
+                cached.release();
+            }
+        }
+        closeUncached();
+    }
+
+    /**
+     * Closes every statement, called right before the physical connection is closed.
+     */
+    public void close() {
+        for (CachedStatement cached : statements.values()) {
+            closeQuietly(cached.statement);
+        }
+        statements.clear();
+        closeUncached();
+    }
+
+    private PreparedStatement trackUncached(PreparedStatement statement) {
+        uncached.add(statement);
+        return statement;
+    }
+
+    private void closeUncached() {
+        for (PreparedStatement statement : uncached) {
+            closeQuietly(statement);
+        }
+        uncached.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+        }
+    }
+
+    /**
+     * Hit/miss/eviction counters shared by every cache in a pool.
+     */
+    public static class Counters {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        public JSONObject toJSON() {
+            long hitCount = hits.sum();
+            long missCount = misses.sum();
+            JSONObject json = new JSONObject();
+            json.put("hits", hitCount);
+            json.put("misses", missCount);
+            json.put("evictions", evictions.sum());
+            json.put("hitRatio", hitCount + missCount == 0 ? 0.0 : hitCount / (double) (hitCount + missCount));
+            return json;
+        }
+    }
+
+    private static class CachedStatement implements InvocationHandler {
+        private final PreparedStatement statement;
+        private final PreparedStatement proxy;
+        private boolean inUse = false;
+        private boolean evicted = false;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(), new Class<?>[] { PreparedStatement.class }, this);
+        }
+
+        /**
+         * @return true if the statement is still in use, it is then closed once its borrower closes it
+         */
+        boolean evict() {
+            evicted = true;
+            if (!inUse) {
+                closeQuietly(statement);
+            }
+            return inUse;
+        }
+
+        void release() {
+            inUse = false;
+            if (evicted) {
+                closeQuietly(statement);
+                return;
+            }
+
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+            } catch (SQLException e) {
+                System.out.println(EXCEPTION_TAG + " " + e.getMessage());
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (inUse) {
+                        release();
+                    }
+                    return null;
+                case "isClosed":
+                    return !inUse || statement.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached" + statement;
+                default:
+                    break;
+            }
+
+            if (!inUse) {
+                throw new SQLException("Statement has already been closed");
+            }
+
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package database;
+
+/**
+ * The tables DatabaseConnectionHandler reads and writes, used to track what a cached result depends on
+ * and what a mutation changed
+ */
+public enum Table {
+    CROPS,
+    LIVESTOCK_1,
+    LIVESTOCK_3,
+    LIVESTOCK_4,
+    NURTURES,
+    VETERINARYRECORDS_HAS,
+    CONTAINS,
+    CREATES,
+    TENDS,
+    FIELDS_4,
+    FARMERS_2
+}
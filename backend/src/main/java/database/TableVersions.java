@@ -0,0 +1,38 @@
+package database;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A monotonically increasing version per Table, bumped after every committed write to it.
+ *
+ * Versions start from zero on every start, so getTag() prefixes them with an id unique to this process;
+ * a tag handed out before a restart never matches one handed out after it.
+ */
+public class TableVersions {
+    private static final String INSTANCE_ID = UUID.randomUUID().toString().substring(0, 8);
+
+    private final AtomicLongArray versions = new AtomicLongArray(Table.values().length);
+
+    public long get(Table table) {
+        return versions.get(table.ordinal());
+    }
+
+    public void bump(Table... tables) {
+        for (Table table : tables) {
+            versions.incrementAndGet(table.ordinal());
+        }
+    }
+
+    /**
+     * @return an opaque tag that changes whenever any of tables is written, e.g. for an HTTP ETag
+     */
+    public String getTag(Table... tables) {
+        // Every bump adds one, so the sum moves whenever any of the versions does
+        long sum = 0;
+        for (Table table : tables) {
+            sum += get(table);
+        }
+        return INSTANCE_ID + "-" + sum;
+    }
+}
@@ -4,6 +4,8 @@ import model.enums.CropStatus;
 import model.enums.CropType;
 import model.enums.CropVariant;
 
+import java.util.Map;
+
 public class CropsFilterModel {
 
     private final CropType cropType;
@@ -21,46 +23,60 @@ public class CropsFilterModel {
         this.maxQuantity = maxQuantity;
     }
 
+    /**
+     * Builds the filter from a /crops/filteredValues request body, in the form of:
+     * { cropType, cropVariant, cropStatus, quantity: { min, max } }
+     */
+    @SuppressWarnings("unchecked")
+    public static CropsFilterModel fromRequestBody(Map<String, Object> map) {
+      // Check for if null for these values.
+      CropType cropType = CropType.valueOf(map.get("cropType").toString().toUpperCase());
+      CropVariant cropVariant = CropVariant.valueOf(map.get("cropVariant").toString().toUpperCase());
+      CropStatus cropStatus = CropStatus.valueOf(map.get("cropStatus").toString().toUpperCase());
+
+      Map<String, Object> quantity = (Map<String, Object>) map.get("quantity");
+      int minQuantity = (int) quantity.get("min");
+      int maxQuantity = (int) quantity.get("max");
+
+      return new CropsFilterModel(cropType, cropVariant, cropStatus, minQuantity, maxQuantity);
+    }
+
     /**
      *
      * @return something in the form of:
-     * " WHERE (quantity >= minQuantity) AND (quantity <= maxQuantity)
-     *      AND (cropType = cropType) AND (cropVariant = cropVariant) AND (cropStatus = cropStatus) "
+     * " WHERE quantity BETWEEN ? AND ? AND (cropType = ?) AND (cropVariant = ?) AND (cropStatus = ?) "
+     * where the enum clauses are only present when not ALL, so there are at most 8 distinct shapes.
      *
      */
-    public String getQueryString() {
-        String queryString = " WHERE ";
-
+    public FilterQuery getWhereClause() {
         // There will always be a min quantity and max quantity.
-
-
-        if (minQuantity <= -1 && maxQuantity <= -1) {
-            // no valid quantity val.
-            queryString += " quantity >= " + 0 + " ";
-        } else if (minQuantity > -1 && maxQuantity <= -1) {
-            // valid min quantity val.
-            queryString += " quantity >= " + minQuantity + " ";
-        } else if (minQuantity <= -1 && maxQuantity > -1) {
-            // valid max quantity val.
-            queryString += " quantity <= " + maxQuantity + " ";
+        int lower;
+        if (minQuantity > -1) {
+            lower = minQuantity;
+        } else if (maxQuantity > -1) {
+            // only a valid max quantity val.
+            lower = Integer.MIN_VALUE;
         } else {
-            // both valid.
-            queryString += " quantity >= " + minQuantity + " AND " + " quantity <= " + maxQuantity + " ";
+            // no valid quantity val.
+            lower = 0;
         }
+        int upper = maxQuantity > -1 ? maxQuantity : Integer.MAX_VALUE;
+
+        FilterQuery query = FilterQuery.filter(" WHERE quantity BETWEEN ? AND ? ", lower, upper);
 
         if (getCropType() != CropType.ALL) {
-            queryString += " AND (cropType = '" + cropType.toString().toLowerCase() + "') ";
+            query.append(" AND (cropType = ?) ", cropType.toString().toLowerCase());
         }
 
         if (getCropVariant() != CropVariant.ALL) {
-            queryString += " AND (cropVariant = '" + cropVariant.toString().toLowerCase() + "') ";
+            query.append(" AND (cropVariant = ?) ", cropVariant.toString().toLowerCase());
         }
 
         if (getCropStatus() != CropStatus.ALL) {
-            queryString += " AND (cropStatus = '" + cropStatus.toString().toLowerCase() + "') ";
+            query.append(" AND (cropStatus = ?) ", cropStatus.toString().toLowerCase());
         }
 
-        return queryString;
+        return query;
     }
 
     public CropType getCropType() {
@@ -0,0 +1,99 @@
+package model.filters;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A parameterized SQL fragment plus the values for its '?' placeholders, in order.
+ *
+ * Filter models compile into one of these instead of pasting literal values into the SQL text,
+ * so every filter with the same set of active clauses shares one SQL shape (and one parsed cursor).
+ * Only queries holding a filter model's clauses count towards the distinct filter shapes, the other
+ * statements bound through here (e.g. the padded IN lists of the bulk writes) are not filter shapes.
+ */
+public class FilterQuery {
+
+    // Every distinct SQL text holding filter clauses that has been bound to a statement
+    private static final Set<String> shapes = ConcurrentHashMap.newKeySet();
+
+    private final StringBuilder sql = new StringBuilder();
+    private final List<Object> parameters = new ArrayList<>();
+    // Whether a filter model's clauses are part of this query
+    private boolean filter = false;
+
+    public FilterQuery() {
+    }
+
+    public FilterQuery(String sql, Object... parameters) {
+        append(sql, parameters);
+    }
+
+    /**
+     * A filter model's clause, a query it is appended to counts as a filter shape
+     */
+    static FilterQuery filter(String sql, Object... parameters) {
+        FilterQuery query = new FilterQuery(sql, parameters);
+        query.filter = true;
+        return query;
+    }
+
+    /**
+     * Appends a fragment whose placeholders are filled by the given parameters.
+     */
+    public FilterQuery append(String fragment, Object... parameters) {
+        sql.append(fragment);
+        Collections.addAll(this.parameters, parameters);
+        return this;
+    }
+
+    public FilterQuery append(FilterQuery other) {
+        sql.append(other.sql);
+        parameters.addAll(other.parameters);
+        filter |= other.filter;
+        return this;
+    }
+
+    public String getSql() {
+        return sql.toString();
+    }
+
+    public List<Object> getParameters() {
+        return Collections.unmodifiableList(parameters);
+    }
+
+    /**
+     * Binds the parameters to ps starting at startIndex and records this query's shape if it holds filter clauses.
+     *
+     * @return the next free parameter index
+     */
+    public int bind(PreparedStatement ps, int startIndex) throws SQLException {
+        if (filter) {
+            shapes.add(getSql());
+        }
+
+        int index = startIndex;
+        for (Object parameter : parameters) {
+            if (parameter instanceof Integer) {
+                ps.setInt(index, (Integer) parameter);
+            } else if (parameter instanceof String) {
+                ps.setString(index, (String) parameter);
+            } else {
+                ps.setObject(index, parameter);
+            }
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * @return how many distinct filter SQL shapes have been bound since startup
+     */
+    public static int getDistinctShapeCount() {
+        return shapes.size();
+    }
+}
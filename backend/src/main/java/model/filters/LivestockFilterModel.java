@@ -2,6 +2,9 @@ package model.filters;
 
 import model.enums.AnimalType;
 import model.enums.CropType;
+import model.models.livestock.LivestockModel;
+
+import java.util.Map;
 
 public class LivestockFilterModel {
 
@@ -31,90 +34,175 @@ public class LivestockFilterModel {
         this.minFoodSpent = minFoodSpent;
     }
 
+    /**
+     * Builds the filter from a /livestock/filteredValues request body, in the form of:
+     * { harvestable, animalType, diet, tagID: { min, max }, age: { min, max }, minWaterSpent, minFoodSpent }
+     */
+    @SuppressWarnings("unchecked")
+    public static LivestockFilterModel fromRequestBody(Map<String, Object> map) {
+        // Check for if null for these values.
+        String harvestable = map.get("harvestable").toString().toUpperCase();
+        AnimalType animalType = AnimalType.valueOf(map.get("animalType").toString().toUpperCase());
+        CropType diet = CropType.valueOf(map.get("diet").toString().toUpperCase());
+
+        Map<String, Object> tagID = (Map<String, Object>) map.get("tagID");
+        int minTagID = (int) tagID.get("min");
+        int maxTagID = (int) tagID.get("max");
+
+        Map<String, Object> age = (Map<String, Object>) map.get("age");
+        int minAge = (int) age.get("min");
+        int maxAge = (int) age.get("max");
+
+        int minWaterSpent = (int) map.get("minWaterSpent");
+        int minFoodSpent = (int) map.get("minFoodSpent");
+
+        return new LivestockFilterModel(harvestable, animalType, diet, minAge, maxAge, minTagID, maxTagID,
+                minWaterSpent, minFoodSpent);
+    }
+
     /**
      *
      * @return something in the form of:
-     * " WHERE (harvestable = 0/1)? AND (age >= minAge) AND (age <= maxAge) AND (animalType = AnimalType) AND (cropType = diet)
+     * " WHERE age BETWEEN ? AND ? AND tagID BETWEEN ? AND ? AND (animalType = ?) AND (harvestable = ?) AND (diet = ?) "
+     * where the last three clauses are only present when filtered on, so there are at most 12 distinct shapes.
+     * For queries over a relation that carries the diet and harvestable columns.
      *
      */
-    public String getQueryString() {
-        String queryString = " WHERE ";
+    public FilterQuery getWhereClause() {
+        FilterQuery query = getFactWhereClause();
 
-        // There will always be a min age and max age.
-        if (minAge <= -1 && maxAge <= -1) {
-            // no valid age val.
-            queryString += " age >= " + 0 + " ";
-        } else if (minAge > -1 && maxAge <= -1) {
-            // valid min age val.
-            queryString += " age >= " + minAge + " ";
-        } else if (minAge <= -1 && maxAge > -1) {
-            // valid max age val.
-            queryString += " age <= " + maxAge + " ";
-        } else {
-            // both valid.
-            queryString += " age >= " + minAge + " AND " + " age <= " + maxAge + " ";
+        if (isHarvestable().equals("false")) {
+            query.append(" AND (harvestable = ?) ", 0);
+        } else if (isHarvestable().equals("true")) {
+            query.append(" AND (harvestable = ?) ", 1);
         }
 
-        // There will always be a min tag id and max tag id.
-        if (minTagID <= 4000 && maxTagID >= 4999) {
-            // no valid tag id val.
-            queryString += " AND tagID >= " + 4000 + " ";
-        } else if (minTagID > 4000 && maxTagID >= 4999) {
-            // valid min tag id val.
-            queryString += " AND tagID >= " + minTagID + " ";
-        } else if (minTagID <= 4000 && maxTagID < 4999) {
-            // valid max tag id val.
-            queryString += " AND tagID <= " + maxTagID + " ";
-        } else {
-            // both valid.
-            queryString += " AND tagID >= " + minTagID + " AND " + " tagID <= " + maxTagID + " ";
+        if (getDiet() != CropType.ALL) {
+            query.append(" AND (diet = ?) ", diet.toString().toLowerCase());
         }
 
+        return query;
+    }
 
-        if (isHarvestable().equals("false")) {
-            queryString += " AND (harvestable = " + 0 + " )  ";
-        } else if (isHarvestable().equals("true")) {
-            queryString += " AND (harvestable = " + 1 + " )  ";
-        }
+    /**
+     *
+     * @return something in the form of:
+     * " WHERE age BETWEEN ? AND ? AND tagID BETWEEN ? AND ? AND (animalType = ?) "
+     * i.e. only the clauses on LIVESTOCK_4 columns, the diet and harvestable filters are left to matchesDimensions.
+     *
+     */
+    public FilterQuery getFactWhereClause() {
+        int[] ageBounds = getAgeBounds();
+        int[] tagBounds = getTagIDBounds();
+        FilterQuery query = FilterQuery.filter(" WHERE age BETWEEN ? AND ? AND tagID BETWEEN ? AND ? ",
+                ageBounds[0], ageBounds[1], tagBounds[0], tagBounds[1]);
 
         if (getAnimalType() != AnimalType.ALL) {
-            queryString += " AND (animalType = '" + animalType.toString().toLowerCase() + "') ";
+            query.append(" AND (animalType = ?) ", animalType.toString().toLowerCase());
+        }
+
+        return query;
+    }
+
+    /**
+     *
+     * @return something in the form of:
+     * " AND EXISTS (SELECT 1 FROM Livestock_3 ... AND harvestable = ?) AND EXISTS (SELECT 1 FROM Livestock_1 ... AND diet = ?) "
+     * i.e. the diet and harvestable filters as correlated lookups of the dimension rows, for statements over
+     * LIVESTOCK_4 alone (the bulk updates) that can't apply matchesDimensions. Each is only present when filtered on.
+     *
+     */
+    public FilterQuery getDimensionExistsClause() {
+        FilterQuery query = FilterQuery.filter(" ");
+
+        if (isHarvestable().equals("false") || isHarvestable().equals("true")) {
+            query.append(" AND EXISTS (SELECT 1 FROM Livestock_3 L3 WHERE L3.animalType = Livestock_4.animalType " +
+                    "AND L3.age = Livestock_4.age AND L3.harvestable = ?) ", isHarvestable().equals("true") ? 1 : 0);
         }
 
         if (getDiet() != CropType.ALL) {
-            queryString += " AND (diet = '" + diet.toString().toLowerCase() + "') ";
+            query.append(" AND EXISTS (SELECT 1 FROM Livestock_1 L1 WHERE L1.animalType = Livestock_4.animalType " +
+                    "AND L1.weight = Livestock_4.weight AND L1.diet = ?) ", diet.toString().toLowerCase());
+        }
+
+        return query;
+    }
+
+    /**
+     * @return { min, max }, the inclusive age range selected (there will always be a min age and max age)
+     */
+    public int[] getAgeBounds() {
+        int minAgeBound;
+        if (minAge > -1) {
+            minAgeBound = minAge;
+        } else if (maxAge > -1) {
+            // only a valid max age val.
+            minAgeBound = Integer.MIN_VALUE;
+        } else {
+            // no valid age val.
+            minAgeBound = 0;
+        }
+        int maxAgeBound = maxAge > -1 ? maxAge : Integer.MAX_VALUE;
+        return new int[]{minAgeBound, maxAgeBound};
+    }
+
+    /**
+     * @return { min, max }, the inclusive tagID range selected (there will always be a min tag id and max tag id)
+     */
+    public int[] getTagIDBounds() {
+        int minTagBound;
+        if (minTagID > 4000) {
+            minTagBound = minTagID;
+        } else if (maxTagID < 4999) {
+            // only a valid max tag id val.
+            minTagBound = Integer.MIN_VALUE;
+        } else {
+            // no valid tag id val.
+            minTagBound = 4000;
         }
+        int maxTagBound = maxTagID < 4999 ? maxTagID : Integer.MAX_VALUE;
+        return new int[]{minTagBound, maxTagBound};
+    }
 
+    /**
+     * @return true if the given (resolved) livestock passes the diet and harvestable filters
+     */
+    public boolean matchesDimensions(LivestockModel livestock) {
+        if (isHarvestable().equals("false") && livestock.isHarvestable()) {
+            return false;
+        } else if (isHarvestable().equals("true") && !livestock.isHarvestable()) {
+            return false;
+        }
 
-        return queryString;
+        return getDiet() == CropType.ALL || livestock.getDiet() == getDiet();
     }
 
     /**
      *
      * @return something in the form of:
-     * " HAVING SUM(waterSpent) >= minWaterSpent AND SUM(foodSpent) >= minFoodSpent
+     * " HAVING NVL(SUM(waterSpent), 0) >= ? AND NVL(SUM(foodSpent), 0) >= ? "
      *  OR
-     *  "" when neither minWaterSpent and minFoodSpent is provided.
+     *  " " when neither minWaterSpent and minFoodSpent is provided.
+     *  A missing minimum is bound as Integer.MIN_VALUE so there is only one HAVING shape. Both columns are
+     *  nullable, so a sum is taken as 0 when every event left it NULL (as the nurture totals do), else that
+     *  animal would fail the bound it wasn't filtered on.
      */
-    public String getHavingFilter() {
-        String query = " HAVING ";
-
-        if (minWaterSpent <= -1 && minFoodSpent <= -1) {
+    public FilterQuery getHavingClause() {
+        if (!needsAggregation()) {
             // no having query required.
-            return " ";
-        } else if (minWaterSpent > -1 && minFoodSpent <= -1) {
-            // minWaterSpent valid
-            query += " SUM(waterSpent) >= " + minWaterSpent + " ";
-
-        } else if (minWaterSpent <= -1 && minFoodSpent > -1) {
-            // minFoodSpent valid
-            query += " SUM(foodSpent) >= " + minFoodSpent + " ";
-        } else {
-            // both valid
-            query += " SUM(waterSpent) >= " + minWaterSpent + " " + "AND" + " SUM(foodSpent) >= " + minFoodSpent + " ";
+            return FilterQuery.filter(" ");
         }
 
-        return query;
+        int water = minWaterSpent > -1 ? minWaterSpent : Integer.MIN_VALUE;
+        int food = minFoodSpent > -1 ? minFoodSpent : Integer.MIN_VALUE;
+        return FilterQuery.filter(" HAVING NVL(SUM(waterSpent), 0) >= ? AND NVL(SUM(foodSpent), 0) >= ? ", water, food);
+    }
+
+    /**
+     * @return true if the filter needs the aggregation (join with Nurtures) query
+     */
+    public boolean needsAggregation() {
+        return minWaterSpent > -1 || minFoodSpent > -1;
     }
 
     public String isHarvestable() {
@@ -0,0 +1,136 @@
+package model.filters;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.json.JSONObject;
+
+/**
+ * A keyset page request: the opaque cursor of the last row of the previous page plus a page size.
+ *
+ * Cursors are the sort key of the last row returned (tagID for livestock, cropType|cropVariant for crops)
+ * base64url encoded, so the next page is read with "WHERE key > cursor ORDER BY key FETCH FIRST n ROWS ONLY"
+ * and costs the same however deep it is.
+ */
+public class PageRequest {
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1000;
+
+    private static final String KEY_SEPARATOR = "|";
+
+    private final String[] afterKey;
+    private final int limit;
+
+    public PageRequest(String cursor, int limit) {
+        this.afterKey = cursor == null || cursor.isEmpty() ? null : decodeCursor(cursor);
+        this.limit = Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+
+    /**
+     * @return a page request if either cursor or limit is given, otherwise null (meaning unpaged)
+     * @throws IllegalArgumentException if limit isn't a number or cursor isn't a cursor at all
+     */
+    public static PageRequest fromParams(Object cursor, Object limit) {
+        if (cursor == null && limit == null) {
+            return null;
+        }
+        int pageSize;
+        try {
+            pageSize = limit == null ? DEFAULT_LIMIT : Integer.parseInt(limit.toString());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid page limit");
+        }
+        return new PageRequest(cursor == null ? null : cursor.toString(), pageSize);
+    }
+
+    /**
+     * fromParams for the livestock listings, the cursor is checked up front
+     *
+     * @throws IllegalArgumentException if limit isn't a number or cursor isn't a livestock cursor
+     */
+    public static PageRequest livestockParams(Object cursor, Object limit) {
+        PageRequest page = fromParams(cursor, limit);
+        if (page != null) {
+            page.getAfterTagID();
+        }
+        return page;
+    }
+
+    /**
+     * fromParams for the crop listings, the cursor is checked up front
+     *
+     * @throws IllegalArgumentException if limit isn't a number or cursor isn't a crops cursor
+     */
+    public static PageRequest cropsParams(Object cursor, Object limit) {
+        PageRequest page = fromParams(cursor, limit);
+        if (page != null) {
+            page.getAfterCropKey();
+        }
+        return page;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the tagID to continue after, or Integer.MIN_VALUE for the first page
+     */
+    public int getAfterTagID() {
+        if (afterKey == null) {
+            return Integer.MIN_VALUE;
+        }
+        try {
+            return Integer.parseInt(afterKey[0]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid livestock cursor");
+        }
+    }
+
+    /**
+     * @return the (cropType, cropVariant) to continue after, or null for the first page
+     */
+    public String[] getAfterCropKey() {
+        if (afterKey == null) {
+            return null;
+        }
+        if (afterKey.length != 2) {
+            throw new IllegalArgumentException("Invalid crops cursor");
+        }
+        return afterKey;
+    }
+
+    /**
+     * @return the cursor pointing after the given LivestockModel JSON row
+     */
+    public static String livestockCursor(JSONObject row) {
+        return encodeCursor(row.getInt("tagID"));
+    }
+
+    /**
+     * @return the cursor pointing after the given CropModel JSON row (keys are stored lowercase in CROPS)
+     */
+    public static String cropCursor(JSONObject row) {
+        return encodeCursor(row.getString("cropType").toLowerCase(), row.getString("cropVariant").toLowerCase());
+    }
+
+    public static String encodeCursor(Object... keyParts) {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < keyParts.length; i++) {
+            if (i > 0) {
+                key.append(KEY_SEPARATOR);
+            }
+            key.append(keyParts[i]);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            return key.split("\\" + KEY_SEPARATOR, -1);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid page cursor");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package model.models;
+
+import java.sql.Date;
+
+import org.json.JSONObject;
+
+/**
+ * The intent for this class is to store a single nurture event: a farmer spending water and food on a livestock
+ */
+public class NurtureModel {
+
+    private final int farmerID;
+    private final int tagID;
+    private final Date dateNurtured;
+    private final int waterSpent;
+    private final int foodSpent;
+
+    public NurtureModel(int farmerID, int tagID, Date dateNurtured, int waterSpent, int foodSpent) {
+        this.farmerID = farmerID;
+        this.tagID = tagID;
+        this.dateNurtured = dateNurtured;
+        this.waterSpent = waterSpent;
+        this.foodSpent = foodSpent;
+    }
+
+    public int getFarmerID() {
+        return farmerID;
+    }
+
+    public int getTagID() {
+        return tagID;
+    }
+
+    public Date getDateNurtured() {
+        return dateNurtured;
+    }
+
+    public int getWaterSpent() {
+        return waterSpent;
+    }
+
+    public int getFoodSpent() {
+        return foodSpent;
+    }
+
+    public JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("farmerID", farmerID);
+        json.put("tagID", tagID);
+        json.put("dateNurtured", dateNurtured);
+        json.put("waterSpent", waterSpent);
+        json.put("foodSpent", foodSpent);
+        return json;
+    }
+
+    /**
+     * dateNurtured is optional and defaults to today
+     */
+    public static NurtureModel fromJSON(JSONObject json) {
+        Date dateNurtured;
+        try {
+            dateNurtured = Date.valueOf(json.getString("dateNurtured"));
+        } catch (Exception e) {
+            dateNurtured = new Date(System.currentTimeMillis());
+        }
+
+        return new NurtureModel(
+                json.getInt("farmerID"),
+                json.getInt("tagID"),
+                dateNurtured,
+                json.getInt("waterSpent"),
+                json.getInt("foodSpent")
+        );
+    }
+}
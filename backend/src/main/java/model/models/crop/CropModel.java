@@ -4,6 +4,9 @@ import model.enums.CropStatus;
 import model.enums.CropType;
 import model.enums.CropVariant;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
 import org.json.JSONObject;
 
 /**
@@ -48,6 +51,17 @@ public class  CropModel {
         return json;
     }
 
+    /**
+     * Maps the current row of a CROPS query
+     */
+    public static CropModel fromResultSet(ResultSet rs) throws SQLException {
+        return new CropModel(
+            CropType.valueOf(rs.getString("cropType").toUpperCase()),
+            CropVariant.valueOf(rs.getString("cropVariant").toUpperCase()),
+            CropStatus.valueOf(rs.getString("cropStatus").toUpperCase()),
+            rs.getInt("quantity"));
+    }
+
     public static CropModel fromJSON(JSONObject json) {
         return new CropModel(
             CropType.valueOf(json.getString("cropType").toUpperCase()),
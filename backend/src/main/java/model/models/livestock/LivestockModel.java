@@ -4,6 +4,8 @@ import model.enums.AnimalType;
 import model.enums.CropType;
 
 import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 
 import org.json.JSONObject;
 
@@ -79,6 +81,22 @@ public class  LivestockModel {
         return json;
     }
 
+    /**
+     * Maps the current row of a livestock wide row query
+     * (tagID, animalType, age, diet, weight, lastFed, harvestable, lastViolatedForHarvestedGoods)
+     */
+    public static LivestockModel fromResultSet(ResultSet rs) throws SQLException {
+        return new LivestockModel(
+                rs.getInt("tagID"),
+                AnimalType.valueOf(rs.getString("animalType").toUpperCase()),
+                rs.getInt("age"),
+                CropType.valueOf(rs.getString("diet").toUpperCase()),
+                rs.getDouble("weight"),
+                rs.getDate("lastFed"),
+                rs.getBoolean("harvestable"),
+                rs.getDate("lastViolatedForHarvestedGoods"));
+    }
+
     public static LivestockModel fromJSON(JSONObject json) {
         Date lastFed;
         try {
@@ -1,3 +1,4 @@
+-- Run the DROP lines of livestockWideView.sql first if it was installed
 -- DROP TABLE Manages_Housing;
 -- DROP TABLE MANAGES_PEN;
 -- DROP TABLE Lives;
@@ -304,6 +305,26 @@ CREATE TABLE IsGrowing (
 );
 
 /* -------------------------------------------------------------------------- */
+/*                               Create Indexes                               */
+/* -------------------------------------------------------------------------- */
+-- The tables above only index their primary keys, and Oracle doesn't index foreign keys on its own:
+-- without these, deleting a Livestock_4 row scans every child table and reads by a non-key column scan
+-- the whole table. QueryPlanRegressionTest checks the backend's queries against this set.
+
+-- The Nurtures join of the filtered livestock HAVING query and the cascade from Livestock_4,
+-- the spent columns let the sums be read from the index alone
+CREATE INDEX Nurtures_tagID ON Nurtures (tagID, waterSpent, foodSpent);
+-- findWateredAndFed and the animal type filter (animalType = ?), and the foreign key to Livestock_3
+CREATE INDEX Livestock_4_animalType_age ON Livestock_4 (animalType, age);
+-- findCountedTypesSoldByAge (age < ?, counted from the index alone), findAnimalToSell and the age filter
+CREATE INDEX Livestock_4_age ON Livestock_4 (age, animalType);
+-- findAnimalToSell (weight = ?) and the foreign key to Livestock_1
+CREATE INDEX Livestock_4_weight ON Livestock_4 (weight, animalType);
+-- The field division (plots by farmer are the primary key) and the foreign key to Fields_4
+CREATE INDEX Tends_plotNum ON Tends (plotNum);
+-- The cascades from Livestock_4, their primary keys don't start with tagID
+CREATE INDEX Contains_tagID ON Contains (tagID);
+CREATE INDEX Creates_tagID ON Creates (tagID);
 
 /* -------------------------------------------------------------------------- */
 /*                          Insert Into Entity Tables                         */
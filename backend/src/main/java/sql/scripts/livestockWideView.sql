@@ -0,0 +1,55 @@
+-- Optional read model, run after databaseSetup.sql only when the backend is started with
+-- -Dfms.livestock.wideView=commit (or =demand), see LivestockWideView. Needs the CREATE MATERIALIZED VIEW
+-- privilege. While installed, every commit touching Livestock_1/3/4 also writes the view logs (and with
+-- ON COMMIT refreshes the view), so leave it out where nothing reads it.
+--
+-- DROP MATERIALIZED VIEW Livestock_Wide;
+-- DROP MATERIALIZED VIEW LOG ON Livestock_4;
+-- DROP MATERIALIZED VIEW LOG ON Livestock_1;
+-- DROP MATERIALIZED VIEW LOG ON Livestock_3;
+
+
+
+/* -------------------------------------------------------------------------- */
+/*                             Create Read Models                             */
+/* -------------------------------------------------------------------------- */
+-- The livestock wide row (Livestock_4 with its diet and harvestable), maintained by Oracle so
+-- livestock reads can be a single table scan.
+--
+-- Fast refresh of a join view needs a ROWID log on every base table and every base ROWID in the
+-- select list. For ON DEMAND refreshes instead, replace ON COMMIT with ON DEMAND and start the backend
+-- with -Dfms.livestock.wideView=demand, it then refreshes the view after each livestock write.
+CREATE MATERIALIZED VIEW LOG ON Livestock_4 WITH ROWID;
+CREATE MATERIALIZED VIEW LOG ON Livestock_1 WITH ROWID;
+CREATE MATERIALIZED VIEW LOG ON Livestock_3 WITH ROWID;
+
+CREATE MATERIALIZED VIEW Livestock_Wide
+  BUILD IMMEDIATE
+  REFRESH FAST ON COMMIT
+AS
+SELECT l4.ROWID AS l4_rid,
+       l1.ROWID AS l1_rid,
+       l3.ROWID AS l3_rid,
+       l4.tagID,
+       l4.animalType,
+       l4.age,
+       l1.diet,
+       l4.weight,
+       l4.lastFed,
+       l3.harvestable,
+       l4.lastViolatedForHarvestedGoods
+FROM Livestock_4 l4, Livestock_1 l1, Livestock_3 l3
+WHERE l4.weight = l1.weight
+  AND l4.animalType = l1.animalType
+  AND l4.animalType = l3.animalType
+  AND l4.age = l3.age;
+
+-- Fast refresh maintains rows by base ROWID
+CREATE INDEX Livestock_Wide_l4_rid ON Livestock_Wide (l4_rid);
+CREATE INDEX Livestock_Wide_l1_rid ON Livestock_Wide (l1_rid);
+CREATE INDEX Livestock_Wide_l3_rid ON Livestock_Wide (l3_rid);
+-- Keyset pages and tagID ranges. Not UNIQUE: a fast refresh applies its deletes and inserts row by row,
+-- and a unique index can fail it halfway (tagID is unique in Livestock_4 anyway)
+CREATE INDEX Livestock_Wide_tagID ON Livestock_Wide (tagID);
+-- The dashboard filters
+CREATE INDEX Livestock_Wide_filters ON Livestock_Wide (animalType, diet, harvestable, age);
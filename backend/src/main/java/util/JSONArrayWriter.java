@@ -0,0 +1,44 @@
+package util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.json.JSONObject;
+
+/**
+ * Writes rows as a JSON array directly to a Writer, producing the same text as new JSONArray(rows)
+ * without ever holding more than one row in memory.
+ */
+public class JSONArrayWriter implements JSONRowSink, AutoCloseable {
+
+    private final Writer out;
+    private boolean first = true;
+    private boolean closed = false;
+
+    public JSONArrayWriter(Writer out) throws IOException {
+        this.out = out;
+        out.write('[');
+    }
+
+    @Override
+    public void accept(JSONObject row) throws IOException {
+        if (!first) {
+            out.write(',');
+        }
+        first = false;
+        row.write(out);
+    }
+
+    /**
+     * Closes the array and flushes, but leaves the underlying Writer open.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        out.write(']');
+        out.flush();
+    }
+}
@@ -0,0 +1,14 @@
+package util;
+
+import java.io.IOException;
+
+import org.json.JSONObject;
+
+/**
+ * Receives query results one row at a time, so a handler method can either collect rows into a list
+ * or write them straight to a response as the ResultSet is iterated.
+ */
+@FunctionalInterface
+public interface JSONRowSink {
+    void accept(JSONObject row) throws IOException;
+}
@@ -0,0 +1,128 @@
+package util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+/**
+ * Process wide latency/row/error metrics, grouped by what was measured:
+ * - endpoints: one entry per MainController request mapping
+ * - handlers: one entry per DatabaseConnectionHandler method
+ * - sql: one entry per SQL shape executed through PrintablePreparedStatement
+ *
+ * Recording is lock-free (see LatencyHistogram) so it is meant to stay on under load.
+ */
+public final class Metrics {
+    // Cap on distinct names per group, so ad hoc SQL (e.g. general projections) can't grow the registry forever
+    private static final int MAX_ENTRIES_PER_GROUP = 512;
+    private static final String OVERFLOW_NAME = "(other)";
+
+    private static final Group endpoints = new Group();
+    private static final Group handlers = new Group();
+    private static final Group sql = new Group();
+
+    private Metrics() {
+    }
+
+    public static Operation endpoint(String name) {
+        return endpoints.get(name);
+    }
+
+    public static Operation handler(String name) {
+        return handlers.get(name);
+    }
+
+    public static Operation sql(String query) {
+        return sql.get(query);
+    }
+
+    /**
+     * @return { endpoints: {...}, handlers: {...}, sql: {...} } with each entry rendered by Operation.toJSON()
+     */
+    public static JSONObject toJSON() {
+        JSONObject json = new JSONObject();
+        json.put("endpoints", endpoints.toJSON());
+        json.put("handlers", handlers.toJSON());
+        json.put("sql", sql.toJSON());
+        return json;
+    }
+
+    private static class Group {
+        private final ConcurrentHashMap<String, Operation> operations = new ConcurrentHashMap<>();
+
+        Operation get(String name) {
+            Operation operation = operations.get(name);
+            if (operation != null) {
+                return operation;
+            }
+            if (operations.size() >= MAX_ENTRIES_PER_GROUP) {
+                return operations.computeIfAbsent(OVERFLOW_NAME, key -> new Operation());
+            }
+            return operations.computeIfAbsent(name, key -> new Operation());
+        }
+
+        JSONObject toJSON() {
+            JSONObject json = new JSONObject();
+            Map<String, Operation> sorted = new TreeMap<>(operations);
+            for (Map.Entry<String, Operation> entry : sorted.entrySet()) {
+                json.put(entry.getKey().trim(), entry.getValue().toJSON());
+            }
+            return json;
+        }
+    }
+
+    /**
+     * Latency histogram plus row and error counters for one named operation
+     */
+    public static class Operation {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        public Timer start() {
+            return new Timer(this, System.nanoTime());
+        }
+
+        public void record(long elapsedNanos, long rowCount, boolean failed) {
+            latency.record(elapsedNanos);
+            if (rowCount > 0) {
+                rows.add(rowCount);
+            }
+            if (failed) {
+                errors.increment();
+            }
+        }
+
+        public JSONObject toJSON() {
+            JSONObject json = latency.toJSON();
+            json.put("rows", rows.sum());
+            json.put("errors", errors.sum());
+            return json;
+        }
+    }
+
+    /**
+     * One in-flight measurement, started by Operation.start()
+     */
+    public static class Timer {
+        private final Operation operation;
+        private final long start;
+        private boolean failed = false;
+
+        private Timer(Operation operation, long start) {
+            this.operation = operation;
+            this.start = start;
+        }
+
+        public void failed() {
+            failed = true;
+        }
+
+        public void stop(long rowCount) {
+            operation.record(System.nanoTime() - start, rowCount, failed);
+        }
+    }
+}
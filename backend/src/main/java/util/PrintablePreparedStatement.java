@@ -9,58 +9,99 @@ import java.sql.Date;
 import java.util.*;
 
 // see https://github.com/flynn-buc/PrintablePreparedStatement for how to use this class
+//
+// Executed queries are timed into Metrics per SQL shape and handed to QueryLog, which samples them and
+// renders/prints them on its own thread.
+// Bind values are only captured while the QueryLog is enabled, and the query text is only split on '?'
+// when it is actually rendered.
 public class PrintablePreparedStatement implements PreparedStatement {
 
-    private final List<String> queryStrList;
-    private List<String> parameterList;
+    private static final Object NULL_PARAMETER = new Object();
+
+    private final String query;
     private final PreparedStatement preparedStatement;
-    public static boolean autoPrint = true;
-    private final boolean disableInstanceAutoPrint;
+    private final boolean capture;
+    private Object[] parameters;
+    // true once parameters has been handed to QueryLog, so it must be copied before it is changed
+    private boolean parametersShared = false;
 
     public PrintablePreparedStatement(PreparedStatement preparedStatement, String query) {
         this(preparedStatement, query, false);
     }
 
-    public PrintablePreparedStatement(PreparedStatement preparedStatement, String query, Boolean disableInstanceAutoPrint) {
+    public PrintablePreparedStatement(PreparedStatement preparedStatement, String query, Boolean disableInstanceLogging) {
         this.preparedStatement = preparedStatement;
-        queryStrList = new ArrayList<>(Arrays.asList(query.split("\\?")));
-        this.disableInstanceAutoPrint = disableInstanceAutoPrint;
-        initializeParameterList();
+        this.query = query;
+        this.capture = !disableInstanceLogging && QueryLog.isEnabled();
     }
 
     @Override
     public String toString(){
-        StringBuilder str = new StringBuilder();
-
-        for (int i = 0; i < queryStrList.size(); i++ ) {
-            str.append(queryStrList.get(i)).append(parameterList.get(i));
+        return render(query, parameters);
+    }
+
+    /**
+     * Substitutes the bind values into the query text, quoting everything that isn't a number
+     */
+    static String render(String query, Object[] parameters) {
+        StringBuilder str = new StringBuilder(query.length() + 32);
+        int parameterIndex = 0;
+
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c != '?') {
+                str.append(c);
+                continue;
+            }
+
+            Object parameter = parameters != null && parameterIndex < parameters.length ? parameters[parameterIndex] : null;
+            parameterIndex++;
+            if (parameter == null) {
+                str.append('?');
+            } else if (parameter == NULL_PARAMETER) {
+                str.append("NULL");
+            } else if (parameter instanceof Number) {
+                str.append(parameter);
+            } else {
+                str.append('\'').append(parameter).append('\'');
+            }
         }
 
         return str.toString();
     }
 
-    private void autoPrintQuery() {
-        if (autoPrint && !disableInstanceAutoPrint) {
-            print();
+    private void addToList(int parameterIndex, Object obj) {
+        if (!capture) {
+            return;
         }
-    }
 
-    private void addStringToList(int parameterIndex, Object obj) {
-        addToList(parameterIndex, "'" + obj + "'");
-    }
-
-    private void addToList(int parameterIndex, Object obj) {
-        parameterList.set(parameterIndex - 1, obj.toString());
+        if (parameters == null) {
+            parameters = new Object[Math.max(parameterIndex, 8)];
+        } else if (parameterIndex > parameters.length) {
+            parameters = Arrays.copyOf(parameters, Math.max(parameterIndex, parameters.length * 2));
+        } else if (parametersShared) {
+            parameters = parameters.clone();
+        }
+        parametersShared = false;
+        parameters[parameterIndex - 1] = obj == null ? NULL_PARAMETER : obj;
+    }
+
+    /**
+     * Records the execution in Metrics (always) and QueryLog (when capturing)
+     */
+    private void finished(long start, long rowCount, boolean failed) {
+        long elapsed = System.nanoTime() - start;
+        Metrics.sql(query).record(elapsed, rowCount, failed);
+        if (capture) {
+            parametersShared = true;
+            QueryLog.record(query, parameters, elapsed);
+        }
     }
 
     public void print(){
         System.out.println("Running Query: " + toString());
     }
 
-    private void initializeParameterList() {
-        parameterList = new ArrayList<>(Collections.nCopies(queryStrList.size(), ""));
-    }
-
     public <T> T unwrap(Class<T> iface) throws SQLException {
         return preparedStatement.unwrap(iface);
     }
@@ -270,26 +311,42 @@ public class PrintablePreparedStatement implements PreparedStatement {
     }
 
     public ResultSet executeQuery() throws SQLException {
-        autoPrintQuery();
-        return preparedStatement.executeQuery();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            ResultSet rs = preparedStatement.executeQuery();
+            failed = false;
+            return rs;
+        } finally {
+            finished(start, 0, failed);
+        }
     }
 
     public int executeUpdate() throws SQLException {
-        autoPrintQuery();
-        return preparedStatement.executeUpdate();
+        long start = System.nanoTime();
+        int rowCount = 0;
+        boolean failed = true;
+        try {
+            rowCount = preparedStatement.executeUpdate();
+            failed = false;
+            return rowCount;
+        } finally {
+            finished(start, rowCount, failed);
+        }
     }
 
     public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        addToList(parameterIndex, null);
         preparedStatement.setNull(parameterIndex, sqlType);
     }
 
     public void setBoolean(int parameterIndex, boolean x) throws SQLException {
-        addStringToList(parameterIndex, x);
+        addToList(parameterIndex, x);
         preparedStatement.setBoolean(parameterIndex, x);
     }
 
     public void setByte(int parameterIndex, byte x) throws SQLException {
-        addStringToList(parameterIndex, x);
+        addToList(parameterIndex, x);
         preparedStatement.setByte(parameterIndex, x);
     }
 
@@ -319,12 +376,12 @@ public class PrintablePreparedStatement implements PreparedStatement {
     }
 
     public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
-        addToList(parameterIndex, x.toString());
+        addToList(parameterIndex, x);
         preparedStatement.setBigDecimal(parameterIndex, x);
     }
 
     public void setString(int parameterIndex, String x) throws SQLException {
-        addStringToList(parameterIndex, x);
+        addToList(parameterIndex, x);
         preparedStatement.setString(parameterIndex, x);
     }
 
@@ -333,17 +390,17 @@ public class PrintablePreparedStatement implements PreparedStatement {
     }
 
     public void setDate(int parameterIndex, Date x) throws SQLException {
-        addStringToList(parameterIndex, x);
+        addToList(parameterIndex, x);
         preparedStatement.setDate(parameterIndex, x);
     }
 
     public void setTime(int parameterIndex, Time x) throws SQLException {
-        addStringToList(parameterIndex, x);
+        addToList(parameterIndex, x);
         preparedStatement.setTime(parameterIndex, x);
     }
 
     public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
-        addStringToList(parameterIndex, x);
+        addToList(parameterIndex, x);
         preparedStatement.setTimestamp(parameterIndex, x);
     }
 
@@ -360,23 +417,31 @@ public class PrintablePreparedStatement implements PreparedStatement {
     }
 
     public void clearParameters() throws SQLException {
-        initializeParameterList();
+        parameters = null;
+        parametersShared = false;
         preparedStatement.clearParameters();
     }
 
     public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
-        addStringToList(parameterIndex, x);
+        addToList(parameterIndex, x);
         preparedStatement.setObject(parameterIndex, x, targetSqlType);
     }
 
     public void setObject(int parameterIndex, Object x) throws SQLException {
-        addStringToList(parameterIndex, x);
+        addToList(parameterIndex, x);
         preparedStatement.setObject(parameterIndex, x);
     }
 
     public boolean execute() throws SQLException {
-        autoPrintQuery();
-        return preparedStatement.execute();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            boolean result = preparedStatement.execute();
+            failed = false;
+            return result;
+        } finally {
+            finished(start, 0, failed);
+        }
     }
 
     public void addBatch() throws SQLException {
@@ -464,7 +529,7 @@ public class PrintablePreparedStatement implements PreparedStatement {
     }
 
     public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
-        addStringToList(parameterIndex, x.toString());
+        addToList(parameterIndex, x);
         preparedStatement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
     }
 
@@ -513,12 +578,20 @@ public class PrintablePreparedStatement implements PreparedStatement {
     }
 
     public void setObject(int parameterIndex, Object x, SQLType targetSqlType) throws SQLException {
-        addStringToList(parameterIndex, x.toString());
+        addToList(parameterIndex, x);
         preparedStatement.setObject(parameterIndex, x, targetSqlType);
     }
 
     public long executeLargeUpdate() throws SQLException {
-        autoPrintQuery();
-        return preparedStatement.executeLargeUpdate();
+        long start = System.nanoTime();
+        long rowCount = 0;
+        boolean failed = true;
+        try {
+            rowCount = preparedStatement.executeLargeUpdate();
+            failed = false;
+            return rowCount;
+        } finally {
+            finished(start, rowCount, failed);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,129 @@
+package util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+/**
+ * Structured query log that stays off the request thread.
+ *
+ * PrintablePreparedStatement hands each executed query to record(). Nothing is rendered there: slow queries
+ * and a random sample of the rest are put on a bounded queue as raw SQL plus bind values, and a daemon thread
+ * renders and prints them as one JSON object per line. When the queue is full records are dropped and counted
+ * rather than blocking the caller. When the log is disabled, statements don't even capture their parameters.
+ *
+ * Configured with the system properties fms.querylog.enabled (default true), fms.querylog.sampleRate
+ * (fraction of queries logged, default 0.01) and fms.querylog.slowMillis (queries at least this slow are
+ * always logged, default 100), or at runtime through configure().
+ */
+public final class QueryLog {
+    private static final int CAPACITY = 4096;
+
+    private static volatile boolean enabled = Boolean.parseBoolean(System.getProperty("fms.querylog.enabled", "true"));
+    private static volatile double sampleRate = Double.parseDouble(System.getProperty("fms.querylog.sampleRate", "0.01"));
+    private static volatile long slowThresholdNanos =
+            TimeUnit.MILLISECONDS.toNanos(Long.parseLong(System.getProperty("fms.querylog.slowMillis", "100")));
+
+    private static final BlockingQueue<Record> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private static final LongAdder logged = new LongAdder();
+    private static final LongAdder dropped = new LongAdder();
+    private static volatile Thread writer = null;
+
+    private QueryLog() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void configure(boolean enabled, double sampleRate, long slowMillis) {
+        QueryLog.sampleRate = sampleRate;
+        QueryLog.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowMillis);
+        QueryLog.enabled = enabled;
+    }
+
+    /**
+     * Called after a query ran. The SQL and parameter array are only referenced, not copied or rendered.
+     */
+    static void record(String sql, Object[] parameters, long elapsedNanos) {
+        boolean slow = elapsedNanos >= slowThresholdNanos;
+        if (!slow && (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return;
+        }
+
+        if (queue.offer(new Record(sql, parameters, elapsedNanos, slow, System.currentTimeMillis()))) {
+            startWriter();
+        } else {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * @return { enabled, sampleRate, slowMillis, queued, logged, dropped }
+     */
+    public static JSONObject getStats() {
+        JSONObject json = new JSONObject();
+        json.put("enabled", enabled);
+        json.put("sampleRate", sampleRate);
+        json.put("slowMillis", TimeUnit.NANOSECONDS.toMillis(slowThresholdNanos));
+        json.put("queued", queue.size());
+        json.put("logged", logged.sum());
+        json.put("dropped", dropped.sum());
+        return json;
+    }
+
+    private static void startWriter() {
+        if (writer != null) {
+            return;
+        }
+        synchronized (QueryLog.class) {
+            if (writer == null) {
+                Thread thread = new Thread(QueryLog::drain, "query-log-writer");
+                thread.setDaemon(true);
+                thread.start();
+                writer = thread;
+            }
+        }
+    }
+
+    private static void drain() {
+        while (true) {
+            try {
+                Record record = queue.take();
+                System.out.println(record.render());
+                logged.increment();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static class Record {
+        private final String sql;
+        private final Object[] parameters;
+        private final long elapsedNanos;
+        private final boolean slow;
+        private final long timestampMillis;
+
+        Record(String sql, Object[] parameters, long elapsedNanos, boolean slow, long timestampMillis) {
+            this.sql = sql;
+            this.parameters = parameters;
+            this.elapsedNanos = elapsedNanos;
+            this.slow = slow;
+            this.timestampMillis = timestampMillis;
+        }
+
+        String render() {
+            JSONObject json = new JSONObject();
+            json.put("timestamp", timestampMillis);
+            json.put("elapsedMillis", elapsedNanos / 1_000_000.0);
+            json.put("slow", slow);
+            json.put("query", PrintablePreparedStatement.render(sql, parameters));
+            return "[QUERY] " + json;
+        }
+    }
+}
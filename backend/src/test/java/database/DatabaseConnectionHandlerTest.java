@@ -0,0 +1,265 @@
+package database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import model.enums.ActionType;
+import model.enums.AnimalType;
+import model.enums.CropType;
+import model.filters.LivestockFilterModel;
+import model.models.livestock.LivestockModel;
+import model.models.livestock.Livestock_4_Model;
+import model.models.NurtureModel;
+
+/**
+ * Checks what the DatabaseConnectionHandler write paths report and leave behind, against an embedded H2 database
+ * (in Oracle mode) created by databaseSetup.sql with its seed rows and foreign keys. How their queries are planned
+ * is QueryPlanRegressionTest's part.
+ *
+ * The tests that add or remove animals do it with their own herd under their own tagIDs, so they don't depend
+ * on each other's rows.
+ */
+class DatabaseConnectionHandlerTest {
+	private static final String SETUP_SCRIPT = "src/main/java/sql/scripts/databaseSetup.sql";
+	private static final String DATABASE_URL = "jdbc:h2:mem:handler;MODE=Oracle;DB_CLOSE_DELAY=-1";
+
+	// Far above the seed rows, the animals generateData adds after the highest tagID stay clear of the herds
+	private static final int FIRST_TAG_ID = 100000;
+	private static final int UNKNOWN_TAG_ID = FIRST_TAG_ID - 1;
+	// Rows of the seed data
+	private static final int SEEDED_TAG_ID = 4001;
+	private static final int FARMER_ID = 1002;
+
+	private static Connection database;
+	private static DatabaseConnectionHandler handler;
+
+	@BeforeAll
+	static void createDatabase() throws SQLException {
+		database = DriverManager.getConnection(DATABASE_URL, "sa", "");
+		try (Statement statement = database.createStatement()) {
+			statement.execute("RUNSCRIPT FROM '" + SETUP_SCRIPT + "'");
+		}
+		database.commit();
+		handler = new DatabaseConnectionHandler(DATABASE_URL);
+	}
+
+	@BeforeEach
+	void login() {
+		// Logging in again drops every cache, so each test reads what the database has
+		assertTrue(handler.login("sa", ""), "could not log in to the embedded database");
+	}
+
+	@AfterAll
+	static void dropDatabase() throws SQLException {
+		if (handler != null) {
+			handler.close();
+		}
+		if (database != null) {
+			try (Statement statement = database.createStatement()) {
+				statement.execute("DROP ALL OBJECTS");
+			}
+			database.close();
+		}
+	}
+
+	@Test
+	void insertLivestockBatch() {
+		int firstTagID = FIRST_TAG_ID;
+		// Each half needs its own dimension rows
+		List<LivestockModel> herd = new ArrayList<>(Herd.of(firstTagID, 15, AnimalType.SHEEP, 4, CropType.WHEAT, 40));
+		herd.addAll(Herd.of(firstTagID + 15, 15, AnimalType.SHEEP, 31, CropType.WHEAT, 110));
+		// Taken tagIDs, one of them by an earlier animal of the same batch, and no animal at all
+		herd.add(new LivestockModel(SEEDED_TAG_ID, AnimalType.COW, 2, CropType.CORN, 50, null, false, null));
+		herd.add(new LivestockModel(firstTagID, AnimalType.COW, 2, CropType.CORN, 50, null, false, null));
+		herd.add(null);
+
+		JSONObject result = handler.insertLivestockBatch(herd);
+		assertEquals(30, result.getInt("inserted"), result.toString());
+		assertEquals(3, result.getJSONArray("failed").length(), result.toString());
+		assertEquals(30, countLivestock(firstTagID, firstTagID + 32));
+	}
+
+	@Test
+	void bufferNurture() {
+		NurtureModel model = new NurtureModel(FARMER_ID, SEEDED_TAG_ID, Date.valueOf("2030-01-01"), 10, 20);
+		JSONObject result = handler.bufferNurture(model, NurtureWriteBuffer.Durability.ACK);
+		assertEquals("committed", result.getString("outcome"), result.toString());
+		assertEquals(1, queryInt("SELECT COUNT(*) FROM Nurtures WHERE farmerID = " + FARMER_ID + " AND tagID = "
+				+ SEEDED_TAG_ID + " AND dateNurtured = DATE '2030-01-01'"));
+	}
+
+	@Test
+	void applyMutations() throws SQLException {
+		int tagID = FIRST_TAG_ID + 100;
+		int nurturedTagID = SEEDED_TAG_ID + 4;
+		Livestock_4_Model fed = new Livestock_4_Model(SEEDED_TAG_ID + 2, AnimalType.COW, 0, 0, null, null);
+		boolean[] results = new boolean[5];
+		handler.applyMutations(Arrays.asList(
+				() -> results[0] = handler.insertLivestock(new LivestockModel(tagID, AnimalType.COW, 2, CropType.CORN,
+						50, null, false, null)),
+				() -> results[1] = handler.insertNurture(
+						new NurtureModel(FARMER_ID, nurturedTagID, Date.valueOf("2031-01-01"), 10, 20)),
+				() -> results[2] = handler.updateLivestock(fed, ActionType.FEED)));
+		assertTrue(results[0] && results[1] && results[2], Arrays.toString(results));
+
+		// tagID is taken, only that mutation is rolled back
+		handler.applyMutations(Arrays.asList(
+				() -> results[3] = handler.insertNurture(
+						new NurtureModel(FARMER_ID, nurturedTagID, Date.valueOf("2031-01-02"), 10, 20)),
+				() -> results[4] = handler.insertLivestock(new LivestockModel(tagID, AnimalType.COW, 3, CropType.CORN,
+						50, null, false, null))));
+		assertTrue(results[3] && !results[4], Arrays.toString(results));
+
+		assertEquals(2, queryInt("SELECT age FROM Livestock_4 WHERE tagID = " + tagID));
+		assertEquals(2, queryInt("SELECT COUNT(*) FROM Nurtures WHERE tagID = " + nurturedTagID
+				+ " AND dateNurtured >= DATE '2031-01-01'"));
+	}
+
+	@Test
+	void deleteLivestockBatch() {
+		int firstTagID = FIRST_TAG_ID + 2500;
+		List<LivestockModel> herd = Herd.of(firstTagID, 600, AnimalType.SHEEP, 5, CropType.WHEAT, 40);
+		assertEquals(600, handler.insertLivestockBatch(herd).getInt("inserted"));
+		List<Integer> tagIDs = Herd.tagIDs(herd);
+		// Unknown ones are skipped
+		tagIDs.add(UNKNOWN_TAG_ID);
+
+		List<JSONObject> progress = new ArrayList<>();
+		JSONObject result = handler.deleteLivestockBatch(tagIDs, progress::add);
+		assertEquals(600, result.getInt("deleted"), result.toString());
+		assertEquals(0, result.getInt("failedChunks"), result.toString());
+		// One report per chunk of DELETE_CHUNK_SIZE
+		assertEquals(3, progress.size(), progress.toString());
+		assertEquals(601, progress.get(2).getInt("processed"), progress.toString());
+		assertEquals(0, countLivestock(firstTagID, firstTagID + 599));
+	}
+
+	@Test
+	void deleteFilteredLivestock() {
+		int firstTagID = FIRST_TAG_ID + 1500;
+		int age = 35;
+		assertEquals(300, handler.insertLivestockBatch(Herd.of(firstTagID, 300, AnimalType.PIG, age, CropType.CORN, 60))
+				.getInt("inserted"));
+
+		LivestockFilterModel pigs = new LivestockFilterModel("all", AnimalType.PIG, CropType.ALL, age, age,
+				-1, 5000, -1, -1);
+		JSONObject result = handler.deleteFilteredLivestock(pigs, null);
+		assertEquals(300, result.getInt("deleted"), result.toString());
+		assertEquals(0, handler.getFilteredLivestock(pigs).size());
+		assertEquals(0, countLivestock(firstTagID, firstTagID + 299));
+	}
+
+	@Test
+	void updateLivestockBatch() {
+		int firstTagID = FIRST_TAG_ID + 1000;
+		List<LivestockModel> herd = Herd.of(firstTagID, 300, AnimalType.COW, 6, CropType.CORN, 70);
+		assertEquals(300, handler.insertLivestockBatch(herd).getInt("inserted"));
+		List<Integer> tagIDs = Herd.tagIDs(herd);
+		// Repeated and unknown tagIDs don't count
+		tagIDs.add(firstTagID);
+		tagIDs.add(UNKNOWN_TAG_ID);
+
+		assertEquals(300, handler.updateLivestockBatch(tagIDs, ActionType.FEED));
+	}
+
+	@Test
+	void updateFilteredLivestock() {
+		int firstTagID = FIRST_TAG_ID + 200;
+		assertEquals(50, handler.insertLivestockBatch(Herd.of(firstTagID, 50, AnimalType.SHEEP, 3, CropType.WHEAT, 45))
+				.getInt("inserted"));
+
+		// Updates exactly what the same filter lists
+		LivestockFilterModel sheep = new LivestockFilterModel("true", AnimalType.SHEEP, CropType.WHEAT, 2, 4,
+				-1, 5000, -1, -1);
+		int listed = handler.getFilteredLivestock(sheep).size();
+		assertTrue(listed >= 50, "listed " + listed + " sheep");
+		assertEquals(listed, handler.updateFilteredLivestock(sheep, ActionType.FEED));
+
+		// Only the nurtured half of the cows reaches the water minimum
+		List<LivestockModel> cows = Herd.of(firstTagID + 100, 20, AnimalType.COW, 3, CropType.CORN, 65);
+		assertEquals(20, handler.insertLivestockBatch(cows).getInt("inserted"));
+		for (int i = 0; i < 10; i++) {
+			assertTrue(handler.insertNurture(new NurtureModel(FARMER_ID, cows.get(i).getTagID(),
+					Date.valueOf("2032-01-01"), 60, 5)));
+		}
+		LivestockFilterModel nurtured = new LivestockFilterModel("all", AnimalType.COW, CropType.ALL, 2, 4,
+				-1, 5000, 50, -1);
+		listed = handler.getFilteredLivestock(nurtured).size();
+		assertTrue(listed >= 10, "listed " + listed + " cows");
+		assertEquals(listed, handler.updateFilteredLivestock(nurtured, ActionType.HARVEST));
+	}
+
+	@Test
+	void updateFilteredLivestockOnWaterAlone() throws SQLException {
+		int firstTagID = FIRST_TAG_ID + 400;
+		List<LivestockModel> pigs = Herd.of(firstTagID, 10, AnimalType.PIG, 7, CropType.CORN, 80);
+		assertEquals(10, handler.insertLivestockBatch(pigs).getInt("inserted"));
+		// Events that only recorded the water, their food sum is NULL
+		try (Statement statement = database.createStatement()) {
+			for (LivestockModel pig : pigs) {
+				statement.executeUpdate("INSERT INTO Nurtures (farmerID, tagID, dateNurtured, waterSpent, foodSpent) " +
+						"VALUES (" + FARMER_ID + ", " + pig.getTagID() + ", DATE '2032-02-01', 60, NULL)");
+			}
+		}
+		database.commit();
+
+		LivestockFilterModel watered = new LivestockFilterModel("all", AnimalType.PIG, CropType.ALL, 7, 7,
+				-1, 5000, 50, -1);
+		assertEquals(10, handler.updateFilteredLivestock(watered, ActionType.FEED));
+	}
+
+	@Test
+	void generateData() {
+		FarmDataGenerator.Settings settings = new FarmDataGenerator.Settings(7, 1500, 20, 30, 25, 3, 1, 2,
+				LocalDate.of(2030, 1, 1));
+		// The foreign keys are loaded here, a row referencing nothing fails the run
+		JSONObject first = handler.generateData(settings);
+		assertFalse(first.has("error"), first.toString());
+		assertEquals(1500, first.getInt("livestock"), first.toString());
+		assertTrue(first.getInt("ages") > 0, first.toString());
+
+		// The second run adds animals after the first's, every dimension row is there already
+		JSONObject second = handler.generateData(settings);
+		assertFalse(second.has("error"), second.toString());
+		assertEquals(1500, second.getInt("livestock"), second.toString());
+		assertEquals(0, second.getInt("ages"), second.toString());
+		assertEquals(0, second.getInt("weights"), second.toString());
+	}
+
+	private static int countLivestock(int fromTagID, int toTagID) {
+		return queryInt("SELECT COUNT(*) FROM Livestock_4 WHERE tagID BETWEEN " + fromTagID + " AND " + toTagID);
+	}
+
+	/**
+	 * @return the first column of the query's first row
+	 */
+	private static int queryInt(String query) {
+		try (Statement statement = database.createStatement()) {
+			ResultSet rs = statement.executeQuery(query);
+			assertTrue(rs.next(), query);
+			int value = rs.getInt(1);
+			rs.close();
+			return value;
+		} catch (SQLException e) {
+			throw new AssertionError(query, e);
+		}
+	}
+}
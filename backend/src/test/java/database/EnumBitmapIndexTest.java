@@ -0,0 +1,103 @@
+package database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Inserts and removes rows of an EnumBitmapIndex by position and checks get()/count() against the same values
+ * kept in a List<Integer>. Positions 0, 63, 64 and the end are picked often, as those are where bits cross a word.
+ */
+class EnumBitmapIndexTest {
+	private static final int VALUES = 3;
+
+	private final Random random = new Random(11);
+	private final EnumBitmapIndex index = new EnumBitmapIndex(VALUES);
+	private final List<Integer> expected = new ArrayList<>();
+
+	@Test
+	void insertsAndRemovesAtWordBoundaries() {
+		// Past the initial 16 words, so the bitmaps grow on the way
+		while (expected.size() < 1500) {
+			insert(randomPosition(expected.size() + 1));
+		}
+		for (int step = 0; step < 20000; step++) {
+			if (expected.isEmpty() || (random.nextBoolean() && expected.size() < 2000)) {
+				insert(randomPosition(expected.size() + 1));
+			} else {
+				remove(randomPosition(expected.size()));
+			}
+			if (step % 100 == 0) {
+				assertMatches();
+			}
+		}
+		assertMatches();
+	}
+
+	@Test
+	void removesDownToEmpty() {
+		for (int i = 0; i < 200; i++) {
+			insert(randomPosition(expected.size() + 1));
+		}
+		while (!expected.isEmpty()) {
+			remove(randomPosition(expected.size()));
+			assertMatches();
+		}
+		assertEquals(0, index.wordCount());
+	}
+
+	@Test
+	void fullWords() {
+		// Every insert at 0 carries the top bit of each word into the next one
+		for (int i = 0; i < 64 * 5; i++) {
+			insert(0);
+		}
+		assertMatches();
+		for (int i = 0; i < 64 * 2; i++) {
+			remove(64);
+		}
+		assertMatches();
+	}
+
+	private void insert(int position) {
+		int value = random.nextInt(VALUES);
+		index.insert(position, value);
+		expected.add(position, value);
+	}
+
+	private void remove(int position) {
+		index.remove(position);
+		expected.remove(position);
+	}
+
+	// Mostly the positions around a word boundary, otherwise anywhere in [0, rows)
+	private int randomPosition(int rows) {
+		int[] boundaries = { 0, 63, 64, 127, 128, rows - 1 };
+		int position = random.nextInt(3) == 0 ? random.nextInt(rows) : boundaries[random.nextInt(boundaries.length)];
+		return Math.max(0, Math.min(position, rows - 1));
+	}
+
+	private void assertMatches() {
+		assertEquals((expected.size() + 63) / 64, index.wordCount());
+		for (int value = 0; value < VALUES; value++) {
+			long[] bitmap = index.get(value);
+			int count = 0;
+			for (int row = 0; row < expected.size(); row++) {
+				boolean set = (bitmap[row >>> 6] & (1L << row)) != 0;
+				assertEquals(expected.get(row) == value, set, "value " + value + " at row " + row);
+				if (set) {
+					count++;
+				}
+			}
+			// No bits left behind past the last row
+			for (int row = expected.size(); row < index.wordCount() * 64; row++) {
+				assertEquals(0, bitmap[row >>> 6] & (1L << row), "value " + value + " past the end at row " + row);
+			}
+			assertEquals(count, index.count(value));
+		}
+	}
+}
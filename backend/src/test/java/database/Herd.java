@@ -0,0 +1,36 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import model.enums.AnimalType;
+import model.enums.CropType;
+import model.models.livestock.LivestockModel;
+
+/**
+ * Builds the runs of animals the handler tests insert, update and delete
+ */
+final class Herd {
+	private Herd() {
+	}
+
+	/**
+	 * @return count harvestable, never fed animals with the tagIDs firstTagID, firstTagID + 1, ...
+	 */
+	static List<LivestockModel> of(int firstTagID, int count, AnimalType animalType, int age, CropType diet,
+								   double weight) {
+		List<LivestockModel> herd = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			herd.add(new LivestockModel(firstTagID + i, animalType, age, diet, weight, null, true, null));
+		}
+		return herd;
+	}
+
+	static List<Integer> tagIDs(List<LivestockModel> herd) {
+		List<Integer> tagIDs = new ArrayList<>();
+		for (LivestockModel animal : herd) {
+			tagIDs.add(animal.getTagID());
+		}
+		return tagIDs;
+	}
+}
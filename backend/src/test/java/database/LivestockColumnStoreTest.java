@@ -0,0 +1,405 @@
+package database;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import model.enums.AnimalType;
+import model.enums.CropType;
+import model.filters.LivestockFilterModel;
+import model.filters.PageRequest;
+import model.models.livestock.LivestockModel;
+
+/**
+ * Applies random put/remove/setLastFed sequences to a LivestockColumnStore and checks filter() and
+ * countByAnimalType() against the same rows kept in a plain TreeMap, filtered the way the SQL path filters them
+ * (the age and tagID bounds plus LivestockFilterModel.matchesDimensions).
+ *
+ * selectBits, the bitmap walk filter() starts from, is checked on its own for ranges starting or ending mid-word.
+ *
+ * The store is loaded from a small H2 database holding only the three livestock tables, every (animalType,
+ * weight) and (animalType, age) dimension row exists so any generated row resolves.
+ */
+class LivestockColumnStoreTest {
+	private static final String DATABASE_URL = "jdbc:h2:mem:columnStore;MODE=Oracle;DB_CLOSE_DELAY=-1";
+
+	private static final AnimalType[] ANIMAL_TYPES = { AnimalType.CHICKEN, AnimalType.SHEEP, AnimalType.COW, AnimalType.PIG };
+	private static final CropType[] DIETS = { CropType.CANOLA, CropType.WHEAT, CropType.CORN, CropType.POTATOES,
+			CropType.MUSTARD, CropType.COCONUT };
+	// The filters' default tagID range starts at 4000
+	private static final int FIRST_TAG_ID = 4001;
+	private static final int TAG_IDS = 900;
+	private static final int LOADED = 300;
+	private static final int MAX_AGE = 20;
+	private static final int MAX_WEIGHT = 40;
+	private static final LocalDate FIRST_DAY = LocalDate.of(2030, 1, 1);
+
+	private static Connection database;
+
+	private final TableVersions versions = new TableVersions();
+	private final LivestockColumnStore store = new LivestockColumnStore(versions);
+	// The rows the store should hold, resolved, by tagID
+	private final TreeMap<Integer, LivestockModel> expected = new TreeMap<>();
+	private final Random random = new Random(7);
+	private LivestockDimensionCache.Snapshot dimensions;
+
+	@BeforeAll
+	static void createDatabase() throws SQLException {
+		database = DriverManager.getConnection(DATABASE_URL, "sa", "");
+		try (Statement statement = database.createStatement()) {
+			statement.execute("CREATE TABLE Livestock_1 (animalType VARCHAR(20), weight NUMBER, diet VARCHAR(20), "
+					+ "PRIMARY KEY (animalType, weight))");
+			statement.execute("CREATE TABLE Livestock_3 (animalType VARCHAR(20), age INTEGER, harvestable INTEGER, "
+					+ "PRIMARY KEY (animalType, age))");
+			statement.execute("CREATE TABLE Livestock_4 (tagID INTEGER PRIMARY KEY, animalType VARCHAR(20), "
+					+ "age INTEGER, weight NUMBER, lastFed DATE, lastViolatedForHarvestedGoods DATE)");
+		}
+		PreparedStatement weights = database.prepareStatement("INSERT INTO Livestock_1 VALUES (?, ?, ?)");
+		PreparedStatement ages = database.prepareStatement("INSERT INTO Livestock_3 VALUES (?, ?, ?)");
+		for (AnimalType animalType : ANIMAL_TYPES) {
+			for (int weight = 1; weight <= MAX_WEIGHT; weight++) {
+				weights.setString(1, animalType.toString().toLowerCase());
+				weights.setDouble(2, weight);
+				weights.setString(3, DIETS[(weight + animalType.ordinal()) % DIETS.length].toString().toLowerCase());
+				weights.addBatch();
+			}
+			for (int age = 0; age <= MAX_AGE; age++) {
+				ages.setString(1, animalType.toString().toLowerCase());
+				ages.setInt(2, age);
+				ages.setInt(3, age >= 5 + animalType.ordinal() ? 1 : 0);
+				ages.addBatch();
+			}
+		}
+		weights.executeBatch();
+		ages.executeBatch();
+		weights.close();
+		ages.close();
+		database.commit();
+	}
+
+	@AfterAll
+	static void closeDatabase() throws SQLException {
+		database.close();
+	}
+
+	/**
+	 * Loads LOADED random rows through LIVESTOCK_4, as the handler does on first use
+	 */
+	@BeforeEach
+	void loadStore() throws SQLException {
+		try (Statement statement = database.createStatement()) {
+			statement.execute("DELETE FROM Livestock_4");
+		}
+		PreparedStatement insert = database.prepareStatement("INSERT INTO Livestock_4 VALUES (?, ?, ?, ?, ?, ?)");
+		while (expected.size() < LOADED) {
+			LivestockModel row = randomRow();
+			if (expected.containsKey(row.getTagID())) {
+				continue;
+			}
+			insert.setInt(1, row.getTagID());
+			insert.setString(2, row.getAnimalType().toString().toLowerCase());
+			insert.setInt(3, row.getAge());
+			insert.setDouble(4, row.getWeight());
+			insert.setDate(5, row.getLastFed());
+			insert.setDate(6, row.getLastViolatedForHarvestedGoods());
+			insert.addBatch();
+			expected.put(row.getTagID(), row);
+		}
+		insert.executeBatch();
+		insert.close();
+		database.commit();
+
+		dimensions = new LivestockDimensionCache().load(database);
+		for (Integer tagID : new ArrayList<>(expected.keySet())) {
+			expected.put(tagID, resolve(expected.get(tagID)));
+		}
+		store.load(database, dimensions);
+		assertTrue(store.isFresh());
+	}
+
+	@Test
+	void filterMatchesAfterRandomWrites() {
+		for (int step = 0; step < 2000; step++) {
+			applyRandomWrite();
+			if (step % 50 == 0) {
+				for (int i = 0; i < 20; i++) {
+					assertFilterMatches(randomFilter());
+				}
+				assertCountsMatch();
+			}
+		}
+		assertFilterMatches(filter("all", AnimalType.ALL, CropType.ALL, -1, -1, -1, 5000));
+		assertCountsMatch();
+	}
+
+	@Test
+	void pagesAddUpToTheWholeResult() {
+		for (int step = 0; step < 500; step++) {
+			applyRandomWrite();
+		}
+		for (int i = 0; i < 30; i++) {
+			LivestockFilterModel filter = randomFilter();
+			List<LivestockModel> all = expectedRows(filter);
+			int limit = 1 + random.nextInt(40);
+
+			List<LivestockModel> paged = new ArrayList<>();
+			String cursor = null;
+			do {
+				LivestockColumnStore.Result page = store.filter(filter, new PageRequest(cursor, limit), null);
+				assertNotNull(page);
+				assertTrue(page.getRows().size() <= limit);
+				paged.addAll(page.getRows());
+				cursor = page.hasMore()
+						? PageRequest.livestockCursor(page.getRows().get(page.getRows().size() - 1).toJSON())
+						: null;
+			} while (cursor != null);
+			assertSameRows(all, paged);
+		}
+	}
+
+	@Test
+	void tagIDRangesStartingAndEndingBetweenRows() {
+		int[] tagIDs = expected.keySet().stream().mapToInt(Integer::intValue).toArray();
+		for (int i = 0; i < 50; i++) {
+			int from = tagIDs[random.nextInt(tagIDs.length)] + random.nextInt(3) - 1;
+			int to = from + random.nextInt(200);
+			assertFilterMatches(filter("all", AnimalType.ALL, CropType.ALL, -1, -1, from, to));
+			assertFilterMatches(filter("true", ANIMAL_TYPES[i % ANIMAL_TYPES.length], CropType.ALL, -1, -1, from, to));
+		}
+	}
+
+	@Test
+	void staleWhileAWriteIsNotApplied() throws SQLException {
+		LivestockFilterModel all = filter("all", AnimalType.ALL, CropType.ALL, -1, -1, -1, 5000);
+
+		// Committed but not applied (yet)
+		versions.bump(Table.LIVESTOCK_4);
+		assertFalse(store.isFresh());
+		assertNull(store.filter(all, null, null));
+		assertNull(store.countByAnimalType(null));
+
+		// Applying a write counts one version, it doesn't catch up with the missed one
+		versions.bump(Table.LIVESTOCK_4);
+		store.remove(expected.firstKey());
+		assertFalse(store.isFresh());
+		assertNull(store.filter(all, null, null));
+
+		// Only a reload does, it reads the row back as the remove was never committed
+		store.load(database, dimensions);
+		assertTrue(store.isFresh());
+		assertFilterMatches(all);
+	}
+
+	@Test
+	void staleAfterInvalidate() {
+		store.invalidate();
+		assertFalse(store.isFresh());
+		assertNull(store.filter(filter("all", AnimalType.ALL, CropType.ALL, -1, -1, -1, 5000), null, null));
+
+		// Writes aren't applied to an unloaded store
+		versions.bump(Table.LIVESTOCK_4);
+		store.put(randomRow(), dimensions);
+		assertFalse(store.isFresh());
+	}
+
+	@Test
+	void unresolvedRowsOnlyStopTheCounts() {
+		LivestockModel noAge = new LivestockModel(FIRST_TAG_ID + TAG_IDS + 1, AnimalType.COW, -1, null, 3, null,
+				false, null);
+		versions.bump(Table.LIVESTOCK_4);
+		store.put(noAge, dimensions);
+
+		assertTrue(store.isFresh());
+		// Left out, as the join drops it
+		assertFilterMatches(filter("all", AnimalType.ALL, CropType.ALL, -1, -1, -1, 5000));
+		assertNull(store.countByAnimalType(null));
+	}
+
+	@Test
+	void countsByAnimalTypeBelowAnAge() {
+		for (int step = 0; step < 300; step++) {
+			applyRandomWrite();
+		}
+		for (int maxAge = 0; maxAge <= MAX_AGE + 1; maxAge++) {
+			int[] counts = new int[AnimalType.values().length];
+			for (LivestockModel row : expected.values()) {
+				if (row.getAge() < maxAge) {
+					counts[row.getAnimalType().ordinal()]++;
+				}
+			}
+			assertArrayEquals(counts, store.countByAnimalType(maxAge), "age < " + maxAge);
+		}
+	}
+
+	@Test
+	void selectBitsOfRangesStartingAndEndingMidWord() {
+		long[] mask = new long[6];
+		for (int i = 0; i < mask.length; i++) {
+			mask[i] = random.nextLong();
+		}
+		mask[2] = -1L;
+		mask[3] = 0;
+		int rows = mask.length * 64;
+		int[] edges = { 0, 1, 62, 63, 64, 65, 127, 128, 191, 200, rows - 1, rows };
+		for (int from : edges) {
+			for (int to : edges) {
+				assertSelectBits(mask, from, to);
+			}
+		}
+		for (int i = 0; i < 500; i++) {
+			int from = random.nextInt(rows + 1);
+			assertSelectBits(mask, from, from + random.nextInt(rows + 1 - from));
+		}
+	}
+
+	private static void assertSelectBits(long[] mask, int from, int to) {
+		int[] expectedRows = new int[Math.max(0, to - from)];
+		int n = 0;
+		for (int row = from; row < to; row++) {
+			if ((mask[row >>> 6] & (1L << row)) != 0) {
+				expectedRows[n++] = row;
+			}
+		}
+		int[] selection = new int[Math.max(0, to - from)];
+		int selected = LivestockColumnStore.selectBits(selection, mask, from, to);
+		assertArrayEquals(Arrays.copyOf(expectedRows, n), Arrays.copyOf(selection, selected), "[" + from + ", " + to + ")");
+	}
+
+	// Commits one random LIVESTOCK_4 write to the store and to expected, as the handler's afterCommit hooks do
+	private void applyRandomWrite() {
+		int kind = random.nextInt(10);
+		versions.bump(Table.LIVESTOCK_4);
+		if (kind < 4) {
+			LivestockModel row = randomRow();
+			store.put(row, dimensions);
+			expected.put(row.getTagID(), resolve(row));
+		} else if (kind < 7) {
+			int tagID = randomTagID();
+			store.remove(tagID);
+			expected.remove(tagID);
+		} else if (kind < 9) {
+			List<Integer> fed = new ArrayList<>();
+			for (int i = random.nextInt(5); i >= 0; i--) {
+				fed.add(randomTagID());
+			}
+			Date lastFed = randomDate();
+			store.setLastFed(fed, lastFed);
+			for (int tagID : fed) {
+				LivestockModel row = expected.get(tagID);
+				if (row != null) {
+					expected.put(tagID, new LivestockModel(tagID, row.getAnimalType(), row.getAge(), row.getDiet(),
+							row.getWeight(), lastFed, row.isHarvestable(), row.getLastViolatedForHarvestedGoods()));
+				}
+			}
+		} else {
+			// Several rows in one commit
+			List<LivestockModel> rows = new ArrayList<>();
+			for (int i = random.nextInt(8); i >= 0; i--) {
+				rows.add(randomRow());
+			}
+			store.putAll(rows, dimensions);
+			for (LivestockModel row : rows) {
+				expected.put(row.getTagID(), resolve(row));
+			}
+		}
+		assertTrue(store.isFresh());
+	}
+
+	private void assertFilterMatches(LivestockFilterModel filter) {
+		LivestockColumnStore.Result result = store.filter(filter, null, null);
+		assertNotNull(result);
+		assertFalse(result.hasMore());
+		assertSameRows(expectedRows(filter), result.getRows());
+	}
+
+	private void assertCountsMatch() {
+		int[] counts = new int[AnimalType.values().length];
+		for (LivestockModel row : expected.values()) {
+			counts[row.getAnimalType().ordinal()]++;
+		}
+		assertArrayEquals(counts, store.countByAnimalType(null));
+	}
+
+	private static void assertSameRows(List<LivestockModel> expectedRows, List<LivestockModel> rows) {
+		assertEquals(expectedRows.size(), rows.size());
+		for (int i = 0; i < rows.size(); i++) {
+			assertTrue(expectedRows.get(i).toJSON().similar(rows.get(i).toJSON()),
+					"expected " + expectedRows.get(i).toJSON() + " but was " + rows.get(i).toJSON());
+		}
+	}
+
+	// The rows the SQL path returns for filter, in tagID order
+	private List<LivestockModel> expectedRows(LivestockFilterModel filter) {
+		int[] tagBounds = filter.getTagIDBounds();
+		int[] ageBounds = filter.getAgeBounds();
+		List<LivestockModel> rows = new ArrayList<>();
+		for (LivestockModel row : expected.values()) {
+			if (row.getTagID() >= tagBounds[0] && row.getTagID() <= tagBounds[1]
+					&& row.getAge() >= ageBounds[0] && row.getAge() <= ageBounds[1]
+					&& (filter.getAnimalType() == AnimalType.ALL || row.getAnimalType() == filter.getAnimalType())
+					&& filter.matchesDimensions(row)) {
+				rows.add(row);
+			}
+		}
+		return rows;
+	}
+
+	private LivestockFilterModel randomFilter() {
+		String[] harvestable = { "all", "true", "false" };
+		AnimalType animalType = random.nextInt(3) == 0 ? AnimalType.ALL : ANIMAL_TYPES[random.nextInt(ANIMAL_TYPES.length)];
+		CropType diet = random.nextInt(2) == 0 ? CropType.ALL : DIETS[random.nextInt(DIETS.length)];
+		int minAge = random.nextInt(3) == 0 ? random.nextInt(MAX_AGE) : -1;
+		int maxAge = random.nextInt(3) == 0 ? random.nextInt(MAX_AGE) : -1;
+		int minTagID = random.nextInt(3) == 0 ? randomTagID() : -1;
+		int maxTagID = random.nextInt(3) == 0 ? randomTagID() : 5000;
+		return filter(harvestable[random.nextInt(3)], animalType, diet, minAge, maxAge, minTagID, maxTagID);
+	}
+
+	private static LivestockFilterModel filter(String harvestable, AnimalType animalType, CropType diet, int minAge,
+											   int maxAge, int minTagID, int maxTagID) {
+		return new LivestockFilterModel(harvestable, animalType, diet, minAge, maxAge, minTagID, maxTagID, -1, -1);
+	}
+
+	private LivestockModel randomRow() {
+		// diet and harvestable are resolved from the dimension rows, what is passed in is ignored
+		return new LivestockModel(randomTagID(), ANIMAL_TYPES[random.nextInt(ANIMAL_TYPES.length)],
+				random.nextInt(MAX_AGE + 1), CropType.ALL, 1 + random.nextInt(MAX_WEIGHT),
+				random.nextInt(4) == 0 ? null : randomDate(), false, random.nextInt(4) == 0 ? randomDate() : null);
+	}
+
+	private LivestockModel resolve(LivestockModel row) {
+		return new LivestockModel(row.getTagID(), row.getAnimalType(), row.getAge(),
+				dimensions.getDiet(row.getAnimalType(), row.getWeight()), row.getWeight(), row.getLastFed(),
+				dimensions.getHarvestable(row.getAnimalType(), row.getAge()) == 1,
+				row.getLastViolatedForHarvestedGoods());
+	}
+
+	private int randomTagID() {
+		return FIRST_TAG_ID + random.nextInt(TAG_IDS);
+	}
+
+	private Date randomDate() {
+		return Date.valueOf(FIRST_DAY.plusDays(random.nextInt(400)));
+	}
+}
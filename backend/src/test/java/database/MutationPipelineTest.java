@@ -0,0 +1,22 @@
+package database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class MutationPipelineTest {
+	@Test
+	void errorInAMutationFailsItsBatchAndTheWriterGoesOn() {
+		// Runs the mutations without a database, an Error gets through like it would from applyMutations
+		MutationPipeline pipeline = new MutationPipeline(mutations -> mutations.forEach(Runnable::run));
+		try {
+			assertEquals(Integer.valueOf(-1), pipeline.submit(() -> {
+				throw new StackOverflowError();
+			}, -1));
+			assertEquals(Integer.valueOf(1), pipeline.submit(() -> 1, -1));
+			assertEquals(1, pipeline.getStats().getLong("failedBatches"));
+		} finally {
+			pipeline.close();
+		}
+	}
+}
@@ -0,0 +1,782 @@
+package database;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import model.enums.ActionType;
+import model.enums.AnimalType;
+import model.enums.CropStatus;
+import model.enums.CropType;
+import model.enums.CropVariant;
+import model.filters.CropsFilterModel;
+import model.filters.LivestockFilterModel;
+import model.filters.PageRequest;
+import model.models.livestock.LivestockModel;
+import model.models.livestock.Livestock_1_Model;
+import model.models.livestock.Livestock_3_Model;
+import model.models.livestock.Livestock_4_Model;
+import model.models.NurtureModel;
+
+/**
+ * Runs the queries of the DatabaseConnectionHandler methods against an embedded H2 database (in Oracle mode)
+ * created by databaseSetup.sql and filled with generated rows, and fails when one of them reads a large table
+ * in full (a table scan, or an index scan without a condition) where an index should have been used.
+ *
+ * Every statement a handler method executes is explained with its actual parameters just before it runs.
+ * Reads that are full by nature (unfiltered listings, counts over every row, the running nurture totals,
+ * the divisions' "every animal/plot" side) name the tables they may scan in full.
+ *
+ * H2's planner stands in for Oracle's: it has no skip scans or hash joins, so a plan passing here only means
+ * the needed index exists and a simple planner can use it. The setup script is loaded without its foreign keys,
+ * because H2 indexes every foreign key on its own where Oracle doesn't. Whether the foreign keys a delete
+ * checks are indexed is tested from the script instead.
+ *
+ * Not covered, as they only run on Oracle: getUserTables/getTableColumns/projectTable (the dictionary views),
+ * findOverweightAnimals (CREATE VIEW and SELECT in one statement) and the LIVESTOCK_WIDE materialized view.
+ */
+class QueryPlanRegressionTest {
+	private static final String SETUP_SCRIPT = "src/main/java/sql/scripts/databaseSetup.sql";
+	private static final String DATABASE_URL = "jdbc:h2:mem:queryPlans;MODE=Oracle;DB_CLOSE_DELAY=-1";
+	private static final String PLAN_CHECK_URL = "jdbc:plancheck:";
+
+	// Tables with at least this many rows after generating data count as large
+	private static final int LARGE_TABLE_ROWS = 1000;
+	private static final int LIVESTOCK = 20000;
+	private static final int NURTURES = 60000;
+	private static final int FARMERS = 40;
+	private static final int PLOTS = 2000;
+	private static final int PLOTS_PER_FARMER = 50;
+	private static final int FIRST_TAG_ID = 10000;
+	private static final int MAX_AGE = 30;
+	private static final int MAX_WEIGHT = 100;
+
+	private static final Pattern FOREIGN_KEY = Pattern.compile(
+			",\\s*FOREIGN KEY\\s*\\(([^)]*)\\)\\s*REFERENCES\\s+(\\w+)\\s*\\([^)]*\\)(\\s*ON DELETE CASCADE)?",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern CREATE_TABLE = Pattern.compile("CREATE TABLE\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+	// The access path H2 prints for every table it reads: /* PUBLIC.TABLE.tableScan */ or /* PUBLIC.INDEX: condition */
+	private static final Pattern ACCESS_PATH = Pattern.compile("/\\* PUBLIC\\.(\\w+)(\\.tableScan)?(: [^*]*)? \\*/");
+
+	private static final List<Execution> executions = Collections.synchronizedList(new ArrayList<>());
+	private static final List<ForeignKey> foreignKeys = new ArrayList<>();
+	private static final Set<String> largeTables = new HashSet<>();
+	private static final Map<String, String> tableOfIndex = new HashMap<>();
+
+	private static Connection database;
+	private static Driver planCheckDriver;
+	private static DatabaseConnectionHandler handler;
+
+	@BeforeAll
+	static void createDatabase() throws SQLException, IOException {
+		database = DriverManager.getConnection(DATABASE_URL, "sa", "");
+		runSetupScript(Files.readString(Paths.get(SETUP_SCRIPT)));
+		generateData(new Random(42));
+		database.commit();
+
+		try (Statement statement = database.createStatement()) {
+			statement.execute("ANALYZE");
+			ResultSet rs = statement.executeQuery(
+					"SELECT INDEX_NAME, TABLE_NAME FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_SCHEMA = 'PUBLIC'");
+			while (rs.next()) {
+				tableOfIndex.put(rs.getString(1), rs.getString(2));
+			}
+			rs.close();
+
+			List<String> tables = new ArrayList<>();
+			rs = statement.executeQuery("SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_SCHEMA = 'PUBLIC'");
+			while (rs.next()) {
+				tables.add(rs.getString(1));
+			}
+			rs.close();
+			for (String table : tables) {
+				rs = statement.executeQuery("SELECT COUNT(*) FROM " + table);
+				rs.next();
+				if (rs.getInt(1) >= LARGE_TABLE_ROWS) {
+					largeTables.add(table);
+				}
+				rs.close();
+			}
+		}
+
+		planCheckDriver = new PlanRecordingDriver();
+		DriverManager.registerDriver(planCheckDriver);
+		handler = new DatabaseConnectionHandler(PLAN_CHECK_URL);
+	}
+
+	@BeforeEach
+	void login() {
+		// Logging in again drops every cache, so each test's calls reach the database
+		assertTrue(handler.login("sa", ""), "could not log in to the embedded database");
+	}
+
+	@AfterAll
+	static void dropDatabase() throws SQLException {
+		if (handler != null) {
+			handler.close();
+		}
+		if (planCheckDriver != null) {
+			DriverManager.deregisterDriver(planCheckDriver);
+		}
+		if (database != null) {
+			try (Statement statement = database.createStatement()) {
+				statement.execute("DROP ALL OBJECTS");
+			}
+			database.close();
+		}
+	}
+
+	@Test
+	void generatedDataMakesTheFactTablesLarge() {
+		assertTrue(largeTables.containsAll(Arrays.asList("LIVESTOCK_4", "NURTURES", "TENDS", "VETERINARYRECORDS_HAS")),
+				"large tables: " + largeTables);
+	}
+
+	@Test
+	void foreignKeysCheckedByDeletesAreIndexed() throws SQLException {
+		// Deleting a parent row looks up its children by the foreign key, without an index that is a full scan
+		// of the child (and Oracle locks the whole child table while it runs). Checked for the cascades and
+		// between large tables, the small parents (the dimension tables, farmers) are hardly ever deleted from.
+		assertFalse(foreignKeys.isEmpty(), "no foreign keys found in " + SETUP_SCRIPT);
+		for (ForeignKey key : foreignKeys) {
+			if (key.cascades || (largeTables.contains(key.table) && largeTables.contains(key.references))) {
+				assertTrue(hasIndexStartingWith(key.table, key.columns),
+						key.table + " (" + String.join(", ", key.columns) + ") references " + key.references
+								+ " but no index starts with those columns");
+			}
+		}
+	}
+
+	@Test
+	void getCrops() {
+		assertNoFullScans(() -> handler.getCrops());
+		assertNoFullScans(() -> handler.streamCrops(new PageRequest(null, 5), row -> { }));
+	}
+
+	@Test
+	void getFilteredCrops() {
+		CropsFilterModel filter = new CropsFilterModel(CropType.CORN, CropVariant.ALL, CropStatus.ALL, -1, -1);
+		assertNoFullScans(() -> handler.getFilteredCrops(filter));
+	}
+
+	@Test
+	void getLivestock() {
+		// The whole listing
+		assertNoFullScans(() -> handler.getLivestock(), "LIVESTOCK_4");
+	}
+
+	@Test
+	void streamLivestockPaged() throws Exception {
+		PageRequest first = new PageRequest(null, 50);
+		assertNoFullScans(() -> handler.streamLivestock(first, row -> { }));
+
+		String cursor = handler.streamLivestock(first, row -> { });
+		assertTrue(cursor != null, "expected more than one page of livestock");
+		assertNoFullScans(() -> handler.streamLivestock(new PageRequest(cursor, 50), row -> { }));
+	}
+
+	@Test
+	void getFilteredLivestock() {
+		LivestockFilterModel byType = new LivestockFilterModel("all", AnimalType.SHEEP, CropType.ALL, -1, -1,
+				-1, 5000, -1, -1);
+		assertNoFullScans(() -> handler.getFilteredLivestock(byType));
+
+		LivestockFilterModel byAge = new LivestockFilterModel("true", AnimalType.ALL, CropType.ALL, 3, 4,
+				-1, 5000, -1, -1);
+		assertNoFullScans(() -> handler.getFilteredLivestock(byAge));
+
+		LivestockFilterModel byTagID = new LivestockFilterModel("all", AnimalType.ALL, CropType.CORN, -1, -1,
+				FIRST_TAG_ID + 100, 5000, -1, -1);
+		assertNoFullScans(() -> handler.streamFilteredLivestock(byTagID, new PageRequest(null, 20), row -> { }));
+
+		// Nothing to narrow it down by
+		LivestockFilterModel unfiltered = new LivestockFilterModel("all", AnimalType.ALL, CropType.ALL, -1, -1,
+				-1, 5000, -1, -1);
+		assertNoFullScans(() -> handler.getFilteredLivestock(unfiltered), "LIVESTOCK_4");
+	}
+
+	@Test
+	void getFilteredLivestockWithNurtureTotals() {
+		// The filter is pushed into the grouped join, each matching animal's events are read by the tagID index
+		LivestockFilterModel filter = new LivestockFilterModel("all", AnimalType.COW, CropType.ALL, -1, -1,
+				-1, 5000, 50, -1);
+		assertNoFullScans(() -> handler.getFilteredLivestock(filter));
+	}
+
+	@Test
+	void findAnimalToSell() {
+		Livestock_4_Model model = new Livestock_4_Model(0, AnimalType.COW, 0, 50, null, null);
+		assertNoFullScans(() -> handler.findAnimalToSell(model));
+	}
+
+	@Test
+	void findLivestockHealthStatus() {
+		assertNoFullScans(() -> handler.findLivestockHealthStatus(FIRST_TAG_ID + 7));
+	}
+
+	@Test
+	void findCountedTypesSold() {
+		// Counts every animal
+		assertNoFullScans(() -> handler.findCountedTypesSold(), "LIVESTOCK_4");
+	}
+
+	@Test
+	void findCountedTypesSoldByAge() {
+		assertNoFullScans(() -> handler.findCountedTypesSoldByAge(3));
+	}
+
+	@Test
+	void getWaterAndFoodSpentOfLivestock() {
+		// Loads the running totals of every animal once
+		assertNoFullScans(() -> handler.getWaterAndFoodSpentOfLivestock(FIRST_TAG_ID + 7), "NURTURES");
+	}
+
+	@Test
+	void findWateredAndFed() {
+		assertNoFullScans(() -> handler.findWateredAndFed(AnimalType.PIG, 10, 10), "NURTURES");
+	}
+
+	@Test
+	void findMaxCountNurtureFarmers() {
+		// Counts every nurture event
+		assertNoFullScans(() -> handler.findMaxCountNurtureFarmers(), "NURTURES");
+	}
+
+	@Test
+	void findAllFarmersDivision() {
+		// Every animal (plot) is compared against each farmer's, the farmer's side has to be a key lookup
+		assertNoFullScans(() -> handler.findAllFarmersDivision(1), "LIVESTOCK_4");
+		assertNoFullScans(() -> handler.findAllFarmersDivision(2), "FIELDS_4");
+	}
+
+	@Test
+	void insertNurture() {
+		NurtureModel model = new NurtureModel(1001, FIRST_TAG_ID + 3, Date.valueOf("2030-01-01"), 10, 20);
+		assertNoFullScans(() -> assertTrue(handler.insertNurture(model)));
+	}
+
+	@Test
+	void bufferNurture() {
+		NurtureModel model = new NurtureModel(1002, FIRST_TAG_ID + 3, Date.valueOf("2030-01-01"), 10, 20);
+		assertNoFullScans(() -> handler.bufferNurture(model, NurtureWriteBuffer.Durability.ACK));
+	}
+
+	@Test
+	void insertLivestock() {
+		int tagID = FIRST_TAG_ID + LIVESTOCK + 2000;
+		// New dimension rows, then rows the dimension cache has
+		assertNoFullScans(() -> assertTrue(handler.insertLivestock(new LivestockModel(tagID, AnimalType.PIG,
+				MAX_AGE + 2, CropType.CORN, MAX_WEIGHT + 20, Date.valueOf("2030-01-01"), true, null))));
+		assertNoFullScans(() -> assertTrue(handler.insertLivestock(new LivestockModel(tagID + 1, AnimalType.PIG,
+				MAX_AGE + 2, CropType.CORN, MAX_WEIGHT + 20, null, true, null))));
+		assertFalse(handler.insertLivestock(new LivestockModel(tagID, AnimalType.PIG, 3, CropType.CORN, 30, null,
+				false, null)));
+	}
+
+	@Test
+	void insertLivestockDimensions() {
+		List<Livestock_3_Model> ages = new ArrayList<>();
+		List<Livestock_1_Model> weights = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			// Every other one exists already
+			ages.add(new Livestock_3_Model(AnimalType.CHICKEN, i % 2 == 0 ? i : MAX_AGE + 10 + i, true));
+			weights.add(new Livestock_1_Model(AnimalType.CHICKEN, CropType.WHEAT, i % 2 == 0 ? 1 + i : MAX_WEIGHT + 50 + i));
+		}
+		assertNoFullScans(() -> assertTrue(handler.insertLivestock_3(ages)));
+		assertNoFullScans(() -> assertTrue(handler.insertLivestock_1(weights)));
+		// Adding them again changes nothing
+		assertTrue(handler.insertLivestock_3(ages.get(1)));
+		assertTrue(handler.insertLivestock_1(weights.get(1)));
+	}
+
+	@Test
+	void applyMutations() {
+		Livestock_4_Model fed = new Livestock_4_Model(FIRST_TAG_ID + 13, AnimalType.COW, 0, 0, null, null);
+		assertNoFullScans(() -> handler.applyMutations(Arrays.asList(
+				() -> handler.insertLivestock(new LivestockModel(FIRST_TAG_ID + LIVESTOCK + 3000, AnimalType.COW, 2,
+						CropType.CORN, 50, null, false, null)),
+				() -> handler.insertNurture(new NurtureModel(1002, FIRST_TAG_ID + 5, Date.valueOf("2031-01-01"), 10, 20)),
+				() -> handler.updateLivestock(fed, ActionType.FEED))));
+	}
+
+	@Test
+	void insertLivestockBatch() {
+		// Half of them need new dimension rows
+		int firstTagID = FIRST_TAG_ID + LIVESTOCK + 1000;
+		List<LivestockModel> herd = new ArrayList<>(Herd.of(firstTagID, 15, AnimalType.SHEEP, 4, CropType.WHEAT, 40));
+		herd.addAll(Herd.of(firstTagID + 15, 15, AnimalType.SHEEP, MAX_AGE + 1, CropType.WHEAT, MAX_WEIGHT + 10));
+		assertNoFullScans(() -> handler.insertLivestockBatch(herd));
+	}
+
+	@Test
+	void deleteLivestockBatch() {
+		List<LivestockModel> herd = Herd.of(FIRST_TAG_ID + LIVESTOCK + 4000, 600, AnimalType.SHEEP, 5, CropType.WHEAT, 40);
+		handler.insertLivestockBatch(herd);
+		assertNoFullScans(() -> handler.deleteLivestockBatch(Herd.tagIDs(herd), null));
+	}
+
+	@Test
+	void deleteFilteredLivestock() {
+		int age = MAX_AGE + 5;
+		handler.insertLivestockBatch(Herd.of(FIRST_TAG_ID + LIVESTOCK + 5000, 300, AnimalType.PIG, age, CropType.CORN, 60));
+		LivestockFilterModel pigs = new LivestockFilterModel("all", AnimalType.PIG, CropType.ALL, age, age,
+				-1, 5000, -1, -1);
+		assertNoFullScans(() -> handler.deleteFilteredLivestock(pigs, null));
+	}
+
+	@Test
+	void updateLivestock() {
+		Livestock_4_Model model = new Livestock_4_Model(FIRST_TAG_ID + 11, AnimalType.COW, 0, 0, null, null);
+		assertNoFullScans(() -> assertTrue(handler.updateLivestock(model, ActionType.FEED)));
+		assertNoFullScans(() -> assertTrue(handler.updateLivestock(model, ActionType.HARVEST)));
+	}
+
+	@Test
+	void updateLivestockBatch() {
+		List<Integer> tagIDs = new ArrayList<>();
+		for (int i = 0; i < 1500; i++) {
+			tagIDs.add(FIRST_TAG_ID + 2 * i);
+		}
+		assertNoFullScans(() -> handler.updateLivestockBatch(tagIDs, ActionType.FEED));
+	}
+
+	@Test
+	void updateFilteredLivestock() {
+		LivestockFilterModel sheep = new LivestockFilterModel("true", AnimalType.SHEEP, CropType.WHEAT, 2, 4,
+				-1, 5000, -1, -1);
+		assertNoFullScans(() -> handler.updateFilteredLivestock(sheep, ActionType.FEED));
+
+		// The nurture totals are a grouping of every nurture event
+		LivestockFilterModel nurtured = new LivestockFilterModel("all", AnimalType.COW, CropType.ALL, 2, 4,
+				-1, 5000, 50, -1);
+		assertNoFullScans(() -> handler.updateFilteredLivestock(nurtured, ActionType.HARVEST), "NURTURES");
+	}
+
+	@Test
+	void generateData() {
+		FarmDataGenerator.Settings settings = new FarmDataGenerator.Settings(7, 1500, 20, 30, 25, 3, 1, 2,
+				LocalDate.of(2030, 1, 1));
+		assertNoFullScans(() -> handler.generateData(settings));
+	}
+
+	@Test
+	void deleteLivestock() {
+		// The cascades to its child tables are covered by foreignKeysCheckedByDeletesAreIndexed
+		assertNoFullScans(() -> assertTrue(handler.deleteLivestock(FIRST_TAG_ID + LIVESTOCK - 1)));
+	}
+
+	/**
+	 * Runs call and fails if it executed nothing, if one of its statements failed, or if one of them reads a
+	 * large table not in inherentlyFull in full
+	 */
+	private static void assertNoFullScans(Call call, String... inherentlyFull) {
+		List<String> allowed = Arrays.asList(inherentlyFull);
+		executions.clear();
+		try {
+			call.run();
+		} catch (Exception e) {
+			throw new AssertionError("call failed", e);
+		}
+
+		List<Execution> executed;
+		synchronized (executions) {
+			executed = new ArrayList<>(executions);
+		}
+		assertFalse(executed.isEmpty(), "no statement was executed");
+		for (Execution execution : executed) {
+			if (execution.error != null) {
+				fail("failed: " + execution.sql + "\n" + execution.error);
+			}
+			for (String table : fullScans(execution.plan)) {
+				if (largeTables.contains(table) && !allowed.contains(table)) {
+					fail("full scan of " + table + " in: " + execution.sql + "\nplan:\n" + execution.plan);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the tables the plan reads in full, by a table scan or an index scan without a condition
+	 */
+	private static Set<String> fullScans(String plan) {
+		Set<String> tables = new HashSet<>();
+		if (plan.contains("/* direct lookup */")) {
+			// MIN/MAX/COUNT(*) answered from the index itself, nothing is scanned
+			return tables;
+		}
+		Matcher matcher = ACCESS_PATH.matcher(plan);
+		while (matcher.find()) {
+			if (matcher.group(2) != null) {
+				tables.add(matcher.group(1));
+			} else if (matcher.group(3) == null && tableOfIndex.containsKey(matcher.group(1))) {
+				tables.add(tableOfIndex.get(matcher.group(1)));
+			}
+		}
+		return tables;
+	}
+
+	private static boolean hasIndexStartingWith(String table, List<String> columns) throws SQLException {
+		String query = "SELECT INDEX_NAME, COLUMN_NAME, ORDINAL_POSITION FROM INFORMATION_SCHEMA.INDEX_COLUMNS " +
+				"WHERE TABLE_SCHEMA = 'PUBLIC' AND TABLE_NAME = ?";
+		Map<String, TreeMap<Integer, String>> indexes = new HashMap<>();
+		try (PreparedStatement ps = database.prepareStatement(query)) {
+			ps.setString(1, table);
+			ResultSet rs = ps.executeQuery();
+			while (rs.next()) {
+				indexes.computeIfAbsent(rs.getString(1), name -> new TreeMap<>()).put(rs.getInt(3), rs.getString(2));
+			}
+			rs.close();
+		}
+
+		// Any order of the key's columns will do, as long as they lead the index
+		Set<String> wanted = new HashSet<>(columns);
+		for (TreeMap<Integer, String> indexColumns : indexes.values()) {
+			List<String> ordered = new ArrayList<>(indexColumns.values());
+			if (ordered.size() >= wanted.size() && wanted.equals(new HashSet<>(ordered.subList(0, wanted.size())))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Runs every statement of the setup script, with the foreign keys
+	 * taken out of the CREATE TABLEs and remembered in foreignKeys
+	 */
+	private static void runSetupScript(String script) throws SQLException {
+		StringBuilder withoutComments = new StringBuilder();
+		for (String line : script.split("\n")) {
+			if (!line.trim().startsWith("--")) {
+				withoutComments.append(line).append('\n');
+			}
+		}
+
+		try (Statement statement = database.createStatement()) {
+			for (String sql : withoutComments.toString().replaceAll("(?s)/\\*.*?\\*/", "").split(";")) {
+				sql = sql.trim();
+				if (sql.isEmpty()) {
+					continue;
+				}
+
+				Matcher table = CREATE_TABLE.matcher(sql);
+				if (table.lookingAt()) {
+					Matcher key = FOREIGN_KEY.matcher(sql);
+					while (key.find()) {
+						foreignKeys.add(new ForeignKey(table.group(1), key.group(1), key.group(2), key.group(3) != null));
+					}
+					sql = key.replaceAll("");
+				}
+				statement.execute(sql);
+			}
+		}
+	}
+
+	/**
+	 * Adds livestock with their dimension rows, nurture events, veterinary records, farmers, plots and the
+	 * plots they tend. Foreign keys aren't enforced, but the generated rows satisfy them.
+	 */
+	private static void generateData(Random random) throws SQLException {
+		AnimalType[] animalTypes = { AnimalType.CHICKEN, AnimalType.SHEEP, AnimalType.COW, AnimalType.PIG };
+		CropType[] diets = { CropType.CANOLA, CropType.WHEAT, CropType.CORN, CropType.POTATOES };
+
+		// The seed data already has a few dimension rows, MERGE skips those
+		try (PreparedStatement ps = database.prepareStatement(
+				"MERGE INTO Livestock_1 (animalType, weight, diet) KEY (animalType, weight) VALUES (?, ?, ?)")) {
+			for (AnimalType animalType : animalTypes) {
+				for (int weight = 1; weight <= MAX_WEIGHT; weight++) {
+					ps.setString(1, name(animalType));
+					ps.setDouble(2, weight);
+					ps.setString(3, name(diets[weight % diets.length]));
+					ps.addBatch();
+				}
+			}
+			ps.executeBatch();
+		}
+		try (PreparedStatement ps = database.prepareStatement(
+				"MERGE INTO Livestock_3 (animalType, age, harvestable) KEY (animalType, age) VALUES (?, ?, ?)")) {
+			for (AnimalType animalType : animalTypes) {
+				for (int age = 0; age <= MAX_AGE; age++) {
+					ps.setString(1, name(animalType));
+					ps.setInt(2, age);
+					ps.setInt(3, age >= 3 ? 1 : 0);
+					ps.addBatch();
+				}
+			}
+			ps.executeBatch();
+		}
+
+		try (PreparedStatement ps = database.prepareStatement(
+				"INSERT INTO Livestock_4 (tagID, animalType, age, weight, lastFed, lastViolatedForHarvestedGoods) " +
+				"VALUES (?, ?, ?, ?, ?, NULL)")) {
+			for (int i = 0; i < LIVESTOCK; i++) {
+				ps.setInt(1, FIRST_TAG_ID + i);
+				ps.setString(2, name(animalTypes[random.nextInt(animalTypes.length)]));
+				ps.setInt(3, random.nextInt(MAX_AGE + 1));
+				ps.setDouble(4, 1 + random.nextInt(MAX_WEIGHT));
+				ps.setDate(5, Date.valueOf("2023-01-01"));
+				ps.addBatch();
+			}
+			ps.executeBatch();
+		}
+
+		try (PreparedStatement ps = database.prepareStatement(
+				"INSERT INTO VeterinaryRecords_Has (tagID, recordID, record_date, healthStatus) VALUES (?, ?, ?, ?)")) {
+			for (int i = 0; i < LIVESTOCK; i++) {
+				ps.setInt(1, FIRST_TAG_ID + i);
+				ps.setInt(2, 1);
+				ps.setDate(3, Date.valueOf("2023-02-01"));
+				ps.setString(4, random.nextBoolean() ? "healthy" : "sick");
+				ps.addBatch();
+			}
+			ps.executeBatch();
+		}
+
+		try (PreparedStatement ps = database.prepareStatement(
+				"INSERT INTO Farmers_2 (farmerID, fullName, yearsOfEmployment) VALUES (?, ?, NULL)")) {
+			for (int i = 0; i < FARMERS; i++) {
+				ps.setInt(1, 2000 + i);
+				ps.setString(2, "Farmer " + i);
+				ps.addBatch();
+			}
+			ps.executeBatch();
+		}
+
+		try (PreparedStatement ps = database.prepareStatement(
+				"INSERT INTO Nurtures (farmerID, tagID, dateNurtured, waterSpent, foodSpent) VALUES (?, ?, ?, ?, ?)")) {
+			long firstDay = Date.valueOf("2020-01-01").toLocalDate().toEpochDay();
+			for (int i = 0; i < NURTURES; i++) {
+				// One event per farmer and day keeps the primary key unique
+				ps.setInt(1, 2000 + i % FARMERS);
+				ps.setInt(2, FIRST_TAG_ID + random.nextInt(LIVESTOCK));
+				ps.setDate(3, Date.valueOf(java.time.LocalDate.ofEpochDay(firstDay + i / FARMERS)));
+				ps.setInt(4, random.nextInt(20));
+				ps.setInt(5, random.nextInt(20));
+				ps.addBatch();
+			}
+			ps.executeBatch();
+		}
+
+		try (PreparedStatement ps = database.prepareStatement(
+				"INSERT INTO Fields_4 (plotNum, nutrientLevels, capacity, state) VALUES (?, 300, 1000, 'growing')")) {
+			for (int i = 0; i < PLOTS; i++) {
+				ps.setInt(1, 6000 + i);
+				ps.addBatch();
+			}
+			ps.executeBatch();
+		}
+
+		try (PreparedStatement ps = database.prepareStatement(
+				"INSERT INTO Tends (farmerID, plotNum, waterSpent) VALUES (?, ?, ?)")) {
+			for (int farmer = 0; farmer < FARMERS; farmer++) {
+				for (int plot = 0; plot < PLOTS_PER_FARMER; plot++) {
+					ps.setInt(1, 2000 + farmer);
+					ps.setInt(2, 6000 + (farmer * PLOTS_PER_FARMER + plot) % PLOTS);
+					ps.setInt(3, random.nextInt(100));
+					ps.addBatch();
+				}
+			}
+			ps.executeBatch();
+		}
+	}
+
+	private static String name(Enum<?> value) {
+		return value.toString().toLowerCase(Locale.ROOT);
+	}
+
+	private static class ForeignKey {
+		private final String table;
+		private final List<String> columns = new ArrayList<>();
+		private final String references;
+		private final boolean cascades;
+
+		ForeignKey(String table, String columns, String references, boolean cascades) {
+			this.table = table.toUpperCase(Locale.ROOT);
+			for (String column : columns.split(",")) {
+				this.columns.add(column.trim().toUpperCase(Locale.ROOT));
+			}
+			this.references = references.toUpperCase(Locale.ROOT);
+			this.cascades = cascades;
+		}
+	}
+
+	private static class Execution {
+		private final String sql;
+		private final String plan;
+		private final SQLException error;
+
+		Execution(String sql, String plan, SQLException error) {
+			this.sql = sql;
+			this.plan = plan;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Opens DATABASE_URL for PLAN_CHECK_URL, explaining every prepared statement just before it is executed
+	 * (or its first batched row) and recording the plan in executions
+	 */
+	private static class PlanRecordingDriver implements Driver {
+		@Override
+		public Connection connect(String url, Properties info) throws SQLException {
+			if (!acceptsURL(url)) {
+				return null;
+			}
+			Connection physical = DriverManager.getConnection(DATABASE_URL, info);
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+						Object result = invoke(physical, method, args);
+						if (method.getName().equals("prepareStatement") && args.length == 1) {
+							return recording(physical, (String) args[0], (PreparedStatement) result);
+						}
+						return result;
+					});
+		}
+
+		private static PreparedStatement recording(Connection physical, String sql, PreparedStatement statement) {
+			Map<Integer, Object[]> parameters = new TreeMap<>();
+			Map<Integer, Method> setters = new TreeMap<>();
+			// A batch is explained with the parameters of its first row
+			String[] batchPlan = new String[1];
+			return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+					new Class<?>[] { PreparedStatement.class }, (proxy, method, args) -> {
+						String name = method.getName();
+						if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+							parameters.put((Integer) args[0], args);
+							setters.put((Integer) args[0], method);
+						} else if (name.equals("clearParameters")) {
+							parameters.clear();
+							setters.clear();
+						} else if (name.equals("addBatch") && (args == null || args.length == 0) && batchPlan[0] == null) {
+							batchPlan[0] = explain(physical, sql, parameters, setters);
+						} else if (name.equals("clearBatch")) {
+							batchPlan[0] = null;
+						} else if (name.equals("executeBatch") && batchPlan[0] != null) {
+							String plan = batchPlan[0];
+							batchPlan[0] = null;
+							try {
+								Object result = invoke(statement, method, args);
+								executions.add(new Execution(sql, plan, null));
+								return result;
+							} catch (SQLException e) {
+								executions.add(new Execution(sql, plan, e));
+								throw e;
+							}
+						} else if ((name.equals("executeQuery") || name.equals("executeUpdate") || name.equals("execute"))
+								&& (args == null || args.length == 0)) {
+							String plan = explain(physical, sql, parameters, setters);
+							try {
+								Object result = invoke(statement, method, args);
+								executions.add(new Execution(sql, plan, null));
+								return result;
+							} catch (SQLException e) {
+								// The handler only prints these, so they are failed here
+								executions.add(new Execution(sql, plan, e));
+								throw e;
+							}
+						}
+						return invoke(statement, method, args);
+					});
+		}
+
+		private static String explain(Connection physical, String sql, Map<Integer, Object[]> parameters,
+									  Map<Integer, Method> setters) throws SQLException {
+			try (PreparedStatement explain = physical.prepareStatement("EXPLAIN " + sql)) {
+				for (Map.Entry<Integer, Object[]> parameter : parameters.entrySet()) {
+					invoke(explain, setters.get(parameter.getKey()), parameter.getValue());
+				}
+				ResultSet rs = explain.executeQuery();
+				StringBuilder plan = new StringBuilder();
+				while (rs.next()) {
+					plan.append(rs.getString(1)).append('\n');
+				}
+				rs.close();
+				return plan.toString();
+			} catch (SQLException e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new SQLException(e);
+			}
+		}
+
+		private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		@Override
+		public boolean acceptsURL(String url) {
+			return url != null && url.startsWith(PLAN_CHECK_URL);
+		}
+
+		@Override
+		public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+			return new DriverPropertyInfo[0];
+		}
+
+		@Override
+		public int getMajorVersion() {
+			return 1;
+		}
+
+		@Override
+		public int getMinorVersion() {
+			return 0;
+		}
+
+		@Override
+		public boolean jdbcCompliant() {
+			return false;
+		}
+
+		@Override
+		public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+			throw new SQLFeatureNotSupportedException();
+		}
+	}
+
+	@FunctionalInterface
+	private interface Call {
+		void run() throws Exception;
+	}
+}
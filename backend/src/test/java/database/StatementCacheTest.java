@@ -0,0 +1,35 @@
+package database;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.Test;
+
+class StatementCacheTest {
+	private static final String DATABASE_URL = "jdbc:h2:mem:statementCache;MODE=Oracle";
+
+	@Test
+	void statementEvictedWhileOpenIsClosedOnReset() throws SQLException {
+		try (Connection connection = DriverManager.getConnection(DATABASE_URL, "sa", "")) {
+			StatementCache cache = new StatementCache(connection, 1, new StatementCache.Counters());
+			// Never closed, as when an exception skips ps.close()
+			PreparedStatement forgotten = cache.prepare("SELECT 1 FROM DUAL");
+			PreparedStatement evicting = cache.prepare("SELECT 2 FROM DUAL");
+			assertEquals(1, cache.size());
+			assertFalse(forgotten.isClosed());
+
+			cache.reset();
+			assertTrue(forgotten.isClosed());
+			// The cached one is only returned, ready for the next caller
+			assertTrue(evicting.isClosed());
+			assertTrue(cache.prepare("SELECT 2 FROM DUAL").executeQuery().next());
+			cache.close();
+		}
+	}
+}
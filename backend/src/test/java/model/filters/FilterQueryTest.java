@@ -0,0 +1,42 @@
+package model.filters;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.Test;
+
+import model.enums.CropStatus;
+import model.enums.CropType;
+import model.enums.CropVariant;
+
+class FilterQueryTest {
+	private static final String DATABASE_URL = "jdbc:h2:mem:filterQuery;MODE=Oracle";
+
+	@Test
+	void onlyQueriesWithFilterClausesCountAsShapes() throws SQLException {
+		try (Connection connection = DriverManager.getConnection(DATABASE_URL, "sa", "")) {
+			int before = FilterQuery.getDistinctShapeCount();
+
+			// A padded IN list, as the bulk writes bind them
+			bind(connection, new FilterQuery("SELECT 1 FROM DUAL WHERE 1 IN (?, ?, ?, ?) ", 1, 2, 3, 3));
+			assertEquals(before, FilterQuery.getDistinctShapeCount());
+
+			CropsFilterModel filter = new CropsFilterModel(CropType.CORN, CropVariant.ALL, CropStatus.ALL, 7, -1);
+			FilterQuery query = new FilterQuery("SELECT 1 FROM (SELECT 'corn' AS cropType, 7 AS quantity FROM DUAL) ")
+					.append(filter.getWhereClause());
+			bind(connection, query);
+			bind(connection, query);
+			assertEquals(before + 1, FilterQuery.getDistinctShapeCount());
+		}
+	}
+
+	private static void bind(Connection connection, FilterQuery query) throws SQLException {
+		try (PreparedStatement ps = connection.prepareStatement(query.getSql())) {
+			query.bind(ps, 1);
+		}
+	}
+}